@@ -0,0 +1,150 @@
+package io.github.jerryt92.jrag.config;
+
+import io.github.jerryt92.jrag.mapper.handler.EmbeddingTypeHandler;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动时对已有数据库执行的结构迁移，新安装的库已包含最新结构，每一步都只做检查查询
+ * <ul>
+ *     <li>embeddings_item.embedding 从逗号分隔的文本迁移为 float32 小端 BLOB：
+ *     SQLite 为动态类型，直接把 typeof 为 text 的行改写为 BLOB；
+ *     MySQL 先写入临时列 embedding_blob，全部转换后替换原列，中途中断可在下次启动时继续</li>
+ *     <li>创建 embedding_cache 表</li>
+ *     <li>创建 vector_outbox 表，已有的表补充 attempts 列</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class DatabaseMigration {
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    public DatabaseMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (datasourceUrl.startsWith("jdbc:sqlite:")) {
+            migrateSqliteEmbeddingBlob();
+            jdbcTemplate.execute("""
+                    create table if not exists embedding_cache
+                    (
+                        text_hash            char(40)     not null,
+                        embedding_provider   varchar(256) not null,
+                        embedding_model      varchar(256) not null,
+                        check_embedding_hash varchar(64)  not null,
+                        embedding            blob         not null,
+                        create_time          bigint,
+                        primary key (text_hash, embedding_provider, embedding_model, check_embedding_hash)
+                    )""");
+            jdbcTemplate.execute("""
+                    create table if not exists vector_outbox
+                    (
+                        id          integer     not null
+                            primary key autoincrement,
+                        hash        char(40)    not null,
+                        operation   varchar(16) not null,
+                        create_time bigint,
+                        attempts    integer     not null default 0
+                    )""");
+            Integer attemptsColumnCount = jdbcTemplate.queryForObject(
+                    "select count(*) from pragma_table_info('vector_outbox') where name = 'attempts'", Integer.class);
+            if (attemptsColumnCount == null || attemptsColumnCount == 0) {
+                jdbcTemplate.execute("alter table vector_outbox add column attempts integer not null default 0");
+            }
+        } else if (datasourceUrl.startsWith("jdbc:mysql:")) {
+            migrateMysqlEmbeddingBlob();
+            jdbcTemplate.execute("""
+                    create table if not exists embedding_cache
+                    (
+                        text_hash            char(40)     not null comment '文本的哈希值（SHA-1）',
+                        embedding_provider   varchar(256) not null comment '嵌入模型提供商名称',
+                        embedding_model      varchar(256) not null comment '嵌入模型名称',
+                        check_embedding_hash varchar(64)  not null comment '嵌入模型校验hash',
+                        embedding            longblob     not null comment '嵌入向量（float32 小端）',
+                        create_time          bigint       null comment '创建时间',
+                        primary key (text_hash, embedding_provider, embedding_model, check_embedding_hash)
+                    ) comment '嵌入向量缓存'""");
+            jdbcTemplate.execute("""
+                    create table if not exists vector_outbox
+                    (
+                        id          bigint auto_increment comment '主键，按写入顺序递增' primary key,
+                        hash        char(40)    not null comment 'embeddings_item.hash',
+                        operation   varchar(16) not null comment 'UPSERT / DELETE',
+                        create_time bigint      null comment '创建时间',
+                        attempts    int         not null default 0 comment '写入向量数据库失败的次数，达到上限后不再发送'
+                    ) comment '待写入向量数据库的变更'""");
+            Integer attemptsColumnCount = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                    "where table_schema = database() and table_name = 'vector_outbox' and column_name = 'attempts'", Integer.class);
+            if (attemptsColumnCount == null || attemptsColumnCount == 0) {
+                jdbcTemplate.execute("alter table vector_outbox add column attempts int not null default 0 " +
+                        "comment '写入向量数据库失败的次数，达到上限后不再发送'");
+            }
+        }
+    }
+
+    private void migrateSqliteEmbeddingBlob() {
+        int migrated = convert("select hash, embedding from embeddings_item where typeof(embedding) = 'text' limit " + BATCH_SIZE,
+                "update embeddings_item set embedding = ? where hash = ?");
+        if (migrated > 0) {
+            log.info("Migrated {} embeddings to blob", migrated);
+        }
+    }
+
+    private void migrateMysqlEmbeddingBlob() {
+        String dataType = jdbcTemplate.queryForObject("select data_type from information_schema.columns " +
+                "where table_schema = database() and table_name = 'embeddings_item' and column_name = 'embedding'", String.class);
+        if (dataType == null || dataType.toLowerCase().endsWith("blob")) {
+            return;
+        }
+        log.info("Migrating embeddings_item.embedding from {} to longblob", dataType);
+        Integer tmpColumnCount = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where table_schema = database() and table_name = 'embeddings_item' and column_name = 'embedding_blob'", Integer.class);
+        if (tmpColumnCount == null || tmpColumnCount == 0) {
+            jdbcTemplate.execute("alter table embeddings_item add column embedding_blob longblob null");
+        }
+        int migrated = convert("select hash, embedding from embeddings_item where embedding_blob is null limit " + BATCH_SIZE,
+                "update embeddings_item set embedding_blob = ? where hash = ?");
+        jdbcTemplate.execute("alter table embeddings_item drop column embedding, " +
+                "change column embedding_blob embedding longblob not null comment '嵌入向量（float32 小端）'");
+        log.info("Migrated {} embeddings to blob", migrated);
+    }
+
+    /**
+     * 分批读取文本向量并写回 BLOB，直到查询不到待迁移的行
+     */
+    private int convert(String selectSql, String updateSql) {
+        int migrated = 0;
+        while (true) {
+            List<Object[]> batchArgs = new ArrayList<>();
+            jdbcTemplate.query(selectSql, rs -> {
+                batchArgs.add(new Object[]{EmbeddingTypeHandler.encode(parseText(rs.getString("embedding"))), rs.getString("hash")});
+            });
+            if (batchArgs.isEmpty()) {
+                return migrated;
+            }
+            jdbcTemplate.batchUpdate(updateSql, batchArgs);
+            migrated += batchArgs.size();
+        }
+    }
+
+    private static float[] parseText(String embedding) {
+        String[] values = embedding.split(",");
+        float[] vector = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            vector[i] = Float.parseFloat(values[i].trim());
+        }
+        return vector;
+    }
+}
@@ -16,6 +16,8 @@ public class EmbeddingProperties {
     public String openAiBaseUrl;
     public String embeddingsPath;
     public String openAiKey;
+    public int openAiBatchSize;
+    public int openAiConcurrency;
 
     private final PropertiesService propertiesService;
     // Keys in table `ai_properties.property_name`
@@ -28,6 +30,8 @@ public class EmbeddingProperties {
     private static final String KEY_OPEN_AI_BASE_URL = "embedding-open-ai-base-url";
     private static final String KEY_OPEN_AI_EMBEDDINGS_PATH = "embedding-open-ai-embeddings-path";
     private static final String KEY_OPEN_AI_KEY = "embedding-open-ai-key";
+    private static final String KEY_OPEN_AI_BATCH_SIZE = "embedding-open-ai-batch-size";
+    private static final String KEY_OPEN_AI_CONCURRENCY = "embedding-open-ai-concurrency";
 
     public EmbeddingProperties(PropertiesService propertiesService) {
         this.propertiesService = propertiesService;
@@ -53,6 +57,8 @@ public class EmbeddingProperties {
         this.openAiBaseUrl = readString(KEY_OPEN_AI_BASE_URL, "https://dashscope.aliyuncs.com");
         this.embeddingsPath = readString(KEY_OPEN_AI_EMBEDDINGS_PATH, "/compatible-mode/v1/embeddings");
         this.openAiKey = readString(KEY_OPEN_AI_KEY, "");
+        this.openAiBatchSize = Math.max(readInt(KEY_OPEN_AI_BATCH_SIZE, 10), 1);
+        this.openAiConcurrency = Math.max(readInt(KEY_OPEN_AI_CONCURRENCY, 4), 1);
     }
 
     private String readString(String key, String defaultValue) {
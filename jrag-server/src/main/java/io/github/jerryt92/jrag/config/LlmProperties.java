@@ -20,6 +20,8 @@ public class LlmProperties {
     public String openAiBaseUrl;
     public String openAiKey;
     public int openAiContextLength;
+    // 检索内容可占用的上下文长度比例
+    public double ragContextRatio;
     public double temperature;
 
     private final PropertiesService propertiesService;
@@ -38,6 +40,7 @@ public class LlmProperties {
     private static final String KEY_OPEN_AI_COMPLETIONS_PATH = "llm-open-ai-completions-path";
     private static final String KEY_OPEN_AI_KEY = "llm-open-ai-key";
     private static final String KEY_OPEN_AI_CONTEXT_LENGTH = "llm-open-ai-context-length";
+    private static final String KEY_RAG_CONTEXT_RATIO = "llm-rag-context-ratio";
 
     public LlmProperties(PropertiesService propertiesService) {
         this.propertiesService = propertiesService;
@@ -68,6 +71,7 @@ public class LlmProperties {
         this.completionsPath = readString(KEY_OPEN_AI_COMPLETIONS_PATH, "/compatible-mode/v1/chat/completions");
         this.openAiKey = readString(KEY_OPEN_AI_KEY, "");
         this.openAiContextLength = readInt(KEY_OPEN_AI_CONTEXT_LENGTH, 32768);
+        this.ragContextRatio = Math.min(Math.max(readDouble(KEY_RAG_CONTEXT_RATIO, 0.25d), 0d), 1d);
     }
 
     private String readString(String key, String defaultValue) {
@@ -3,6 +3,7 @@ package io.github.jerryt92.jrag.config;
 import io.github.jerryt92.jrag.event.PropertiesUpdatedEvent;
 import io.github.jerryt92.jrag.service.embedding.EmbeddingService;
 import io.github.jerryt92.jrag.service.llm.client.DynamicLlmClient;
+import io.github.jerryt92.jrag.service.rerank.RerankService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
@@ -12,18 +13,24 @@ import org.springframework.stereotype.Component;
 public class PropertiesReloadListener {
     private final LlmProperties llmProperties;
     private final EmbeddingProperties embeddingProperties;
+    private final RerankProperties rerankProperties;
     private final DynamicLlmClient dynamicLlmClient;
     private final EmbeddingService embeddingService;
+    private final RerankService rerankService;
     private final VectorDatabaseInit vectorDatabaseInit;
 
     public PropertiesReloadListener(LlmProperties llmProperties,
                                     EmbeddingProperties embeddingProperties,
+                                    RerankProperties rerankProperties,
                                     DynamicLlmClient dynamicLlmClient,
-                                    EmbeddingService embeddingService, VectorDatabaseInit vectorDatabaseInit) {
+                                    EmbeddingService embeddingService,
+                                    RerankService rerankService, VectorDatabaseInit vectorDatabaseInit) {
         this.llmProperties = llmProperties;
         this.embeddingProperties = embeddingProperties;
+        this.rerankProperties = rerankProperties;
         this.dynamicLlmClient = dynamicLlmClient;
         this.embeddingService = embeddingService;
+        this.rerankService = rerankService;
         this.vectorDatabaseInit = vectorDatabaseInit;
     }
 
@@ -32,8 +39,11 @@ public class PropertiesReloadListener {
         try {
             llmProperties.reloadFromDb();
             embeddingProperties.reloadFromDb();
+            rerankProperties.reloadFromDb();
             dynamicLlmClient.reload();
             embeddingService.reload();
+            rerankService.reload();
+            // 维度、度量方式与嵌入模型均未变化时不会重建或同步向量数据库
             vectorDatabaseInit.init();
             log.info("AI properties reloaded: {}", event.getPropertyNames());
         } catch (Exception e) {
@@ -0,0 +1,80 @@
+package io.github.jerryt92.jrag.config;
+
+import io.github.jerryt92.jrag.service.PropertiesService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class RerankProperties {
+    public boolean enabled;
+    public String baseUrl;
+    public String rerankPath;
+    public String modelName;
+    public String key;
+    public int candidates;
+    public int topN;
+    public int timeoutMillis;
+    public int batchSize;
+
+    private final PropertiesService propertiesService;
+    // Keys in table `ai_properties.property_name`
+    private static final String KEY_ENABLED = "rerank-enabled";
+    private static final String KEY_BASE_URL = "rerank-base-url";
+    private static final String KEY_RERANK_PATH = "rerank-path";
+    private static final String KEY_MODEL_NAME = "rerank-model-name";
+    private static final String KEY_KEY = "rerank-key";
+    private static final String KEY_CANDIDATES = "rerank-candidates";
+    private static final String KEY_TOP_N = "rerank-top-n";
+    private static final String KEY_TIMEOUT_MILLIS = "rerank-timeout-millis";
+    private static final String KEY_BATCH_SIZE = "rerank-batch-size";
+
+    public RerankProperties(PropertiesService propertiesService) {
+        this.propertiesService = propertiesService;
+    }
+
+    @PostConstruct
+    public void init() {
+        reloadFromDb();
+    }
+
+    /**
+     * Load all rerank-related config from database table `ai_properties`.
+     * This can be reloaded at runtime when properties change.
+     */
+    public void reloadFromDb() {
+        this.enabled = Boolean.parseBoolean(readString(KEY_ENABLED, "false").trim());
+        this.baseUrl = readString(KEY_BASE_URL, "http://127.0.0.1:8080");
+        this.rerankPath = readString(KEY_RERANK_PATH, "/v1/rerank");
+        this.modelName = readString(KEY_MODEL_NAME, "bge-reranker-v2-m3");
+        this.key = readString(KEY_KEY, "");
+        this.candidates = Math.max(readInt(KEY_CANDIDATES, 20), 1);
+        this.topN = Math.max(readInt(KEY_TOP_N, 5), 1);
+        this.timeoutMillis = Math.max(readInt(KEY_TIMEOUT_MILLIS, 1000), 1);
+        this.batchSize = Math.max(readInt(KEY_BATCH_SIZE, 16), 1);
+    }
+
+    private String readString(String key, String defaultValue) {
+        try {
+            String v = propertiesService.getProperty(key);
+            return v == null ? defaultValue : v;
+        } catch (Exception e) {
+            log.warn("Read ai_properties failed for key={}, using default.", key, e);
+            return defaultValue;
+        }
+    }
+
+    private int readInt(String key, int defaultValue) {
+        String v = readString(key, null);
+        if (v == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (Exception e) {
+            log.warn("Invalid int in ai_properties key={}, value={}, using default={}", key, v, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -2,12 +2,23 @@ package io.github.jerryt92.jrag.config;
 
 import io.github.jerryt92.jrag.service.embedding.EmbeddingService;
 import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.local.BinaryQuantizedIndex;
+import io.github.jerryt92.jrag.service.rag.vdb.local.FlatIndex;
+import io.github.jerryt92.jrag.service.rag.vdb.local.HnswIndex;
+import io.github.jerryt92.jrag.service.rag.vdb.local.Int8QuantizedIndex;
+import io.github.jerryt92.jrag.service.rag.vdb.local.LocalVectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.local.VectorIndex;
+import io.github.jerryt92.jrag.service.rag.vdb.local.VectorQuantization;
 import io.github.jerryt92.jrag.service.rag.vdb.milvus.MilvusLiteService;
 import io.github.jerryt92.jrag.service.rag.vdb.milvus.MilvusService;
+import io.milvus.v2.client.ConnectConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
 
 @Slf4j
 @Configuration
@@ -20,6 +31,32 @@ public class VectorDatabaseConfig {
     private String milvusCollectionName;
     @Value("${jrag.vector-database.milvus.token}")
     private String milvusToken;
+    @Value("${jrag.vector-database.milvus.client-pool-size:4}")
+    private int milvusClientPoolSize;
+    @Value("${jrag.vector-database.milvus.connect-timeout-millis:10000}")
+    private long milvusConnectTimeoutMillis;
+    @Value("${jrag.vector-database.milvus.keep-alive-time-millis:55000}")
+    private long milvusKeepAliveTimeMillis;
+    @Value("${jrag.vector-database.milvus.keep-alive-timeout-millis:20000}")
+    private long milvusKeepAliveTimeoutMillis;
+    @Value("${jrag.vector-database.milvus.rpc-deadline-millis:30000}")
+    private long milvusRpcDeadlineMillis;
+    @Value("${jrag.vector-database.hnsw.m:16}")
+    private int hnswM;
+    @Value("${jrag.vector-database.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+    @Value("${jrag.vector-database.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+    @Value("${jrag.vector-database.local.data-path:}")
+    private String localDataPath;
+    @Value("${jrag.vector-database.local.quantization:none}")
+    private String localQuantization;
+    @Value("${jrag.vector-database.local.rescore-factor:8}")
+    private int localRescoreFactor;
+    @Value("${jrag.vector-database.local.recall-sample-rate:0}")
+    private int localRecallSampleRate;
+    @Value("${jrag.vector-database.local.filter-exact-threshold:10000}")
+    private int localFilterExactThreshold;
 
     @Bean
     public VectorDatabaseService vectorDatabaseService(EmbeddingService embeddingService) {
@@ -28,9 +65,18 @@ public class VectorDatabaseConfig {
         switch (vectorDatabase) {
             case "milvus":
                 vectorDatabaseService = new MilvusService(
-                        milvusClusterEndpoint,
+                        ConnectConfig.builder()
+                                .uri(milvusClusterEndpoint)
+                                .token(milvusToken)
+                                .connectTimeoutMs(milvusConnectTimeoutMillis)
+                                .keepAliveTimeMs(milvusKeepAliveTimeMillis)
+                                .keepAliveTimeoutMs(milvusKeepAliveTimeoutMillis)
+                                // 空闲的连接也保持心跳，避免突发请求时重新建连
+                                .keepAliveWithoutCalls(true)
+                                .rpcDeadlineMs(milvusRpcDeadlineMillis)
+                                .build(),
                         milvusCollectionName,
-                        milvusToken
+                        milvusClientPoolSize
                 );
                 break;
             case "milvus-lite":
@@ -40,9 +86,51 @@ public class VectorDatabaseConfig {
                         milvusToken
                 );
                 break;
+            case "hnsw":
+                vectorDatabaseService = new LocalVectorDatabaseService(
+                        milvusCollectionName,
+                        store -> new HnswIndex(store, hnswM, hnswEfConstruction, hnswEfSearch),
+                        localDataDirectory(),
+                        false,
+                        localRecallSampleRate,
+                        localFilterExactThreshold
+                );
+                break;
+            case "flat":
+                vectorDatabaseService = new LocalVectorDatabaseService(
+                        milvusCollectionName,
+                        flatIndexFactory(),
+                        localDataDirectory(),
+                        // 量化时 float32 向量只用于重新打分，从段文件读取，不在堆中保留
+                        VectorQuantization.of(localQuantization) != VectorQuantization.NONE,
+                        localRecallSampleRate,
+                        localFilterExactThreshold
+                );
+                break;
             default:
                 throw new RuntimeException("Unknown vector database: " + vectorDatabase);
         }
         return vectorDatabaseService;
     }
+
+    /**
+     * flat 索引按配置的量化方式创建
+     */
+    private VectorIndex.Factory flatIndexFactory() {
+        return switch (VectorQuantization.of(localQuantization)) {
+            case NONE -> FlatIndex::new;
+            case INT8 -> store -> new Int8QuantizedIndex(store, localRescoreFactor);
+            case BINARY -> store -> new BinaryQuantizedIndex(store, localRescoreFactor);
+        };
+    }
+
+    /**
+     * 进程内向量库的持久化目录，未配置时只保存在内存中
+     */
+    private Path localDataDirectory() {
+        if (!StringUtils.hasText(localDataPath)) {
+            return null;
+        }
+        return Path.of(localDataPath, milvusCollectionName);
+    }
 }
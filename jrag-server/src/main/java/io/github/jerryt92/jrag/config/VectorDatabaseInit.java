@@ -1,40 +1,71 @@
 package io.github.jerryt92.jrag.config;
 
-import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
 import io.github.jerryt92.jrag.service.PropertiesService;
 import io.github.jerryt92.jrag.service.embedding.EmbeddingService;
 import io.github.jerryt92.jrag.service.rag.knowledge.KnowledgeService;
+import io.github.jerryt92.jrag.service.rag.knowledge.VectorDataLoader;
 import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
+@DependsOn("databaseMigration")
 public class VectorDatabaseInit {
     private final LlmProperties llmProperties;
     private final EmbeddingService embeddingService;
     private final KnowledgeService knowledgeService;
     private final VectorDatabaseService vectorDatabaseService;
     private final PropertiesService propertiesService;
+    private final VectorDataLoader vectorDataLoader;
+    private final int syncBatchSize;
+    // 最近一次同步时的维度、度量方式与嵌入模型，未变化时属性更新不再触发同步
+    private SyncState syncedState;
 
-    public VectorDatabaseInit(LlmProperties llmProperties, EmbeddingService embeddingService, KnowledgeService knowledgeService, VectorDatabaseService vectorDatabaseService, PropertiesService propertiesService) {
+    public VectorDatabaseInit(LlmProperties llmProperties, EmbeddingService embeddingService, KnowledgeService knowledgeService, VectorDatabaseService vectorDatabaseService, PropertiesService propertiesService,
+                              VectorDataLoader vectorDataLoader,
+                              @Value("${jrag.vector-database.sync-batch-size:500}") int syncBatchSize) {
         this.llmProperties = llmProperties;
         this.embeddingService = embeddingService;
         this.knowledgeService = knowledgeService;
         this.vectorDatabaseService = vectorDatabaseService;
         this.propertiesService = propertiesService;
+        this.vectorDataLoader = vectorDataLoader;
+        this.syncBatchSize = Math.max(syncBatchSize, 1);
     }
 
     @PostConstruct
-    public void init() {
+    public synchronized void init() {
+        if (!llmProperties.useRag || embeddingService.getDimension() == null) {
+            syncedState = null;
+            return;
+        }
         String metricType = propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE);
-        if (llmProperties.useRag && embeddingService.getDimension() != null) {
-            vectorDatabaseService.reBuildVectorDatabase(embeddingService.getDimension(), metricType);
-            List<EmbeddingsItemPoWithBLOBs> embeddingsItemPoWithBLOBs = knowledgeService.checkAndGetEmbedData(embeddingService.getCheckEmbeddingHash());
-            vectorDatabaseService.initData(embeddingsItemPoWithBLOBs);
+        SyncState state = new SyncState(embeddingService.getDimension(), metricType, embeddingService.getCheckEmbeddingHash());
+        if (state.equals(syncedState)) {
+            return;
+        }
+        if (vectorDatabaseService.loadPersistedData(state.dimension(), metricType, state.checkEmbeddingHash())) {
+            // 已有数据可用，只同步与关系型数据库的差异
+            Map<String, Long> storedVersions = vectorDatabaseService.listDataVersions();
+            if (storedVersions != null) {
+                knowledgeService.reconcileVectorData(state.checkEmbeddingHash(), storedVersions, syncBatchSize);
+            }
+            knowledgeService.checkEmbedData(state.checkEmbeddingHash());
+        } else {
+            // 维度、度量方式或嵌入模型变化时全量重建
+            vectorDatabaseService.reBuildVectorDatabase(state.dimension(), metricType);
+            knowledgeService.checkEmbedData(state.checkEmbeddingHash());
+            vectorDataLoader.load(state.checkEmbeddingHash());
         }
+        syncedState = state;
+    }
+
+    private record SyncState(int dimension, String metricType, String checkEmbeddingHash) {
     }
 }
@@ -2,8 +2,11 @@ package io.github.jerryt92.jrag.controller;
 
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.jerryt92.jrag.model.ErrorResponseDto;
 import io.github.jerryt92.jrag.model.KnowledgeAddDto;
+import io.github.jerryt92.jrag.model.KnowledgeBatchRetrieveItemDto;
+import io.github.jerryt92.jrag.model.KnowledgeBatchRetrieveRequestDto;
 import io.github.jerryt92.jrag.model.KnowledgeGetListDto;
 import io.github.jerryt92.jrag.model.KnowledgeRetrieveItemDto;
 import io.github.jerryt92.jrag.model.KnowledgeRetrieveResponseDto;
@@ -11,19 +14,27 @@ import io.github.jerryt92.jrag.model.security.SessionBo;
 import io.github.jerryt92.jrag.server.api.KnowledgeApi;
 import io.github.jerryt92.jrag.service.rag.knowledge.KnowledgeService;
 import io.github.jerryt92.jrag.service.rag.retrieval.Retriever;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
 import io.github.jerryt92.jrag.service.security.LoginService;
 import io.github.jerryt92.jrag.utils.HashUtil;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -36,11 +47,17 @@ public class KnowledgeController implements KnowledgeApi {
     private final KnowledgeService knowledgeService;
     private final Retriever retriever;
     private final LoginService loginService;
+    private final HttpServletResponse response;
+    private final ObjectMapper objectMapper;
+    @Value("${jrag.knowledge-retrieve.max-batch-queries:1000}")
+    private int maxBatchQueries;
 
-    public KnowledgeController(KnowledgeService knowledgeService, Retriever retriever, LoginService loginService) {
+    public KnowledgeController(KnowledgeService knowledgeService, Retriever retriever, LoginService loginService, HttpServletResponse response, ObjectMapper objectMapper) {
         this.knowledgeService = knowledgeService;
         this.retriever = retriever;
         this.loginService = loginService;
+        this.response = response;
+        this.objectMapper = objectMapper;
     }
 
     @Override
@@ -63,13 +80,53 @@ public class KnowledgeController implements KnowledgeApi {
     }
 
     @Override
-    public ResponseEntity<KnowledgeRetrieveResponseDto> retrieveKnowledge(String queryText, Integer topK) {
-        List<KnowledgeRetrieveItemDto> knowledgeRetrieveItemDtos = retriever.retrieveKnowledge(queryText, topK);
+    public ResponseEntity<KnowledgeRetrieveResponseDto> retrieveKnowledge(String queryText, Integer topK, List<Integer> fileId, List<String> createUserId, String description) {
+        VectorFilter filter = resolveVectorFilter(fileId, createUserId, description);
+        List<KnowledgeRetrieveItemDto> knowledgeRetrieveItemDtos = retriever.retrieveKnowledge(queryText, topK, filter);
         KnowledgeRetrieveResponseDto knowledgeRetrieveResponseDto = new KnowledgeRetrieveResponseDto();
         knowledgeRetrieveResponseDto.setData(knowledgeRetrieveItemDtos);
         return ResponseEntity.ok(knowledgeRetrieveResponseDto);
     }
 
+    /**
+     * 每完成一条查询即写出一行 JSON 并刷新，结果直接写入响应，因此返回 null
+     */
+    @Override
+    public ResponseEntity<KnowledgeBatchRetrieveItemDto> retrieveKnowledgeBatch(KnowledgeBatchRetrieveRequestDto knowledgeBatchRetrieveRequestDto) {
+        List<String> queryTexts = knowledgeBatchRetrieveRequestDto.getQueryTexts();
+        if (queryTexts == null || queryTexts.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (queryTexts.size() > maxBatchQueries) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Too many query texts: " + queryTexts.size() + " > " + maxBatchQueries);
+        }
+        VectorFilter filter = resolveVectorFilter(knowledgeBatchRetrieveRequestDto.getFileIds(),
+                knowledgeBatchRetrieveRequestDto.getCreateUserIds(), knowledgeBatchRetrieveRequestDto.getDescription());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try {
+            OutputStream outputStream = response.getOutputStream();
+            retriever.retrieveKnowledgeBatch(queryTexts, knowledgeBatchRetrieveRequestDto.getTopK(), filter, result -> {
+                KnowledgeBatchRetrieveItemDto itemDto = new KnowledgeBatchRetrieveItemDto()
+                        .index(result.index())
+                        .queryText(queryTexts.get(result.index()))
+                        .data(result.items())
+                        .error(result.error());
+                try {
+                    outputStream.write(objectMapper.writeValueAsBytes(itemDto));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
     @Override
     public ResponseEntity<Resource> getJsonTemplate() {
         HttpHeaders headers = new HttpHeaders();
@@ -147,4 +204,15 @@ public class KnowledgeController implements KnowledgeApi {
         }
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * 过滤条件匹配的文本块过多时以 400 返回原因
+     */
+    private VectorFilter resolveVectorFilter(List<Integer> fileIds, List<String> createUserIds, String description) {
+        try {
+            return knowledgeService.resolveVectorFilter(fileIds, createUserIds, description);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
 }
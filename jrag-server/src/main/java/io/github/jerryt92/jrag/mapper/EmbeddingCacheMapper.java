@@ -0,0 +1,31 @@
+package io.github.jerryt92.jrag.mapper;
+
+import io.github.jerryt92.jrag.po.EmbeddingCachePo;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface EmbeddingCacheMapper {
+    List<EmbeddingCachePo> selectByTextHashes(@Param("embeddingProvider") String embeddingProvider,
+                                              @Param("embeddingModel") String embeddingModel,
+                                              @Param("checkEmbeddingHash") String checkEmbeddingHash,
+                                              @Param("textHashes") Collection<String> textHashes);
+
+    /**
+     * 批量写入，主键冲突时覆盖
+     */
+    int batchReplace(@Param("list") List<EmbeddingCachePo> list);
+
+    /**
+     * 删除不属于当前嵌入模型的条目
+     */
+    int deleteByCheckEmbeddingHashNot(@Param("checkEmbeddingHash") String checkEmbeddingHash);
+
+    /**
+     * 删除写入时间早于 createTime 的条目
+     */
+    int deleteByCreateTimeBefore(@Param("createTime") long createTime);
+}
@@ -0,0 +1,17 @@
+package io.github.jerryt92.jrag.mapper;
+
+import io.github.jerryt92.jrag.mapper.mgb.FilePoMapper;
+import io.github.jerryt92.jrag.po.mgb.FilePo;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface MyFilePoMapper extends FilePoMapper {
+    /**
+     * 查询文本块的来源文件，无需先查出文本块即可与文本块查询并行执行
+     */
+    List<FilePo> selectByTextChunkIds(@Param("textChunkIds") Collection<String> textChunkIds);
+}
@@ -17,4 +17,12 @@ public interface MyTextChunkPoMapper extends TextChunkPoMapper {
      * @mbg.generated
      */
     List<TextChunkPo> selectByExampleWithBLOBsWithSearch(@Param("example") TextChunkPoExample example, @Param("search") String search);
-}
\ No newline at end of file
+
+    /**
+     * 按元数据条件查询文本块 ID，description 按包含匹配，调用方需以 ! 转义 LIKE 通配符
+     *
+     * @param limit 最多返回的条数
+     */
+    List<String> selectIdsByMetadata(@Param("fileIds") List<Integer> fileIds, @Param("createUserIds") List<String> createUserIds,
+                                     @Param("descriptionLike") String descriptionLike, @Param("limit") int limit);
+}
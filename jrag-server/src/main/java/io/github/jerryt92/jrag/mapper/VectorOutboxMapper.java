@@ -0,0 +1,22 @@
+package io.github.jerryt92.jrag.mapper;
+
+import io.github.jerryt92.jrag.po.VectorOutboxPo;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface VectorOutboxMapper {
+    int batchInsert(@Param("list") List<VectorOutboxPo> list);
+
+    /**
+     * 按 id 顺序读取失败次数小于 maxAttempts 的最早 limit 条
+     */
+    List<VectorOutboxPo> selectOldest(@Param("limit") int limit, @Param("maxAttempts") int maxAttempts);
+
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    int incrementAttempts(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,59 @@
+package io.github.jerryt92.jrag.mapper.handler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedJdbcTypes;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 向量与数据库 BLOB 的转换，存储格式为 float32 小端，无头部，长度 = 维度 * 4
+ */
+@MappedTypes(float[].class)
+@MappedJdbcTypes(JdbcType.LONGVARBINARY)
+public class EmbeddingTypeHandler extends BaseTypeHandler<float[]> {
+
+    public static byte[] encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return buffer.array();
+    }
+
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("Invalid embedding blob length: " + bytes.length);
+        }
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, float[] parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, encode(parameter));
+    }
+
+    @Override
+    public float[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public float[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public float[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getBytes(columnIndex));
+    }
+}
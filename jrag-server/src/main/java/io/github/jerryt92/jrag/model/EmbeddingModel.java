@@ -47,6 +47,8 @@ public class EmbeddingModel {
         Float denseScore;
         // 稀疏向量检索得分
         Float sparseScore;
+        // 重排序得分，未重排序时为 null
+        Float rerankScore;
         // 嵌入模型名称
         String embeddingModel;
         // 嵌入模型提供商名称
@@ -55,5 +57,7 @@ public class EmbeddingModel {
         String text;
         // 文本块ID
         String textChunkId;
+        // 嵌入向量，用于结果多样化，向量数据库未返回时为 null
+        float[] embedding;
     }
 }
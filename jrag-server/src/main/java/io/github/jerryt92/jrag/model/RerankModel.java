@@ -0,0 +1,43 @@
+package io.github.jerryt92.jrag.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 重排序接口的请求与响应，兼容 Jina / Cohere / Xinference / TEI 等使用的 /v1/rerank 格式
+ */
+public class RerankModel {
+
+    @Data
+    @Accessors(chain = true)
+    public static class RerankRequest {
+        String model;
+        String query;
+        List<String> documents;
+        @JsonProperty("top_n")
+        Integer topN;
+        @JsonProperty("return_documents")
+        Boolean returnDocuments;
+    }
+
+    @Data
+    @Accessors(chain = true)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RerankResponse {
+        List<RerankResult> results;
+    }
+
+    @Data
+    @Accessors(chain = true)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RerankResult {
+        // 对应请求中 documents 的下标
+        Integer index;
+        @JsonProperty("relevance_score")
+        Float relevanceScore;
+    }
+}
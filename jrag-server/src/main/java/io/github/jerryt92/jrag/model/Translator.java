@@ -17,7 +17,6 @@ import org.springframework.util.CollectionUtils;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,10 +58,9 @@ public final class Translator {
         jsonObject.addProperty("embedding_model", embeddingsItemPo.getEmbeddingModel());
         jsonObject.addProperty("embedding_provider", embeddingsItemPo.getEmbeddingProvider());
         jsonObject.addProperty("text", embeddingsItemPo.getText());
-        String embedding = embeddingsItemPo.getEmbedding();
         JsonArray embeddingsList = new JsonArray();
-        for (String str : embedding.split(",")) {
-            embeddingsList.add(Float.parseFloat(str));
+        for (float embedding : embeddingsItemPo.getEmbedding()) {
+            embeddingsList.add(embedding);
         }
         jsonObject.add("embedding", embeddingsList);
         jsonObject.addProperty("text_chunk_id", embeddingsItemPo.getTextChunkId());
@@ -83,7 +81,7 @@ public final class Translator {
         embeddingsItemPo.setEmbeddingProvider(embeddingsItem.getEmbeddingProvider());
         embeddingsItemPo.setCheckEmbeddingHash(embeddingsItem.getCheckEmbeddingHash());
         embeddingsItemPo.setText(embeddingsItem.getText());
-        embeddingsItemPo.setEmbedding(Arrays.toString(embeddingsItem.getEmbeddings()).replace("[", "").replace("]", ""));
+        embeddingsItemPo.setEmbedding(embeddingsItem.getEmbeddings());
         embeddingsItemPo.setTextChunkId(String.valueOf(textChunkId));
         embeddingsItemPo.setDescription(description);
         embeddingsItemPo.setCreateTime(System.currentTimeMillis());
@@ -0,0 +1,24 @@
+package io.github.jerryt92.jrag.po;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 表 embedding_cache
+ */
+@Data
+@Accessors(chain = true)
+public class EmbeddingCachePo {
+    // 文本的哈希值（SHA-1）
+    private String textHash;
+    // 嵌入模型提供商名称
+    private String embeddingProvider;
+    // 嵌入模型名称
+    private String embeddingModel;
+    // 嵌入模型校验hash
+    private String checkEmbeddingHash;
+    // 嵌入向量
+    private float[] embedding;
+    // 创建时间
+    private Long createTime;
+}
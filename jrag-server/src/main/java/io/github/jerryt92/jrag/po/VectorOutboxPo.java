@@ -0,0 +1,25 @@
+package io.github.jerryt92.jrag.po;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 表 vector_outbox
+ */
+@Data
+@Accessors(chain = true)
+public class VectorOutboxPo {
+    public static final String UPSERT = "UPSERT";
+    public static final String DELETE = "DELETE";
+
+    // 主键，按写入顺序递增
+    private Long id;
+    // embeddings_item.hash
+    private String hash;
+    // UPSERT / DELETE
+    private String operation;
+    // 创建时间
+    private Long createTime;
+    // 写入向量数据库失败的次数，达到上限后不再发送
+    private Integer attempts;
+}
@@ -318,7 +318,7 @@ public class EmbeddingsItemPo {
         updateTime("update_time", "updateTime", "BIGINT", false),
         createUserId("create_user_id", "createUserId", "VARCHAR", false),
         text("text", "text", "LONGVARCHAR", true),
-        embedding("embedding", "embedding", "LONGVARCHAR", false);
+        embedding("embedding", "embedding", "LONGVARBINARY", false);
 
         /**
          * This field was generated by MyBatis Generator.
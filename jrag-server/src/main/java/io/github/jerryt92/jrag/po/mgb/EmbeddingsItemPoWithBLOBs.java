@@ -20,7 +20,7 @@ public class EmbeddingsItemPoWithBLOBs extends EmbeddingsItemPo {
      *
      * @mbg.generated
      */
-    private String embedding;
+    private float[] embedding;
 
     /**
      * This method was generated by MyBatis Generator.
@@ -54,7 +54,7 @@ public class EmbeddingsItemPoWithBLOBs extends EmbeddingsItemPo {
      *
      * @mbg.generated
      */
-    public String getEmbedding() {
+    public float[] getEmbedding() {
         return embedding;
     }
 
@@ -66,8 +66,8 @@ public class EmbeddingsItemPoWithBLOBs extends EmbeddingsItemPo {
      *
      * @mbg.generated
      */
-    public void setEmbedding(String embedding) {
-        this.embedding = embedding == null ? null : embedding.trim();
+    public void setEmbedding(float[] embedding) {
+        this.embedding = embedding;
     }
 
     /**
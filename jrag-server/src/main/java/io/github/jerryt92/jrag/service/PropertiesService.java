@@ -26,6 +26,18 @@ public class PropertiesService {
     public static final String RETRIEVE_METRIC_SCORE_COMPARE_EXPR = "RETRIEVE_METRIC_SCORE_COMPARE_EXPR";
     public static final String RETRIEVE_DENSE_WEIGHT = "RETRIEVE_DENSE_WEIGHT";
     public static final String RETRIEVE_SPARSE_WEIGHT = "RETRIEVE_SPARSE_WEIGHT";
+    // 混合检索融合策略：NATIVE / WEIGHTED / RRF / DBSF
+    public static final String RETRIEVE_FUSION_STRATEGY = "RETRIEVE_FUSION_STRATEGY";
+    // 融合前各通道的候选数量，小于 RETRIEVE_TOP_K 时按 RETRIEVE_TOP_K
+    public static final String RETRIEVE_DENSE_CANDIDATES = "RETRIEVE_DENSE_CANDIDATES";
+    public static final String RETRIEVE_SPARSE_CANDIDATES = "RETRIEVE_SPARSE_CANDIDATES";
+    public static final String RETRIEVE_RRF_K = "RETRIEVE_RRF_K";
+    // 最大边际相关（MMR）多样化：开关、相关度权重 λ、多样化前的候选数量、每个文本块与每个文件最多入选的条数
+    public static final String RETRIEVE_MMR_ENABLED = "RETRIEVE_MMR_ENABLED";
+    public static final String RETRIEVE_MMR_LAMBDA = "RETRIEVE_MMR_LAMBDA";
+    public static final String RETRIEVE_MMR_CANDIDATES = "RETRIEVE_MMR_CANDIDATES";
+    public static final String RETRIEVE_MMR_MAX_PER_CHUNK = "RETRIEVE_MMR_MAX_PER_CHUNK";
+    public static final String RETRIEVE_MMR_MAX_PER_FILE = "RETRIEVE_MMR_MAX_PER_FILE";
 
     private final Map<String, String> properties = new HashMap<>();
     private final PropertiesPoMapper propertiesPoMapper;
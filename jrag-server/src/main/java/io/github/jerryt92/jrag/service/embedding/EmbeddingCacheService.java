@@ -0,0 +1,181 @@
+package io.github.jerryt92.jrag.service.embedding;
+
+import io.github.jerryt92.jrag.mapper.EmbeddingCacheMapper;
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.po.EmbeddingCachePo;
+import io.github.jerryt92.jrag.utils.HashUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 嵌入向量缓存
+ * <p>
+ * 两级缓存：堆内 LRU + embedding_cache 表，键为 (文本SHA-1, 提供商, 模型, checkEmbeddingHash)。
+ * 缓存读写失败只记录日志，不影响嵌入调用。
+ * <p>
+ * 检索查询的向量也会写入，表按写入时间保留 retention-days 天，嵌入模型变化后旧模型的条目在初始化时删除。
+ * 嵌入模型初始化在创建向量数据库时执行，依赖 {@code databaseMigration} 保证此前 embedding_cache 表已创建。
+ */
+@Slf4j
+@Service
+@DependsOn("databaseMigration")
+@EnableScheduling
+public class EmbeddingCacheService {
+    // 单条 SQL 中 in 条件 / values 的最大数量
+    private static final int BATCH_SIZE = 200;
+
+    private final EmbeddingCacheMapper embeddingCacheMapper;
+    @Getter
+    private final boolean enabled;
+    private final int retentionDays;
+    private final Map<CacheKey, float[]> lruCache;
+
+    public EmbeddingCacheService(EmbeddingCacheMapper embeddingCacheMapper,
+                                 @Value("${jrag.embedding-cache.enabled:true}") boolean enabled,
+                                 @Value("${jrag.embedding-cache.max-entries:5000}") int maxEntries,
+                                 @Value("${jrag.embedding-cache.retention-days:30}") int retentionDays) {
+        this.embeddingCacheMapper = embeddingCacheMapper;
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.lruCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @return 文本 -> 向量，未命中的文本不在结果中
+     */
+    public Map<String, float[]> get(Collection<String> texts, String embeddingProvider, String embeddingModel, String checkEmbeddingHash) {
+        Map<String, float[]> hits = new HashMap<>();
+        Map<String, String> missTextHashes = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        for (String text : texts) {
+            if (!visited.add(text)) {
+                continue;
+            }
+            String textHash = textHash(text);
+            float[] embedding = lruCache.get(new CacheKey(textHash, embeddingProvider, embeddingModel, checkEmbeddingHash));
+            if (embedding != null) {
+                hits.put(text, embedding.clone());
+            } else {
+                missTextHashes.put(textHash, text);
+            }
+        }
+        if (missTextHashes.isEmpty()) {
+            return hits;
+        }
+        try {
+            for (List<String> textHashes : ListUtils.partition(new ArrayList<>(missTextHashes.keySet()), BATCH_SIZE)) {
+                for (EmbeddingCachePo embeddingCachePo : embeddingCacheMapper.selectByTextHashes(embeddingProvider, embeddingModel, checkEmbeddingHash, textHashes)) {
+                    lruCache.put(new CacheKey(embeddingCachePo.getTextHash(), embeddingProvider, embeddingModel, checkEmbeddingHash), embeddingCachePo.getEmbedding());
+                    hits.put(missTextHashes.get(embeddingCachePo.getTextHash()), embeddingCachePo.getEmbedding().clone());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read embedding cache", e);
+        }
+        return hits;
+    }
+
+    /**
+     * 写入缓存，checkEmbeddingHash 为空的条目（嵌入模型未初始化）不缓存
+     */
+    public void put(List<EmbeddingModel.EmbeddingsItem> embeddingsItems) {
+        List<EmbeddingCachePo> embeddingCachePos = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (EmbeddingModel.EmbeddingsItem embeddingsItem : embeddingsItems) {
+            if (embeddingsItem.getCheckEmbeddingHash() == null || embeddingsItem.getEmbeddings() == null) {
+                continue;
+            }
+            String textHash = textHash(embeddingsItem.getText());
+            if (!visited.add(textHash)) {
+                continue;
+            }
+            float[] embedding = embeddingsItem.getEmbeddings().clone();
+            lruCache.put(new CacheKey(textHash, embeddingsItem.getEmbeddingProvider(), embeddingsItem.getEmbeddingModel(), embeddingsItem.getCheckEmbeddingHash()), embedding);
+            embeddingCachePos.add(new EmbeddingCachePo()
+                    .setTextHash(textHash)
+                    .setEmbeddingProvider(embeddingsItem.getEmbeddingProvider())
+                    .setEmbeddingModel(embeddingsItem.getEmbeddingModel())
+                    .setCheckEmbeddingHash(embeddingsItem.getCheckEmbeddingHash())
+                    .setEmbedding(embedding)
+                    .setCreateTime(now));
+        }
+        try {
+            for (List<EmbeddingCachePo> partition : ListUtils.partition(embeddingCachePos, BATCH_SIZE)) {
+                embeddingCacheMapper.batchReplace(partition);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write embedding cache", e);
+        }
+    }
+
+    /**
+     * 删除其他嵌入模型的条目，嵌入模型初始化得到新的 checkEmbeddingHash 后调用
+     * <p>
+     * 删除失败时直接抛出，表结构等问题在启动时暴露，而不是被日志掩盖。
+     */
+    public void evictStale(String checkEmbeddingHash) {
+        if (!enabled || checkEmbeddingHash == null) {
+            return;
+        }
+        int deleted = embeddingCacheMapper.deleteByCheckEmbeddingHashNot(checkEmbeddingHash);
+        if (deleted > 0) {
+            log.info("Evicted {} embedding cache entries of previous embedding models", deleted);
+        }
+    }
+
+    /**
+     * 删除超过保留期的条目，retention-days 不大于 0 时不清理
+     */
+    @Scheduled(fixedRate = 1, timeUnit = TimeUnit.HOURS)
+    public void pruneExpired() {
+        if (!enabled || retentionDays <= 0) {
+            return;
+        }
+        try {
+            int deleted = embeddingCacheMapper.deleteByCreateTimeBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+            if (deleted > 0) {
+                log.info("Pruned {} expired embedding cache entries", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to prune embedding cache", e);
+        }
+    }
+
+    private static String textHash(String text) {
+        try {
+            return HashUtil.getMessageDigest(text.getBytes(StandardCharsets.UTF_8), HashUtil.MdAlgorithm.SHA1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record CacheKey(String textHash, String embeddingProvider, String embeddingModel, String checkEmbeddingHash) {
+    }
+}
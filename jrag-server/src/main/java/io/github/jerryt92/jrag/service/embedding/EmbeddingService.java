@@ -13,17 +13,26 @@ import org.springframework.ai.ollama.api.OllamaApi;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
 import javax.net.ssl.SSLException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
@@ -35,20 +44,31 @@ public class EmbeddingService {
     private Integer dimension;
     private final EmbeddingModel.EmbeddingsRequest checkEmbeddingsRequest = new EmbeddingModel.EmbeddingsRequest().setInput(List.of("test"));
     private final EmbeddingProperties embeddingProperties;
+    private final EmbeddingCacheService embeddingCacheService;
     private volatile WebClient webClient;
     private volatile String embeddingsPath;
+    // 当前生效的 OpenAI 分片大小，被提供商拒绝或限流时减半，重载配置后恢复
+    private final AtomicInteger openAiBatchSize = new AtomicInteger(10);
+    private static final int OPEN_AI_MAX_RETRIES = 5;
+    private static final Duration OPEN_AI_RETRY_BACKOFF = Duration.ofMillis(500);
+    // 批量超限的错误信息，如 "batch size is invalid, it should not be larger than 10"、"Too many inputs"
+    private static final Pattern OPEN_AI_BATCH_LIMIT_MESSAGE = Pattern.compile(
+            "batch|too many inputs?|(number|count) of (inputs|texts)|(inputs?|texts?)\\b[^.]*\\b(larger|more) than", Pattern.CASE_INSENSITIVE);
 
     private static String secondsToDurationString(int seconds) {
         // Ollama expects duration with a unit. We store keep-alive as seconds.
         return Math.max(seconds, 0) + "s";
     }
 
-    public EmbeddingService(@Autowired EmbeddingProperties embeddingProperties) {
+    public EmbeddingService(@Autowired EmbeddingProperties embeddingProperties, EmbeddingCacheService embeddingCacheService) {
         this.embeddingProperties = embeddingProperties;
+        this.embeddingCacheService = embeddingCacheService;
         rebuildClient();
     }
 
     public synchronized void reload() {
+        // 重新校验前不使用缓存，避免新的模型配置命中旧模型的向量
+        checkEmbeddingHash = null;
         rebuildClient();
         init();
     }
@@ -77,6 +97,7 @@ public class EmbeddingService {
                             .defaultHeader("Authorization", "Bearer " + embeddingProperties.openAiKey)
                             .build();
                     embeddingsPath = embeddingProperties.embeddingsPath;
+                    openAiBatchSize.set(embeddingProperties.openAiBatchSize);
                     break;
                 case "ollama":
                 default:
@@ -93,12 +114,13 @@ public class EmbeddingService {
 
     public void init() {
         try {
-            // 检查嵌入模型是否变化
-            EmbeddingModel.EmbeddingsResponse response = embed(checkEmbeddingsRequest);
+            // 检查嵌入模型是否变化，必须实际调用模型，不能使用缓存
+            EmbeddingModel.EmbeddingsResponse response = embedFromProviderAsync(checkEmbeddingsRequest).block();
             if (response != null && !response.getData().isEmpty()) {
                 EmbeddingModel.EmbeddingsItem testEmbed = response.getData().getFirst();
                 dimension = testEmbed.getEmbeddings().length;
                 checkEmbeddingHash = HashUtil.getMessageDigest(testEmbed.toString().getBytes(), HashUtil.MdAlgorithm.SHA256);
+                embeddingCacheService.evictStale(checkEmbeddingHash);
             } else {
                 log.warn("Init failed: Unable to fetch embedding for test input.");
             }
@@ -107,57 +129,190 @@ public class EmbeddingService {
         }
     }
 
+    /**
+     * 嵌入文本，阻塞等待 {@link #embedAsync} 的结果
+     */
     public EmbeddingModel.EmbeddingsResponse embed(EmbeddingModel.EmbeddingsRequest embeddingsRequest) {
-        List<EmbeddingModel.EmbeddingsItem> embeddingsItems = new ArrayList<>();
-        try {
-            switch (embeddingProperties.embeddingProvider) {
-                case "open-ai":
-                    handleOpenAIEmbeddings(embeddingsRequest, embeddingsItems);
-                    break;
-                case "ollama":
-                default:
-                    handleOllamaEmbeddings(embeddingsRequest, embeddingsItems);
-                    break;
-            }
-        } catch (WebClientResponseException e) {
-            log.error("{} API 返回错误状态码: {}, Body: {}",
-                    embeddingProperties.embeddingProvider, e.getStatusCode(), e.getResponseBodyAsString());
-        } catch (Exception e) {
-            log.error("调用嵌入模型失败: Provider={}", embeddingProperties.embeddingProvider, e);
+        return embedAsync(embeddingsRequest).block();
+    }
+
+    /**
+     * 异步嵌入文本，已缓存的文本直接返回缓存的向量，只有未命中的文本会调用模型
+     * <p>
+     * 缓存读写涉及数据库，在 boundedElastic 线程上执行，不占用 Netty 事件循环线程。
+     */
+    public Mono<EmbeddingModel.EmbeddingsResponse> embedAsync(EmbeddingModel.EmbeddingsRequest embeddingsRequest) {
+        String currentCheckEmbeddingHash = checkEmbeddingHash;
+        if (!embeddingCacheService.isEnabled() || currentCheckEmbeddingHash == null) {
+            return embedFromProviderAsync(embeddingsRequest);
+        }
+        String embeddingProvider = embeddingProperties.embeddingProvider;
+        String embeddingModel = modelName();
+        List<String> input = embeddingsRequest.getInput();
+        return Mono.fromCallable(() -> embeddingCacheService.get(input, embeddingProvider, embeddingModel, currentCheckEmbeddingHash))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> {
+                    List<String> misses = input.stream().filter(text -> !cached.containsKey(text)).distinct().toList();
+                    Mono<List<EmbeddingModel.EmbeddingsItem>> fetchedMono = misses.isEmpty()
+                            ? Mono.just(List.of())
+                            : embedFromProviderAsync(new EmbeddingModel.EmbeddingsRequest().setInput(misses))
+                            .map(EmbeddingModel.EmbeddingsResponse::getData)
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(embeddingCacheService::put);
+                    return fetchedMono.map(fetchedItems -> {
+                        Map<String, EmbeddingModel.EmbeddingsItem> fetched = new HashMap<>();
+                        for (EmbeddingModel.EmbeddingsItem embeddingsItem : fetchedItems) {
+                            fetched.putIfAbsent(embeddingsItem.getText(), embeddingsItem);
+                        }
+                        List<EmbeddingModel.EmbeddingsItem> embeddingsItems = new ArrayList<>(input.size());
+                        for (String text : input) {
+                            float[] embedding = cached.get(text);
+                            if (embedding != null) {
+                                embeddingsItems.add(new EmbeddingModel.EmbeddingsItem()
+                                        .setEmbeddingProvider(embeddingProvider)
+                                        .setEmbeddingModel(embeddingModel)
+                                        .setCheckEmbeddingHash(currentCheckEmbeddingHash)
+                                        .setText(text)
+                                        .setEmbeddings(embedding));
+                            } else if (fetched.containsKey(text)) {
+                                embeddingsItems.add(fetched.get(text));
+                            }
+                        }
+                        if (!cached.isEmpty()) {
+                            log.debug("Embedding cache hit: {}, miss: {}", cached.size(), misses.size());
+                        }
+                        return new EmbeddingModel.EmbeddingsResponse().setData(embeddingsItems);
+                    });
+                });
+    }
+
+    private String modelName() {
+        return "open-ai".equals(embeddingProperties.embeddingProvider) ? embeddingProperties.openAiModelName : embeddingProperties.ollamaModelName;
+    }
+
+    /**
+     * 调用嵌入模型，失败时记录日志并返回空结果
+     */
+    private Mono<EmbeddingModel.EmbeddingsResponse> embedFromProviderAsync(EmbeddingModel.EmbeddingsRequest embeddingsRequest) {
+        Mono<List<EmbeddingModel.EmbeddingsItem>> embeddingsItems = switch (embeddingProperties.embeddingProvider) {
+            case "open-ai" -> handleOpenAIEmbeddings(embeddingsRequest);
+            default -> handleOllamaEmbeddings(embeddingsRequest);
+        };
+        return embeddingsItems
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    log.error("{} API 返回错误状态码: {}, Body: {}",
+                            embeddingProperties.embeddingProvider, e.getStatusCode(), e.getResponseBodyAsString());
+                    return Mono.just(List.of());
+                })
+                .onErrorResume(e -> {
+                    log.error("调用嵌入模型失败: Provider={}", embeddingProperties.embeddingProvider, e);
+                    return Mono.just(List.of());
+                })
+                .map(items -> new EmbeddingModel.EmbeddingsResponse().setData(items));
+    }
+
+    private Mono<List<EmbeddingModel.EmbeddingsItem>> handleOpenAIEmbeddings(EmbeddingModel.EmbeddingsRequest embeddingsRequest) {
+        // 分片并发请求，flatMapSequential 保证结果顺序与输入一致
+        List<List<String>> partitionInputs = ListUtils.partition(embeddingsRequest.getInput(), openAiBatchSize.get());
+        String currentCheckEmbeddingHash = checkEmbeddingHash;
+        return Flux.fromIterable(partitionInputs)
+                .flatMapSequential(partitionInput -> embedOpenAIPartition(partitionInput, currentCheckEmbeddingHash, 0),
+                        embeddingProperties.openAiConcurrency)
+                .flatMapIterable(items -> items)
+                .collectList()
+                .doOnNext(embeddingsItems -> log.info("finish embeddings: {}", embeddingsItems.size()));
+    }
+
+    /**
+     * 请求单个分片，429 时退避重试，提供商拒绝批量大小时拆分为两半分别请求，并缩小后续分片大小
+     */
+    private Mono<List<EmbeddingModel.EmbeddingsItem>> embedOpenAIPartition(List<String> partitionInput, String currentCheckEmbeddingHash, int retries) {
+        OpenAiApi.EmbeddingRequest<List<String>> openAIEmbeddingsRequest =
+                new OpenAiApi.EmbeddingRequest<>(partitionInput, embeddingProperties.openAiModelName);
+        return webClient.post()
+                .uri(embeddingsPath)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(openAIEmbeddingsRequest) // 自动序列化为 JSON
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<OpenAiApi.EmbeddingList<OpenAiApi.Embedding>>() {
+                })
+                .map(openAIEmbeddingsResponse -> toEmbeddingsItems(partitionInput, openAIEmbeddingsResponse, currentCheckEmbeddingHash))
+                .onErrorResume(WebClientResponseException.TooManyRequests.class, e -> {
+                    if (retries >= OPEN_AI_MAX_RETRIES) {
+                        return Mono.error(e);
+                    }
+                    shrinkOpenAiBatchSize(partitionInput.size());
+                    Duration delay = retryAfter(e, retries);
+                    log.warn("Embedding API rate limited, retry {} after {} ms, batch size: {}", retries + 1, delay.toMillis(), partitionInput.size());
+                    return Mono.delay(delay).then(embedOpenAIPartition(partitionInput, currentCheckEmbeddingHash, retries + 1));
+                })
+                .onErrorResume(e -> partitionInput.size() > 1 && e instanceof WebClientResponseException responseException
+                        && isBatchSizeRejected(responseException), e -> {
+                    // 部分提供商限制单次请求的文本数（如 10），超出时返回 400/413
+                    shrinkOpenAiBatchSize(partitionInput.size());
+                    int half = partitionInput.size() / 2;
+                    log.warn("Embedding API rejected batch size {}, splitting", partitionInput.size());
+                    return Flux.concat(
+                                    embedOpenAIPartition(partitionInput.subList(0, half), currentCheckEmbeddingHash, retries),
+                                    embedOpenAIPartition(partitionInput.subList(half, partitionInput.size()), currentCheckEmbeddingHash, retries))
+                            .flatMapIterable(items -> items)
+                            .collectList();
+                });
+    }
+
+    private List<EmbeddingModel.EmbeddingsItem> toEmbeddingsItems(List<String> partitionInput,
+                                                                 OpenAiApi.EmbeddingList<OpenAiApi.Embedding> openAIEmbeddingsResponse,
+                                                                 String currentCheckEmbeddingHash) {
+        if (openAIEmbeddingsResponse == null || openAIEmbeddingsResponse.data() == null) {
+            return List.of();
         }
+        List<EmbeddingModel.EmbeddingsItem> embeddingsItems = new ArrayList<>(openAIEmbeddingsResponse.data().size());
+        for (int i = 0; i < openAIEmbeddingsResponse.data().size(); i++) {
+            OpenAiApi.Embedding embedding = openAIEmbeddingsResponse.data().get(i);
+            // 以 index 对应输入文本，缺失时按返回顺序
+            Integer index = embedding.index();
+            int textIndex = index != null && index >= 0 && index < partitionInput.size() ? index : i;
+            embeddingsItems.add(new EmbeddingModel.EmbeddingsItem()
+                    .setEmbeddingProvider(embeddingProperties.embeddingProvider)
+                    .setEmbeddingModel(embeddingProperties.openAiModelName)
+                    .setCheckEmbeddingHash(currentCheckEmbeddingHash)
+                    .setText(partitionInput.get(textIndex))
+                    .setEmbeddings(embedding.embedding()));
+        }
+        return embeddingsItems;
+    }
 
-        return new EmbeddingModel.EmbeddingsResponse().setData(embeddingsItems);
-    }
-
-    private void handleOpenAIEmbeddings(EmbeddingModel.EmbeddingsRequest embeddingsRequest, List<EmbeddingModel.EmbeddingsItem> embeddingsItems) {
-        List<List<String>> partitionInputs = ListUtils.partition(embeddingsRequest.getInput(), 10);
-        for (List<String> partitionInput : partitionInputs) {
-            OpenAiApi.EmbeddingRequest<List<String>> openAIEmbeddingsRequest =
-                    new OpenAiApi.EmbeddingRequest<>(partitionInput, embeddingProperties.openAiModelName);
-            OpenAiApi.EmbeddingList<OpenAiApi.Embedding> openAIEmbeddingsResponse = webClient.post()
-                    .uri(embeddingsPath)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(openAIEmbeddingsRequest) // 自动序列化为 JSON
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<OpenAiApi.EmbeddingList<OpenAiApi.Embedding>>() {
-                    })
-                    .block(); // 阻塞等待结果
-
-            if (openAIEmbeddingsResponse != null && openAIEmbeddingsResponse.data() != null) {
-                for (int i = 0; i < openAIEmbeddingsResponse.data().size(); i++) {
-                    embeddingsItems.add(new EmbeddingModel.EmbeddingsItem()
-                            .setEmbeddingProvider(embeddingProperties.embeddingProvider)
-                            .setEmbeddingModel(embeddingProperties.openAiModelName)
-                            .setCheckEmbeddingHash(checkEmbeddingHash)
-                            .setText(partitionInput.get(i))
-                            .setEmbeddings(openAIEmbeddingsResponse.data().get(i).embedding()));
-                }
+    /**
+     * 是否因批量过大被拒绝：413，或错误信息指明批量/文本数限制的 400，其他 400 不拆分、不影响后续分片大小
+     */
+    private static boolean isBatchSizeRejected(WebClientResponseException e) {
+        int status = e.getStatusCode().value();
+        if (status == 413) {
+            return true;
+        }
+        return status == 400 && OPEN_AI_BATCH_LIMIT_MESSAGE.matcher(e.getResponseBodyAsString()).find();
+    }
+
+    private void shrinkOpenAiBatchSize(int failedBatchSize) {
+        int shrunk = Math.max(failedBatchSize / 2, 1);
+        if (openAiBatchSize.accumulateAndGet(shrunk, Math::min) == shrunk) {
+            log.info("OpenAI embedding batch size reduced to {}", shrunk);
+        }
+    }
+
+    private static Duration retryAfter(WebClientResponseException e, int retries) {
+        String retryAfter = e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return Duration.ofSeconds(Math.min(Long.parseLong(retryAfter.trim()), 60));
+            } catch (NumberFormatException ignored) {
+                // 非秒数格式（HTTP 日期）时按指数退避
             }
         }
-        log.info("finish embeddings: {}", embeddingsItems.size());
+        return OPEN_AI_RETRY_BACKOFF.multipliedBy(1L << retries);
     }
 
-    private void handleOllamaEmbeddings(EmbeddingModel.EmbeddingsRequest embeddingsRequest, List<EmbeddingModel.EmbeddingsItem> embeddingsItems) {
+    private Mono<List<EmbeddingModel.EmbeddingsItem>> handleOllamaEmbeddings(EmbeddingModel.EmbeddingsRequest embeddingsRequest) {
         OllamaApi.EmbeddingsRequest ollamaEmbeddingsRequest = new OllamaApi.EmbeddingsRequest(
                 embeddingProperties.ollamaModelName,
                 embeddingsRequest.getInput(),
@@ -165,29 +320,28 @@ public class EmbeddingService {
                 null,
                 null
         );
-        OllamaApi.EmbeddingsResponse ollamaEmbeddingsResponse = webClient.post()
+        String currentCheckEmbeddingHash = checkEmbeddingHash;
+        return webClient.post()
                 .uri(embeddingsPath)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(ollamaEmbeddingsRequest) // 自动序列化为 JSON
                 .retrieve()
                 .bodyToMono(OllamaApi.EmbeddingsResponse.class)
-                .block(); // 阻塞等待结果
-        if (ollamaEmbeddingsResponse != null && ollamaEmbeddingsResponse.embeddings() != null) {
-            List<float[]> embeddings = ollamaEmbeddingsResponse.embeddings();
-            for (int i = 0; i < embeddings.size(); i++) {
-                // embeddings item is typically a List<Double>
-                float[] floats = embeddings.get(i);
-                for (int j = 0; j < embeddings.size(); j++) {
-                    Number v = floats[j];
-                    floats[j] = v.floatValue();
-                }
-                embeddingsItems.add(new EmbeddingModel.EmbeddingsItem()
-                        .setEmbeddingProvider(embeddingProperties.embeddingProvider)
-                        .setEmbeddingModel(embeddingProperties.ollamaModelName)
-                        .setCheckEmbeddingHash(checkEmbeddingHash)
-                        .setText(embeddingsRequest.getInput().get(i))
-                        .setEmbeddings(floats));
-            }
-        }
+                .map(ollamaEmbeddingsResponse -> {
+                    List<EmbeddingModel.EmbeddingsItem> embeddingsItems = new ArrayList<>();
+                    if (ollamaEmbeddingsResponse.embeddings() != null) {
+                        List<float[]> embeddings = ollamaEmbeddingsResponse.embeddings();
+                        for (int i = 0; i < embeddings.size(); i++) {
+                            embeddingsItems.add(new EmbeddingModel.EmbeddingsItem()
+                                    .setEmbeddingProvider(embeddingProperties.embeddingProvider)
+                                    .setEmbeddingModel(embeddingProperties.ollamaModelName)
+                                    .setCheckEmbeddingHash(currentCheckEmbeddingHash)
+                                    .setText(embeddingsRequest.getInput().get(i))
+                                    .setEmbeddings(embeddings.get(i)));
+                        }
+                    }
+                    return embeddingsItems;
+                })
+                .defaultIfEmpty(List.of());
     }
 }
\ No newline at end of file
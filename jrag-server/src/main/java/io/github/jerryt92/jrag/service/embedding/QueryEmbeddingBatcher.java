@@ -0,0 +1,141 @@
+package io.github.jerryt92.jrag.service.embedding;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询向量化的微批合并器
+ * <p>
+ * 并发的单条查询在 window-millis 时间窗内（或累计到 max-batch-size 条时）合并为一次嵌入请求，
+ * 各调用方拿到自己文本的向量，单次调用最多增加一个时间窗的延迟。
+ */
+@Slf4j
+@Service
+public class QueryEmbeddingBatcher {
+    private final EmbeddingService embeddingService;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("query-embedding-batcher").factory());
+    private final Object lock = new Object();
+    private List<PendingQuery> pendingQueries = new ArrayList<>();
+    // 当前批次编号，定时刷新时用于判断批次是否已因数量达到上限被提前发出
+    private long batchId;
+
+    public QueryEmbeddingBatcher(EmbeddingService embeddingService,
+                                 @Value("${jrag.embedding-batch.enabled:true}") boolean enabled,
+                                 @Value("${jrag.embedding-batch.window-millis:3}") long windowMillis,
+                                 @Value("${jrag.embedding-batch.max-batch-size:32}") int maxBatchSize) {
+        this.embeddingService = embeddingService;
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+    }
+
+    /**
+     * 向量化单条查询文本，阻塞等待所在批次完成
+     *
+     * @return 向量，嵌入失败时返回 null
+     */
+    public float[] embed(String text) {
+        if (!enabled) {
+            List<EmbeddingModel.EmbeddingsItem> data = embeddingService.embed(new EmbeddingModel.EmbeddingsRequest().setInput(List.of(text))).getData();
+            return data.isEmpty() ? null : data.getFirst().getEmbeddings();
+        }
+        return submit(text).join();
+    }
+
+    /**
+     * 异步向量化单条查询文本，嵌入失败时为空
+     */
+    public Mono<float[]> embedAsync(String text) {
+        if (!enabled) {
+            return embeddingService.embedAsync(new EmbeddingModel.EmbeddingsRequest().setInput(List.of(text)))
+                    .flatMap(response -> Mono.justOrEmpty(response.getData().stream().findFirst().map(EmbeddingModel.EmbeddingsItem::getEmbeddings)));
+        }
+        return Mono.fromFuture(() -> submit(text));
+    }
+
+    public CompletableFuture<float[]> submit(String text) {
+        PendingQuery pendingQuery = new PendingQuery(text, new CompletableFuture<>());
+        List<PendingQuery> fullBatch = null;
+        synchronized (lock) {
+            pendingQueries.add(pendingQuery);
+            if (pendingQueries.size() >= maxBatchSize) {
+                fullBatch = takeBatch();
+            } else if (pendingQueries.size() == 1) {
+                long scheduledBatchId = batchId;
+                scheduler.schedule(() -> flush(scheduledBatchId), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        }
+        return pendingQuery.future();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void flush(long scheduledBatchId) {
+        List<PendingQuery> batch;
+        synchronized (lock) {
+            if (scheduledBatchId != batchId || pendingQueries.isEmpty()) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        dispatch(batch);
+    }
+
+    private List<PendingQuery> takeBatch() {
+        List<PendingQuery> batch = pendingQueries;
+        pendingQueries = new ArrayList<>();
+        batchId++;
+        return batch;
+    }
+
+    private void dispatch(List<PendingQuery> batch) {
+        List<String> input = batch.stream().map(PendingQuery::text).distinct().toList();
+        embeddingService.embedAsync(new EmbeddingModel.EmbeddingsRequest().setInput(input)).subscribe(response -> {
+            Map<String, float[]> embeddings = new HashMap<>();
+            for (EmbeddingModel.EmbeddingsItem embeddingsItem : response.getData()) {
+                embeddings.putIfAbsent(embeddingsItem.getText(), embeddingsItem.getEmbeddings());
+            }
+            if (batch.size() > 1) {
+                log.debug("Coalesced {} query embeddings into one request", batch.size());
+            }
+            for (PendingQuery pendingQuery : batch) {
+                pendingQuery.future().complete(embeddings.get(pendingQuery.text()));
+            }
+        }, t -> {
+            for (PendingQuery pendingQuery : batch) {
+                pendingQuery.future().completeExceptionally(t);
+            }
+        }, () -> {
+            // 未产生结果时（正常不会发生）避免调用方永久等待
+            for (PendingQuery pendingQuery : batch) {
+                pendingQuery.future().complete(null);
+            }
+        });
+    }
+
+    private record PendingQuery(String text, CompletableFuture<float[]> future) {
+    }
+}
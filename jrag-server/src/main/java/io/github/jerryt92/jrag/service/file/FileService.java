@@ -5,7 +5,9 @@ import io.github.jerryt92.jrag.model.FileBo;
 import io.github.jerryt92.jrag.model.Translator;
 import io.github.jerryt92.jrag.po.mgb.FilePo;
 import io.github.jerryt92.jrag.po.mgb.FilePoExample;
+import io.github.jerryt92.jrag.service.rag.knowledge.KnowledgeCache;
 import io.github.jerryt92.jrag.utils.HashUtil;
+import io.github.jerryt92.jrag.utils.TransactionUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
@@ -32,15 +34,18 @@ public class FileService {
 
     private final FilePoMapper filePoMapper;
 
+    private final KnowledgeCache knowledgeCache;
+
     private final String CLASS_PATH;
 
-    public FileService(FilePoMapper filePoMapper) {
+    public FileService(FilePoMapper filePoMapper, KnowledgeCache knowledgeCache) {
         URL resource = this.getClass().getResource("/");
         if (resource == null) {
             throw new RuntimeException("classpath not found");
         }
         CLASS_PATH = resource.getPath();
         this.filePoMapper = filePoMapper;
+        this.knowledgeCache = knowledgeCache;
     }
 
     @PostConstruct
@@ -128,6 +133,7 @@ public class FileService {
                         }
                     }
                     filePoMapper.deleteByPrimaryKey(id);
+                    TransactionUtil.afterCommit(() -> knowledgeCache.evictFiles(List.of(id)));
                 }
                 //获得上传文件名
                 String fileName = multipartFile.getOriginalFilename();
@@ -174,6 +180,7 @@ public class FileService {
         filePoExample.createCriteria().andIdIn(fileId);
         List<FilePo> filePos = filePoMapper.selectByExample(filePoExample);
         filePoMapper.deleteByExample(filePoExample);
+        TransactionUtil.afterCommit(() -> knowledgeCache.evictFiles(fileId));
         if (!filePos.isEmpty()) {
             for (FilePo filePo : filePos) {
                 filePoExample = new FilePoExample();
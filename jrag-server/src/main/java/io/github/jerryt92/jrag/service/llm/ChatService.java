@@ -24,6 +24,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Service
@@ -62,20 +64,28 @@ public class ChatService {
                 log.error("", e);
             }
             if (!CollectionUtils.isEmpty(request.getMessages())) {
-                ChatContextBo chatContextBo = chatContextService.getChatContext(contextId, userId);
-                if (chatContextBo == null) {
-                    chatContextBo = new ChatContextBo(contextId, userId, llmClient, functionCallingService, chatContextStorageService, llmProperties);
-                    chatContextBo.setMessages(Translator.translateToChatRequest(request).getMessages());
-                    chatContextService.addChatContext(contextId, chatContextBo);
-                }
+                List<ChatModel.Message> contextMessages = Translator.translateToChatRequest(request).getMessages();
                 MessageDto systemPromptMessageDto = new MessageDto();
                 systemPromptMessageDto.setRole(MessageDto.RoleEnum.SYSTEM);
                 systemPromptMessageDto.setContent(systemPrompt);
                 request.getMessages().add(request.getMessages().size() - 1, systemPromptMessageDto);
                 ChatModel.ChatRequest ragRequest = Translator.translateToChatRequest(request);
-                List<RagInfoDto> ragInfoDtos = null;
+                // 先发起检索，查询向量化与加载对话上下文并行
+                CompletableFuture<List<RagInfoDto>> ragFuture = CompletableFuture.completedFuture(null);
                 if (llmProperties.useRag && ragRequest.getRetrievalKb() && ChatModel.Role.USER.equals(ragRequest.getMessages().getLast().getRole())) {
-                    ragInfoDtos = retriever.retrieveQuery(ragRequest);
+                    ragFuture = retriever.retrieveQueryAsync(ragRequest).toFuture();
+                }
+                ChatContextBo chatContextBo = chatContextService.getChatContext(contextId, userId);
+                if (chatContextBo == null) {
+                    chatContextBo = new ChatContextBo(contextId, userId, llmClient, functionCallingService, chatContextStorageService, llmProperties);
+                    chatContextBo.setMessages(contextMessages);
+                    chatContextService.addChatContext(contextId, chatContextBo);
+                }
+                List<RagInfoDto> ragInfoDtos;
+                try {
+                    ragInfoDtos = ragFuture.join();
+                } catch (CompletionException e) {
+                    throw e.getCause();
                 }
                 chatContextBo.setLastRagInfos(ragInfoDtos);
                 request = Translator.translateToChatRequestDto(ragRequest);
@@ -0,0 +1,374 @@
+package io.github.jerryt92.jrag.service.rag.knowledge;
+
+import io.github.jerryt92.jrag.mapper.MyFilePoMapper;
+import io.github.jerryt92.jrag.mapper.mgb.TextChunkPoMapper;
+import io.github.jerryt92.jrag.po.mgb.FilePo;
+import io.github.jerryt92.jrag.po.mgb.FilePoExample;
+import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
+import io.github.jerryt92.jrag.po.mgb.TextChunkPoExample;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * 文本块与文件元数据的内存缓存
+ * <p>
+ * 文本块长短差异很大，容量按估算的字节数而不是条目数限制，超出时淘汰最久未访问的条目。
+ * 未命中时从数据库加载并放入缓存，可选在启动时预热最近更新的文本块。
+ * 知识与文件修改后由调用方在事务提交后写入或失效；加载期间发生过写入或失效时，加载结果不放入缓存，
+ * 避免把提交前读到的旧数据放回去。缓存的对象与调用方共享，调用方不应修改。
+ */
+@Slf4j
+@Service
+@EnableScheduling
+public class KnowledgeCache {
+    private static final int PRELOAD_PAGE_SIZE = 500;
+    // 对象头、包装类型字段与 String 对象本身的固定开销（估算）
+    private static final long TEXT_CHUNK_OVERHEAD = 192;
+    private static final long FILE_OVERHEAD = 288;
+
+    private final TextChunkPoMapper textChunkPoMapper;
+    private final MyFilePoMapper myFilePoMapper;
+    private final boolean enabled;
+    private final boolean preload;
+    private final WeightedLru<String, TextChunkPo> textChunks;
+    private final WeightedLru<Integer, FilePo> files;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public KnowledgeCache(TextChunkPoMapper textChunkPoMapper,
+                          MyFilePoMapper myFilePoMapper,
+                          @Value("${jrag.knowledge-cache.enabled:true}") boolean enabled,
+                          @Value("${jrag.knowledge-cache.text-chunk-max-bytes:67108864}") long textChunkMaxBytes,
+                          @Value("${jrag.knowledge-cache.file-max-bytes:4194304}") long fileMaxBytes,
+                          @Value("${jrag.knowledge-cache.preload:false}") boolean preload) {
+        this.textChunkPoMapper = textChunkPoMapper;
+        this.myFilePoMapper = myFilePoMapper;
+        this.enabled = enabled;
+        this.preload = preload;
+        this.textChunks = new WeightedLru<>(textChunkMaxBytes, KnowledgeCache::weigh);
+        this.files = new WeightedLru<>(fileMaxBytes, KnowledgeCache::weigh);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && preload) {
+            Thread.startVirtualThread(this::preload);
+        }
+    }
+
+    /**
+     * 按更新时间倒序分页加载文本块及其来源文件，直到写满文本块缓存
+     */
+    private void preload() {
+        long start = System.currentTimeMillis();
+        try {
+            int offset = 0;
+            while (!textChunks.isFull()) {
+                long generation = textChunks.generation();
+                TextChunkPoExample textChunkPoExample = new TextChunkPoExample();
+                textChunkPoExample.setOrderByClause("update_time DESC, id");
+                textChunkPoExample.limit(offset, PRELOAD_PAGE_SIZE);
+                List<TextChunkPo> page = textChunkPoMapper.selectByExampleWithBLOBs(textChunkPoExample);
+                Set<Integer> fileIds = new HashSet<>();
+                for (TextChunkPo textChunkPo : page) {
+                    textChunks.load(textChunkPo.getId(), textChunkPo, generation);
+                    if (textChunkPo.getSrcFileId() != null) {
+                        fileIds.add(textChunkPo.getSrcFileId());
+                    }
+                }
+                getFiles(fileIds);
+                if (page.size() < PRELOAD_PAGE_SIZE) {
+                    break;
+                }
+                offset += PRELOAD_PAGE_SIZE;
+            }
+            log.info("Knowledge cache preloaded in {} ms, text chunks: {} ({} bytes), files: {} ({} bytes)",
+                    System.currentTimeMillis() - start, textChunks.size(), textChunks.bytes(), files.size(), files.bytes());
+        } catch (Throwable t) {
+            log.error("Knowledge cache preload failed", t);
+        }
+    }
+
+    /**
+     * 按 id 查询文本块，未命中的从数据库加载
+     */
+    public Map<String, TextChunkPo> getTextChunks(Collection<String> textChunkIds) {
+        Map<String, TextChunkPo> result = new HashMap<>();
+        if (textChunkIds == null || textChunkIds.isEmpty()) {
+            return result;
+        }
+        List<String> missingIds = new ArrayList<>();
+        long generation = textChunks.generation();
+        for (String textChunkId : textChunkIds) {
+            TextChunkPo textChunkPo = enabled ? textChunks.get(textChunkId) : null;
+            if (textChunkPo != null) {
+                result.put(textChunkId, textChunkPo);
+            } else {
+                missingIds.add(textChunkId);
+            }
+        }
+        record(textChunkIds.size() - missingIds.size(), missingIds.size());
+        if (!missingIds.isEmpty()) {
+            TextChunkPoExample textChunkPoExample = new TextChunkPoExample();
+            textChunkPoExample.createCriteria().andIdIn(missingIds);
+            for (TextChunkPo textChunkPo : textChunkPoMapper.selectByExampleWithBLOBs(textChunkPoExample)) {
+                result.putIfAbsent(textChunkPo.getId(), textChunkPo);
+                if (enabled) {
+                    textChunks.load(textChunkPo.getId(), textChunkPo, generation);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按 id 查询文件，未命中的从数据库加载
+     */
+    public Map<Integer, FilePo> getFiles(Collection<Integer> fileIds) {
+        Map<Integer, FilePo> result = new HashMap<>();
+        if (fileIds == null || fileIds.isEmpty()) {
+            return result;
+        }
+        List<Integer> missingIds = new ArrayList<>();
+        long generation = files.generation();
+        for (Integer fileId : fileIds) {
+            if (fileId == null) {
+                continue;
+            }
+            FilePo filePo = enabled ? files.get(fileId) : null;
+            if (filePo != null) {
+                result.put(fileId, filePo);
+            } else {
+                missingIds.add(fileId);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            FilePoExample filePoExample = new FilePoExample();
+            filePoExample.createCriteria().andIdIn(missingIds);
+            loadFiles(myFilePoMapper.selectByExample(filePoExample), generation, result);
+        }
+        return result;
+    }
+
+    /**
+     * 查询文本块的来源文件
+     * <p>
+     * 已缓存的文本块直接取来源文件 id 查文件缓存，其余按文本块 id 关联查询，
+     * 因此可以与 {@link #getTextChunks(Collection)} 并行执行。
+     */
+    public Map<Integer, FilePo> getFilesByTextChunkIds(Collection<String> textChunkIds) {
+        Map<Integer, FilePo> result = new HashMap<>();
+        if (textChunkIds == null || textChunkIds.isEmpty()) {
+            return result;
+        }
+        Set<Integer> fileIds = new HashSet<>();
+        List<String> unknownTextChunkIds = new ArrayList<>();
+        for (String textChunkId : textChunkIds) {
+            TextChunkPo textChunkPo = enabled ? textChunks.get(textChunkId) : null;
+            if (textChunkPo == null) {
+                unknownTextChunkIds.add(textChunkId);
+            } else if (textChunkPo.getSrcFileId() != null) {
+                fileIds.add(textChunkPo.getSrcFileId());
+            }
+        }
+        result.putAll(getFiles(fileIds));
+        if (!unknownTextChunkIds.isEmpty()) {
+            long generation = files.generation();
+            loadFiles(myFilePoMapper.selectByTextChunkIds(unknownTextChunkIds), generation, result);
+        }
+        return result;
+    }
+
+    private void loadFiles(List<FilePo> filePos, long generation, Map<Integer, FilePo> result) {
+        for (FilePo filePo : filePos) {
+            result.putIfAbsent(filePo.getId(), filePo);
+            if (enabled) {
+                files.load(filePo.getId(), filePo, generation);
+            }
+        }
+    }
+
+    /**
+     * 写入新增或修改后的文本块，应在事务提交后调用
+     */
+    public void putTextChunks(Collection<TextChunkPo> textChunkPos) {
+        if (!enabled || textChunkPos == null) {
+            return;
+        }
+        for (TextChunkPo textChunkPo : textChunkPos) {
+            textChunks.put(textChunkPo.getId(), textChunkPo);
+        }
+    }
+
+    /**
+     * 失效文本块，应在事务提交后调用
+     */
+    public void evictTextChunks(Collection<String> textChunkIds) {
+        if (!enabled || textChunkIds == null) {
+            return;
+        }
+        for (String textChunkId : textChunkIds) {
+            textChunks.remove(textChunkId);
+        }
+    }
+
+    /**
+     * 失效文件，应在事务提交后调用
+     */
+    public void evictFiles(Collection<Integer> fileIds) {
+        if (!enabled || fileIds == null) {
+            return;
+        }
+        for (Integer fileId : fileIds) {
+            files.remove(fileId);
+        }
+    }
+
+    public void clear() {
+        textChunks.clear();
+        files.clear();
+    }
+
+    private void record(int hitCount, int missCount) {
+        hits.add(hitCount);
+        misses.add(missCount);
+    }
+
+    @Scheduled(fixedRate = 10, timeUnit = TimeUnit.MINUTES)
+    public void logStatistics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        if (!enabled || hitCount + missCount == 0) {
+            return;
+        }
+        log.info("Knowledge cache text chunk hit ratio: {}, hits: {}, misses: {}, text chunks: {} ({} bytes), files: {} ({} bytes)",
+                String.format("%.3f", (double) hitCount / (hitCount + missCount)), hitCount, missCount,
+                textChunks.size(), textChunks.bytes(), files.size(), files.bytes());
+    }
+
+    static long weigh(TextChunkPo textChunkPo) {
+        return TEXT_CHUNK_OVERHEAD
+                + weigh(textChunkPo.getId())
+                + weigh(textChunkPo.getTextChunk())
+                + weigh(textChunkPo.getDescription())
+                + weigh(textChunkPo.getCreateUserId());
+    }
+
+    static long weigh(FilePo filePo) {
+        return FILE_OVERHEAD
+                + weigh(filePo.getFullFileName())
+                + weigh(filePo.getSuffix())
+                + weigh(filePo.getPath())
+                + weigh(filePo.getMd5())
+                + weigh(filePo.getSha1())
+                + weigh(filePo.getCreateUserId());
+    }
+
+    /**
+     * 按 UTF-16 估算，只含 Latin-1 字符的字符串实际只占一半
+     */
+    private static long weigh(String value) {
+        return value == null ? 0 : 2L * value.length();
+    }
+
+    /**
+     * 按权重（字节数）限制容量的 LRU
+     * <p>
+     * 每次写入或失效递增代数，{@link #load} 只在代数未变化时放入，用于丢弃与写入并发的旧加载结果。
+     */
+    private static final class WeightedLru<K, V> {
+        private final long maxBytes;
+        private final ToLongFunction<V> weigher;
+        private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+        private long generation;
+
+        WeightedLru(long maxBytes, ToLongFunction<V> weigher) {
+            this.maxBytes = maxBytes;
+            this.weigher = weigher;
+        }
+
+        synchronized V get(K key) {
+            Weighted<V> weighted = entries.get(key);
+            return weighted == null ? null : weighted.value();
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void put(K key, V value) {
+            generation++;
+            putInternal(key, value);
+        }
+
+        synchronized void load(K key, V value, long expectedGeneration) {
+            if (generation == expectedGeneration && !entries.containsKey(key)) {
+                putInternal(key, value);
+            }
+        }
+
+        synchronized void remove(K key) {
+            generation++;
+            Weighted<V> removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= removed.weight();
+            }
+        }
+
+        synchronized void clear() {
+            generation++;
+            entries.clear();
+            bytes = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized boolean isFull() {
+            return bytes >= maxBytes;
+        }
+
+        private void putInternal(K key, V value) {
+            long weight = weigher.applyAsLong(value);
+            Weighted<V> previous = weight > maxBytes ? entries.remove(key) : entries.put(key, new Weighted<>(value, weight));
+            if (previous != null) {
+                bytes -= previous.weight();
+            }
+            if (weight > maxBytes) {
+                return;
+            }
+            bytes += weight;
+            Iterator<Weighted<V>> iterator = entries.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().weight();
+                iterator.remove();
+            }
+        }
+    }
+
+    private record Weighted<V>(V value, long weight) {
+    }
+}
@@ -2,7 +2,6 @@ package io.github.jerryt92.jrag.service.rag.knowledge;
 
 import io.github.jerryt92.jrag.mapper.MyTextChunkPoMapper;
 import io.github.jerryt92.jrag.mapper.mgb.EmbeddingsItemPoMapper;
-import io.github.jerryt92.jrag.mapper.mgb.FilePoMapper;
 import io.github.jerryt92.jrag.mapper.mgb.UserPoMapper;
 import io.github.jerryt92.jrag.model.EmbeddingModel;
 import io.github.jerryt92.jrag.model.KnowledgeAddDto;
@@ -14,19 +13,22 @@ import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPo;
 import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoExample;
 import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
 import io.github.jerryt92.jrag.po.mgb.FilePo;
-import io.github.jerryt92.jrag.po.mgb.FilePoExample;
 import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
 import io.github.jerryt92.jrag.po.mgb.TextChunkPoExample;
 import io.github.jerryt92.jrag.po.mgb.UserPo;
 import io.github.jerryt92.jrag.po.mgb.UserPoExample;
 import io.github.jerryt92.jrag.service.embedding.EmbeddingService;
+import io.github.jerryt92.jrag.service.rag.retrieval.QueryResultCache;
 import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
 import io.github.jerryt92.jrag.utils.HashUtil;
+import io.github.jerryt92.jrag.utils.TransactionUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -40,6 +42,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -49,21 +52,30 @@ public class KnowledgeService {
     private final EmbeddingService embeddingService;
     private final MyTextChunkPoMapper myTextChunkPoMapper;
     private final EmbeddingsItemPoMapper embeddingsItemPoMapper;
-    private final FilePoMapper filePoMapper;
     private final UserPoMapper userPoMapper;
     private final TransactionTemplate transactionTemplate;
     private final VectorDatabaseService vectorDatabaseService;
     private final SqlSessionFactory sqlSessionFactory;
+    private final QueryResultCache queryResultCache;
+    private final KnowledgeCache knowledgeCache;
+    private final VectorOutbox vectorOutbox;
+    /**
+     * 元数据过滤最多解析出的文本块数量，过滤条件以 ID 列表下推到向量数据库，超出时拒绝请求
+     */
+    @Value("${jrag.knowledge-retrieve.max-filter-text-chunks:1000}")
+    private int maxFilterTextChunks;
 
-    public KnowledgeService(EmbeddingService embeddingService, MyTextChunkPoMapper myTextChunkPoMapper, EmbeddingsItemPoMapper embeddingsItemPoMapper, FilePoMapper filePoMapper, UserPoMapper userPoMapper, TransactionTemplate transactionTemplate, VectorDatabaseService vectorDatabaseService, SqlSessionFactory sqlSessionFactory) {
+    public KnowledgeService(EmbeddingService embeddingService, MyTextChunkPoMapper myTextChunkPoMapper, EmbeddingsItemPoMapper embeddingsItemPoMapper, UserPoMapper userPoMapper, TransactionTemplate transactionTemplate, VectorDatabaseService vectorDatabaseService, SqlSessionFactory sqlSessionFactory, QueryResultCache queryResultCache, KnowledgeCache knowledgeCache, VectorOutbox vectorOutbox) {
         this.embeddingService = embeddingService;
         this.myTextChunkPoMapper = myTextChunkPoMapper;
         this.embeddingsItemPoMapper = embeddingsItemPoMapper;
-        this.filePoMapper = filePoMapper;
         this.userPoMapper = userPoMapper;
         this.transactionTemplate = transactionTemplate;
         this.vectorDatabaseService = vectorDatabaseService;
         this.sqlSessionFactory = sqlSessionFactory;
+        this.queryResultCache = queryResultCache;
+        this.knowledgeCache = knowledgeCache;
+        this.vectorOutbox = vectorOutbox;
     }
 
     public KnowledgeGetListDto getKnowledge(Integer offset, Integer limit, String search) {
@@ -89,13 +101,7 @@ public class KnowledgeService {
         }
         // 获取所有file
         List<Integer> fileId = new ArrayList<>(new HashSet<>(textChunkPos.stream().map(TextChunkPo::getSrcFileId).collect(Collectors.toList())));
-        FilePoExample filePoExample = new FilePoExample();
-        filePoExample.createCriteria().andIdIn(fileId);
-        List<FilePo> filePos = filePoMapper.selectByExample(filePoExample);
-        Map<Integer, FilePo> fileIdToFilePo = new HashMap<>();
-        for (FilePo filePo : filePos) {
-            fileIdToFilePo.put(filePo.getId(), filePo);
-        }
+        Map<Integer, FilePo> fileIdToFilePo = knowledgeCache.getFiles(fileId);
         List<KnowledgeDto> knowledgeDtoList = new ArrayList<>();
         List<String> userIdList = textChunkPos.stream().map(TextChunkPo::getCreateUserId).distinct().toList();
         UserPoExample userPoExample = new UserPoExample();
@@ -130,6 +136,9 @@ public class KnowledgeService {
                 }
             }
         }
+        // 先发起嵌入请求，与下面的数据库查询、删除并行
+        CompletableFuture<EmbeddingModel.EmbeddingsResponse> embedFuture = embeddingService.embedAsync(
+                new EmbeddingModel.EmbeddingsRequest().setInput(new ArrayList<>(outlineMap.values()))).toFuture();
         // 查询已存在的 TextChunkPo
         TextChunkPoExample textChunkPoExample = new TextChunkPoExample();
         textChunkPoExample.createCriteria().andIdIn(knowledgeAddDtoList.stream().map(KnowledgeAddDto::getId).collect(Collectors.toList()));
@@ -160,9 +169,9 @@ public class KnowledgeService {
             EmbeddingsItemPoExample deleteExample = new EmbeddingsItemPoExample();
             deleteExample.createCriteria().andHashIn(hashesToDelete);
             embeddingsItemPoMapper.deleteByExample(deleteExample);
-            vectorDatabaseService.deleteData(hashesToDelete); // 同步删除向量数据库中的数据
+            vectorOutbox.enqueueDelete(hashesToDelete); // 事务提交后删除向量数据库中的数据
         }
-        EmbeddingModel.EmbeddingsResponse embed = embeddingService.embed(new EmbeddingModel.EmbeddingsRequest().setInput(new ArrayList<>(outlineMap.values())));
+        EmbeddingModel.EmbeddingsResponse embed = embedFuture.join();
         if (embed == null || CollectionUtils.isEmpty(embed.getData())) {
             throw new IllegalStateException("Embedding failed: empty response. Check embedding configuration or API key.");
         }
@@ -219,13 +228,13 @@ public class KnowledgeService {
         }
         if (!insertEmbeddingsItemPoList.isEmpty()) {
             embeddingsItemPoMapper.batchInsert(insertEmbeddingsItemPoList);
-            vectorDatabaseService.putData(insertEmbeddingsItemPoList);
+            vectorOutbox.enqueueUpsert(insertEmbeddingsItemPoList.stream().map(EmbeddingsItemPo::getHash).toList());
         }
         if (!updateEmbeddingsItemPoList.isEmpty()) {
             for (EmbeddingsItemPoWithBLOBs embeddingsItemPo : updateEmbeddingsItemPoList) {
                 embeddingsItemPoMapper.updateByPrimaryKey(embeddingsItemPo);
             }
-            vectorDatabaseService.putData(updateEmbeddingsItemPoList);
+            vectorOutbox.enqueueUpsert(updateEmbeddingsItemPoList.stream().map(EmbeddingsItemPo::getHash).toList());
         }
         if (!insertTextChunkPoList.isEmpty()) {
             myTextChunkPoMapper.batchInsert(insertTextChunkPoList);
@@ -233,6 +242,19 @@ public class KnowledgeService {
         for (TextChunkPo textChunkPo : updateTextChunkPoList) {
             myTextChunkPoMapper.updateByPrimaryKeyWithBLOBs(textChunkPo);
         }
+        // 新增的文本块可能出现在任意查询的结果中，清空检索结果缓存；只修改已有文本块时失效引用了它们的缓存
+        boolean hasNewTextChunk = !insertTextChunkPoList.isEmpty();
+        List<String> touchedTextChunkIds = knowledgeAddDtoList.stream().map(KnowledgeAddDto::getId).toList();
+        List<TextChunkPo> writtenTextChunkPos = new ArrayList<>(insertTextChunkPoList);
+        writtenTextChunkPos.addAll(updateTextChunkPoList);
+        TransactionUtil.afterCommit(() -> {
+            knowledgeCache.putTextChunks(writtenTextChunkPos);
+            if (hasNewTextChunk) {
+                queryResultCache.clear();
+            } else {
+                queryResultCache.invalidateTextChunks(touchedTextChunkIds);
+            }
+        });
     }
 
     @Transactional(rollbackFor = Throwable.class)
@@ -252,15 +274,128 @@ public class KnowledgeService {
             List<EmbeddingsItemPo> embeddingsItemPos = embeddingsItemPoMapper.selectByExample(embeddingsItemPoExample);
             embeddingsItemPoMapper.deleteByExample(embeddingsItemPoExample);
             List<String> embedTextHashes = embeddingsItemPos.stream().map(EmbeddingsItemPo::getHash).distinct().toList();
-            vectorDatabaseService.deleteData(embedTextHashes);
+            vectorOutbox.enqueueDelete(embedTextHashes);
+            TransactionUtil.afterCommit(() -> {
+                knowledgeCache.evictTextChunks(textChunkIds);
+                queryResultCache.invalidateTextChunks(textChunkIds);
+            });
             log.warn("Delete knowledge success, textChunkIds: {}, userId: {}", textChunkIds, sessionBo.getUserId());
         } catch (Throwable t) {
             log.error("", t);
         }
     }
 
-    public List<EmbeddingsItemPoWithBLOBs> checkAndGetEmbedData(String checkEmbeddingHash) {
-        // 查询是否存在checkEmbeddingHash不一致的数据
+    /**
+     * 将检索的元数据过滤条件解析为文本块 ID，多个条件同时满足
+     *
+     * @param fileIds       来源文件 ID
+     * @param createUserIds 创建者 ID
+     * @param description   描述包含的文本
+     * @return 条件都为空时返回 null，表示不过滤
+     * @throws IllegalArgumentException 匹配的文本块超过 jrag.knowledge-retrieve.max-filter-text-chunks
+     */
+    public VectorFilter resolveVectorFilter(List<Integer> fileIds, List<String> createUserIds, String description) {
+        if (CollectionUtils.isEmpty(fileIds) && CollectionUtils.isEmpty(createUserIds) && StringUtils.isBlank(description)) {
+            return null;
+        }
+        String descriptionLike = StringUtils.isNotBlank(description) ? "%" + escapeLike(description) + "%" : null;
+        // 多查一条用于判断是否超出上限
+        List<String> textChunkIds = myTextChunkPoMapper.selectIdsByMetadata(fileIds, createUserIds, descriptionLike, maxFilterTextChunks + 1);
+        if (textChunkIds.size() > maxFilterTextChunks) {
+            throw new IllegalArgumentException("Filter matches more than " + maxFilterTextChunks + " text chunks, narrow the filter conditions");
+        }
+        return new VectorFilter(new HashSet<>(textChunkIds));
+    }
+
+    /**
+     * 以 ! 转义 LIKE 的通配符，与 selectIdsByMetadata 中的 escape '!' 对应
+     */
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '!' || c == '%' || c == '_') {
+                escaped.append('!');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * 增量同步向量数据库：按 hash 顺序分批扫描 embeddings_item，
+     * 向量数据库中缺失或版本（update_time）不一致的数据分批写入，向量数据库中多余的数据分批删除。
+     * checkEmbeddingHash 不一致的数据不写入，由 checkEmbedData 重新embed后写入
+     *
+     * @param storedVersions 向量数据库中已有数据的 hash 与版本，会被修改
+     * @param batchSize      每批扫描、写入、删除的条数
+     */
+    public void reconcileVectorData(String checkEmbeddingHash, Map<String, Long> storedVersions, int batchSize) {
+        long start = System.currentTimeMillis();
+        int upserted = 0;
+        int deleted = 0;
+        List<String> staleHashes = new ArrayList<>();
+        String lastHash = null;
+        while (true) {
+            EmbeddingsItemPoExample embeddingsItemPoExample = new EmbeddingsItemPoExample();
+            EmbeddingsItemPoExample.Criteria criteria = embeddingsItemPoExample.createCriteria();
+            if (lastHash != null) {
+                criteria.andHashGreaterThan(lastHash);
+            }
+            embeddingsItemPoExample.setOrderByClause("hash");
+            embeddingsItemPoExample.limit(batchSize);
+            // 不查询 text 与 embedding，只有需要写入的数据才读取完整内容
+            List<EmbeddingsItemPo> embeddingsItemPos = embeddingsItemPoMapper.selectByExample(embeddingsItemPoExample);
+            for (EmbeddingsItemPo embeddingsItemPo : embeddingsItemPos) {
+                if (!checkEmbeddingHash.equals(embeddingsItemPo.getCheckEmbeddingHash())) {
+                    continue;
+                }
+                boolean stored = storedVersions.containsKey(embeddingsItemPo.getHash());
+                Long storedVersion = storedVersions.remove(embeddingsItemPo.getHash());
+                long version = embeddingsItemPo.getUpdateTime() == null ? 0L : embeddingsItemPo.getUpdateTime();
+                if (!stored || (storedVersion != null && storedVersion != version)) {
+                    staleHashes.add(embeddingsItemPo.getHash());
+                }
+            }
+            if (staleHashes.size() >= batchSize) {
+                upserted += putStaleData(staleHashes);
+            }
+            if (embeddingsItemPos.size() < batchSize) {
+                break;
+            }
+            lastHash = embeddingsItemPos.getLast().getHash();
+        }
+        if (!staleHashes.isEmpty()) {
+            upserted += putStaleData(staleHashes);
+        }
+        // 剩余的是关系型数据库中已不存在或待重新embed的数据
+        List<String> orphanHashes = new ArrayList<>(storedVersions.keySet());
+        for (int i = 0; i < orphanHashes.size(); i += batchSize) {
+            List<String> batch = orphanHashes.subList(i, Math.min(i + batchSize, orphanHashes.size()));
+            vectorDatabaseService.deleteData(batch);
+            deleted += batch.size();
+        }
+        if (upserted > 0 || deleted > 0) {
+            queryResultCache.clear();
+        }
+        log.info("Vector data reconciled, upserted: {}, deleted: {}, cost {} ms", upserted, deleted, System.currentTimeMillis() - start);
+    }
+
+    private int putStaleData(List<String> staleHashes) {
+        EmbeddingsItemPoExample embeddingsItemPoExample = new EmbeddingsItemPoExample();
+        embeddingsItemPoExample.createCriteria().andHashIn(staleHashes);
+        List<EmbeddingsItemPoWithBLOBs> staleItems = embeddingsItemPoMapper.selectByExampleWithBLOBs(embeddingsItemPoExample);
+        vectorDatabaseService.putData(staleItems);
+        staleHashes.clear();
+        return staleItems.size();
+    }
+
+    /**
+     * 检查是否存在checkEmbeddingHash不一致的数据，存在时后台重新embed
+     *
+     * @param checkEmbeddingHash
+     */
+    public void checkEmbedData(String checkEmbeddingHash) {
         EmbeddingsItemPoExample unSavedEmbeddingsItemPoExample = new EmbeddingsItemPoExample();
         unSavedEmbeddingsItemPoExample.limit(1);
         unSavedEmbeddingsItemPoExample.createCriteria().andCheckEmbeddingHashNotEqualTo(checkEmbeddingHash);
@@ -269,10 +404,6 @@ public class KnowledgeService {
             log.warn("存在不一致的embedding数据，正在重新建立向量数据");
             Thread.startVirtualThread(() -> reEmbedData(checkEmbeddingHash));
         }
-        EmbeddingsItemPoExample embeddingsItemPoExample = new EmbeddingsItemPoExample();
-        embeddingsItemPoExample.createCriteria().andCheckEmbeddingHashEqualTo(checkEmbeddingHash);
-        embeddingsItemPoWithBLOBs = embeddingsItemPoMapper.selectByExampleWithBLOBs(embeddingsItemPoExample);
-        return embeddingsItemPoWithBLOBs;
     }
 
     /**
@@ -323,15 +454,9 @@ public class KnowledgeService {
                         }
                         sqlSession.commit();
                     }
+                    // hash 不变，向量数据库中的旧数据直接被覆盖
+                    vectorOutbox.enqueueUpsert(oldEmbeddingHashes);
                 });
-                try {
-                    // 向量数据库删除旧数据
-                    vectorDatabaseService.deleteData(oldEmbeddingHashes);
-                    // 向量数据库保存新数据
-                    vectorDatabaseService.putData(newEmbeddingsItemPoList);
-                } catch (Throwable t) {
-                    log.error("", t);
-                }
             } else {
                 hasMore.set(false);
             }
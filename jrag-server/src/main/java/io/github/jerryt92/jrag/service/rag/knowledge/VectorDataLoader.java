@@ -0,0 +1,112 @@
+package io.github.jerryt92.jrag.service.rag.knowledge;
+
+import io.github.jerryt92.jrag.mapper.mgb.EmbeddingsItemPoMapper;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoExample;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 向量数据库重建后的全量写入
+ * <p>
+ * 按 hash 顺序用键集分页分批读取 embeddings_item，读取线程只负责查询，
+ * 转换与写入在虚拟线程中并行执行，同时写入的批次数受 load-concurrency 限制，
+ * 堆内最多保留 load-concurrency 批数据，与数据总量无关。
+ */
+@Slf4j
+@Service
+public class VectorDataLoader {
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 5000;
+
+    private final EmbeddingsItemPoMapper embeddingsItemPoMapper;
+    private final VectorDatabaseService vectorDatabaseService;
+    private final int batchSize;
+    private final int concurrency;
+
+    public VectorDataLoader(EmbeddingsItemPoMapper embeddingsItemPoMapper,
+                            VectorDatabaseService vectorDatabaseService,
+                            @Value("${jrag.vector-database.sync-batch-size:500}") int batchSize,
+                            @Value("${jrag.vector-database.load-concurrency:4}") int concurrency) {
+        this.embeddingsItemPoMapper = embeddingsItemPoMapper;
+        this.vectorDatabaseService = vectorDatabaseService;
+        this.batchSize = Math.max(batchSize, 1);
+        this.concurrency = Math.max(concurrency, 1);
+    }
+
+    /**
+     * 写入 checkEmbeddingHash 一致的全部数据，任一批写入失败时停止读取并抛出异常
+     *
+     * @return 写入的条数
+     */
+    public long load(String checkEmbeddingHash) {
+        long start = System.currentTimeMillis();
+        EmbeddingsItemPoExample countExample = new EmbeddingsItemPoExample();
+        countExample.createCriteria().andCheckEmbeddingHashEqualTo(checkEmbeddingHash);
+        long total = embeddingsItemPoMapper.countByExample(countExample);
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong loaded = new AtomicLong();
+        long lastLogTime = start;
+        String lastHash = null;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (failure.get() == null) {
+                EmbeddingsItemPoExample embeddingsItemPoExample = new EmbeddingsItemPoExample();
+                EmbeddingsItemPoExample.Criteria criteria = embeddingsItemPoExample.createCriteria().andCheckEmbeddingHashEqualTo(checkEmbeddingHash);
+                if (lastHash != null) {
+                    criteria.andHashGreaterThan(lastHash);
+                }
+                embeddingsItemPoExample.setOrderByClause("hash");
+                embeddingsItemPoExample.limit(batchSize);
+                // 先取得许可再读取，正在写入的批次达到上限时读取线程等待
+                permits.acquireUninterruptibly();
+                List<EmbeddingsItemPoWithBLOBs> batch;
+                try {
+                    batch = embeddingsItemPoMapper.selectByExampleWithBLOBs(embeddingsItemPoExample);
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                if (batch.isEmpty()) {
+                    permits.release();
+                    break;
+                }
+                lastHash = batch.getLast().getHash();
+                executor.execute(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            vectorDatabaseService.initData(batch);
+                            loaded.addAndGet(batch.size());
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (now - lastLogTime >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastLogTime = now;
+                    log.info("Loading vector data, {}/{}", loaded.get(), total);
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Failed to load vector data after " + loaded.get() + " of " + total + " vectors", failure.get());
+        }
+        vectorDatabaseService.initDataComplete();
+        log.info("Loaded {} vectors, cost {} ms", loaded.get(), System.currentTimeMillis() - start);
+        return loaded.get();
+    }
+}
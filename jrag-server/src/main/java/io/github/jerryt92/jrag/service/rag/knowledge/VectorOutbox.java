@@ -0,0 +1,224 @@
+package io.github.jerryt92.jrag.service.rag.knowledge;
+
+import io.github.jerryt92.jrag.config.LlmProperties;
+import io.github.jerryt92.jrag.mapper.VectorOutboxMapper;
+import io.github.jerryt92.jrag.mapper.mgb.EmbeddingsItemPoMapper;
+import io.github.jerryt92.jrag.po.VectorOutboxPo;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoExample;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+import io.github.jerryt92.jrag.service.rag.retrieval.QueryResultCache;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.utils.TransactionUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 向量数据库写入的事务性发件箱
+ * <p>
+ * 知识写入时只在同一事务内把变更的 hash 记入 vector_outbox 表，事务提交后由后台线程批量写入向量数据库，
+ * 写入延迟不再包含向量数据库的耗时，事务回滚时变更记录一并回滚。
+ * 每批按 hash 合并多次变更，以 embeddings_item 中的当前数据为准：数据存在则 upsert，不存在则删除，
+ * 写入成功后删除对应的发件箱记录；失败时记录保留，按指数退避重试。
+ * <p>
+ * 每次失败给本批记录的 attempts 加一，之后逐条重试这些记录，使无法写入的数据单独失败而不拖住整批。
+ * attempts 达到 max-attempts 的记录不再发送，保留在表中并记录 hash，修复后把 attempts 置 0 即可重新发送。
+ */
+@Slf4j
+@Service
+public class VectorOutbox {
+    private final VectorOutboxMapper vectorOutboxMapper;
+    private final EmbeddingsItemPoMapper embeddingsItemPoMapper;
+    private final VectorDatabaseService vectorDatabaseService;
+    private final QueryResultCache queryResultCache;
+    private final LlmProperties llmProperties;
+    private final int batchSize;
+    private final long intervalMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("vector-outbox").factory());
+    // 已提交但尚未执行的立即发送任务，多次提交合并为一次
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // 以下字段只在 scheduler 线程中访问
+    private long backoffMillis;
+    private long retryAt;
+    // 失败批次中最大的记录 id，不超过它的记录逐条发送
+    private long isolateUntilId = -1;
+
+    public VectorOutbox(VectorOutboxMapper vectorOutboxMapper,
+                        EmbeddingsItemPoMapper embeddingsItemPoMapper,
+                        VectorDatabaseService vectorDatabaseService,
+                        QueryResultCache queryResultCache,
+                        LlmProperties llmProperties,
+                        @Value("${jrag.vector-outbox.batch-size:500}") int batchSize,
+                        @Value("${jrag.vector-outbox.interval-millis:1000}") long intervalMillis,
+                        @Value("${jrag.vector-outbox.max-backoff-millis:60000}") long maxBackoffMillis,
+                        @Value("${jrag.vector-outbox.max-attempts:20}") int maxAttempts) {
+        this.vectorOutboxMapper = vectorOutboxMapper;
+        this.embeddingsItemPoMapper = embeddingsItemPoMapper;
+        this.vectorDatabaseService = vectorDatabaseService;
+        this.queryResultCache = queryResultCache;
+        this.llmProperties = llmProperties;
+        this.batchSize = Math.max(batchSize, 1);
+        this.intervalMillis = Math.max(intervalMillis, 10);
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, this.intervalMillis);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+    }
+
+    /**
+     * 向量数据库在 VectorDatabaseInit 中完成初始化，启动完成后再开始发送，启动前遗留的记录也在此时补发
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::drain, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录需要写入向量数据库的 hash，须在写入 embeddings_item 的同一事务内调用
+     */
+    public void enqueueUpsert(Collection<String> hashes) {
+        enqueue(hashes, VectorOutboxPo.UPSERT);
+    }
+
+    /**
+     * 记录需要从向量数据库删除的 hash，须在删除 embeddings_item 的同一事务内调用
+     */
+    public void enqueueDelete(Collection<String> hashes) {
+        enqueue(hashes, VectorOutboxPo.DELETE);
+    }
+
+    private void enqueue(Collection<String> hashes, String operation) {
+        if (hashes == null || hashes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<VectorOutboxPo> vectorOutboxPos = new ArrayList<>(hashes.size());
+        for (String hash : hashes) {
+            vectorOutboxPos.add(new VectorOutboxPo().setHash(hash).setOperation(operation).setCreateTime(now));
+        }
+        for (int i = 0; i < vectorOutboxPos.size(); i += batchSize) {
+            vectorOutboxMapper.batchInsert(vectorOutboxPos.subList(i, Math.min(i + batchSize, vectorOutboxPos.size())));
+        }
+        // 提交后立即发送，不等下一个定时周期
+        TransactionUtil.afterCommit(() -> {
+            if (drainScheduled.compareAndSet(false, true)) {
+                scheduler.execute(() -> {
+                    drainScheduled.set(false);
+                    drain();
+                });
+            }
+        });
+    }
+
+    private void drain() {
+        if (!llmProperties.useRag || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        try {
+            while (true) {
+                boolean isolating = isolateUntilId >= 0;
+                int limit = isolating ? 1 : batchSize;
+                List<VectorOutboxPo> vectorOutboxPos = vectorOutboxMapper.selectOldest(limit, maxAttempts);
+                if (vectorOutboxPos.isEmpty()) {
+                    isolateUntilId = -1;
+                    break;
+                }
+                try {
+                    push(vectorOutboxPos);
+                } catch (RuntimeException e) {
+                    recordFailure(vectorOutboxPos);
+                    throw e;
+                }
+                backoffMillis = 0;
+                if (isolating && vectorOutboxPos.getLast().getId() >= isolateUntilId) {
+                    isolateUntilId = -1;
+                }
+                if (!isolating && vectorOutboxPos.size() < limit) {
+                    break;
+                }
+            }
+        } catch (Throwable t) {
+            backoffMillis = backoffMillis == 0 ? intervalMillis : Math.min(backoffMillis * 2, maxBackoffMillis);
+            retryAt = System.currentTimeMillis() + backoffMillis;
+            log.warn("Failed to write vector outbox, retry in {} ms", backoffMillis, t);
+        }
+    }
+
+    /**
+     * 失败的记录 attempts 加一，达到上限的记录不再发送；多条记录的批次之后逐条重试
+     */
+    private void recordFailure(List<VectorOutboxPo> vectorOutboxPos) {
+        List<Long> ids = vectorOutboxPos.stream().map(VectorOutboxPo::getId).toList();
+        vectorOutboxMapper.incrementAttempts(ids);
+        List<String> abandonedHashes = vectorOutboxPos.stream()
+                .filter(vectorOutboxPo -> vectorOutboxPo.getAttempts() + 1 >= maxAttempts)
+                .map(VectorOutboxPo::getHash)
+                .toList();
+        if (!abandonedHashes.isEmpty()) {
+            log.error("Vector outbox gave up after {} attempts, hashes: {}", maxAttempts, abandonedHashes);
+        }
+        if (vectorOutboxPos.size() > 1) {
+            isolateUntilId = Math.max(isolateUntilId, vectorOutboxPos.getLast().getId());
+        }
+    }
+
+    private void push(List<VectorOutboxPo> vectorOutboxPos) {
+        // 同一 hash 的多次变更只保留最后一次
+        Map<String, String> operations = new LinkedHashMap<>();
+        List<Long> ids = new ArrayList<>(vectorOutboxPos.size());
+        // 最早的 UPSERT 记录的创建时间，之后写入的检索结果缓存可能缺少新增的数据
+        long upsertSince = Long.MAX_VALUE;
+        for (VectorOutboxPo vectorOutboxPo : vectorOutboxPos) {
+            operations.remove(vectorOutboxPo.getHash());
+            operations.put(vectorOutboxPo.getHash(), vectorOutboxPo.getOperation());
+            ids.add(vectorOutboxPo.getId());
+            if (VectorOutboxPo.UPSERT.equals(vectorOutboxPo.getOperation()) && vectorOutboxPo.getCreateTime() != null) {
+                upsertSince = Math.min(upsertSince, vectorOutboxPo.getCreateTime());
+            }
+        }
+        List<String> upsertHashes = new ArrayList<>();
+        List<String> deleteHashes = new ArrayList<>();
+        operations.forEach((hash, operation) -> (VectorOutboxPo.DELETE.equals(operation) ? deleteHashes : upsertHashes).add(hash));
+        List<EmbeddingsItemPoWithBLOBs> upsertItems = new ArrayList<>();
+        if (!upsertHashes.isEmpty()) {
+            EmbeddingsItemPoExample embeddingsItemPoExample = new EmbeddingsItemPoExample();
+            embeddingsItemPoExample.createCriteria().andHashIn(upsertHashes);
+            upsertItems = embeddingsItemPoMapper.selectByExampleWithBLOBs(embeddingsItemPoExample);
+            if (upsertItems.size() < upsertHashes.size()) {
+                // 记录之后又被删除的数据
+                Set<String> foundHashes = upsertItems.stream().map(EmbeddingsItemPoWithBLOBs::getHash).collect(Collectors.toSet());
+                upsertHashes.stream().filter(hash -> !foundHashes.contains(hash)).forEach(deleteHashes::add);
+            }
+        }
+        // 合并后删除与写入的 hash 不重叠，两者并发执行
+        CompletableFuture<Void> deleteFuture = deleteHashes.isEmpty() ? CompletableFuture.completedFuture(null) : vectorDatabaseService.deleteDataAsync(deleteHashes);
+        CompletableFuture<Void> upsertFuture = upsertItems.isEmpty() ? CompletableFuture.completedFuture(null) : vectorDatabaseService.putDataAsync(upsertItems);
+        CompletableFuture.allOf(deleteFuture, upsertFuture).join();
+        vectorOutboxMapper.deleteByIds(ids);
+        // 写入前的检索可能已把旧数据的结果放入缓存
+        List<String> upsertTextChunkIds = upsertItems.stream().map(EmbeddingsItemPoWithBLOBs::getTextChunkId).distinct().toList();
+        queryResultCache.invalidateVectorWrites(operations.keySet(), upsertTextChunkIds, upsertSince);
+    }
+}
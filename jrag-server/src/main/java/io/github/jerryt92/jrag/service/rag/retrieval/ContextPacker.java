@@ -0,0 +1,135 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import io.github.jerryt92.jrag.config.LlmProperties;
+import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 按 token 预算组装检索内容
+ * <p>
+ * 文本块按相关度从高到低依次放入，重复或与已放入文本块大部分重叠（分块时的重叠区域）的跳过，
+ * 放不下的跳过后继续尝试更短的文本块。预算为当前 LLM 上下文长度乘以 llm-rag-context-ratio。
+ */
+@Slf4j
+@Service
+public class ContextPacker {
+    // 至少保留的预算，避免上下文长度配置过小时检索内容为空
+    private static final int MIN_BUDGET_TOKENS = 512;
+    // 判断重叠时用于定位的前缀长度
+    private static final int OVERLAP_PROBE_LENGTH = 32;
+    // 与已放入文本块重叠部分超过自身长度的该比例时视为重复
+    private static final float OVERLAP_RATIO = 0.5f;
+
+    private final LlmProperties llmProperties;
+    private final TokenCounter tokenCounter;
+
+    public ContextPacker(LlmProperties llmProperties, ObjectProvider<TokenCounter> tokenCounterProvider) {
+        this.llmProperties = llmProperties;
+        this.tokenCounter = tokenCounterProvider.getIfAvailable(TokenCounter::estimating);
+    }
+
+    /**
+     * 检索内容可使用的 token 数
+     */
+    public int budget() {
+        int contextLength = "ollama".equals(llmProperties.llmProvider) ? llmProperties.ollamaContextLength : llmProperties.openAiContextLength;
+        return Math.max((int) (contextLength * llmProperties.ragContextRatio), MIN_BUDGET_TOKENS);
+    }
+
+    /**
+     * 组装检索内容
+     *
+     * @param textChunks 按相关度从高到低排列
+     */
+    public Packed pack(List<TextChunkPo> textChunks) {
+        int budget = budget();
+        List<TextChunkPo> packedChunks = new ArrayList<>();
+        StringBuilder context = new StringBuilder();
+        int usedTokens = 0;
+        for (TextChunkPo textChunkPo : textChunks) {
+            String text = textChunkPo.getTextChunk();
+            if (text == null || text.isBlank() || isDuplicate(textChunkPo, packedChunks)) {
+                continue;
+            }
+            String part = part(packedChunks.size() + 1, text);
+            int tokens = tokenCounter.count(part);
+            if (usedTokens + tokens > budget) {
+                continue;
+            }
+            packedChunks.add(textChunkPo);
+            context.append(part);
+            usedTokens += tokens;
+        }
+        if (packedChunks.isEmpty() && !textChunks.isEmpty()) {
+            // 最相关的文本块单独超出预算时按比例截断
+            TextChunkPo first = textChunks.getFirst();
+            String text = Objects.toString(first.getTextChunk(), "");
+            int tokens = Math.max(tokenCounter.count(text), 1);
+            String truncated = text.substring(0, (int) ((long) text.length() * Math.min(budget, tokens) / tokens));
+            packedChunks.add(first);
+            context.append(part(1, truncated));
+            usedTokens = tokenCounter.count(context.toString());
+        }
+        log.debug("Packed {} of {} text chunks, {} / {} tokens", packedChunks.size(), textChunks.size(), usedTokens, budget);
+        return new Packed(packedChunks, packedChunks.isEmpty() ? null : context.toString());
+    }
+
+    private static String part(int num, String text) {
+        return "\n[content-" + num + "]\n" + text + "\n";
+    }
+
+    /**
+     * 同一文本块、相同文本、被已放入文本块包含，或与已放入文本块首尾重叠超过一半时视为重复
+     */
+    private static boolean isDuplicate(TextChunkPo candidate, List<TextChunkPo> packedChunks) {
+        String text = candidate.getTextChunk();
+        for (TextChunkPo packed : packedChunks) {
+            if (Objects.equals(packed.getId(), candidate.getId())) {
+                return true;
+            }
+            String packedText = packed.getTextChunk();
+            if (packedText.contains(text)) {
+                return true;
+            }
+            if (Objects.equals(packed.getSrcFileId(), candidate.getSrcFileId())) {
+                int overlap = Math.max(suffixPrefixOverlap(packedText, text), suffixPrefixOverlap(text, packedText));
+                if (overlap > text.length() * OVERLAP_RATIO) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * a 的后缀与 b 的前缀相同部分的长度
+     */
+    private static int suffixPrefixOverlap(String a, String b) {
+        if (b.length() < OVERLAP_PROBE_LENGTH) {
+            return 0;
+        }
+        String probe = b.substring(0, OVERLAP_PROBE_LENGTH);
+        for (int index = a.indexOf(probe); index >= 0; index = a.indexOf(probe, index + 1)) {
+            int length = a.length() - index;
+            if (length <= b.length() && a.regionMatches(index, b, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 组装结果
+     *
+     * @param textChunks 放入的文本块，按相关度排列
+     * @param context    拼接好的检索内容，没有文本块时为 null
+     */
+    public record Packed(List<TextChunkPo> textChunks, String context) {
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.service.PropertiesService;
+import io.github.jerryt92.jrag.service.rag.vdb.FusionStrategy;
+import io.github.jerryt92.jrag.service.rag.vdb.ScoreFusion;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 混合检索融合阶段
+ * <p>
+ * 稠密、稀疏两个通道按各自的候选数量并行检索，再按 {@link FusionStrategy} 融合为一个排序。
+ * 策略、候选数量与 RRF 常数均从 ai_properties 读取，修改后下一次检索即生效，无需重建集合。
+ * 融合后的 score 均在 [0, 1] 内，RETRIEVE_METRIC_SCORE_COMPARE_EXPR 对各策略都适用。
+ */
+@Service
+public class HybridSearcher {
+    private static final FusionStrategy DEFAULT_STRATEGY = FusionStrategy.WEIGHTED;
+    private static final int DEFAULT_RRF_K = 60;
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final VectorDatabaseService vectorDatabaseService;
+    private final PropertiesService propertiesService;
+
+    public HybridSearcher(VectorDatabaseService vectorDatabaseService, PropertiesService propertiesService) {
+        this.vectorDatabaseService = vectorDatabaseService;
+        this.propertiesService = propertiesService;
+    }
+
+    /**
+     * 混合检索
+     *
+     * @param metricType   语义向量的度量方式
+     * @param denseWeight  语义向量权重
+     * @param sparseWeight 稀疏向量权重
+     * @param filter       元数据过滤条件，由向量数据库在各通道检索时预过滤，为 null 时不过滤
+     * @return 按融合后的分数从高到低排列，最多 topK 条
+     */
+    public List<EmbeddingModel.EmbeddingsQueryItem> search(String queryText,
+                                                           float[] queryVector,
+                                                           int topK,
+                                                           String metricType,
+                                                           float denseWeight,
+                                                           float sparseWeight,
+                                                           VectorFilter filter) {
+        FusionStrategy strategy = FusionStrategy.of(propertiesService.getProperty(PropertiesService.RETRIEVE_FUSION_STRATEGY), DEFAULT_STRATEGY);
+        if (strategy == FusionStrategy.NATIVE || denseWeight <= 0f || sparseWeight <= 0f) {
+            // 单通道时各策略结果相同，由向量数据库直接检索
+            return vectorDatabaseService.hybridRetrieval(queryText, queryVector, topK, metricType, denseWeight, sparseWeight, filter);
+        }
+        int denseCandidates = Math.max(topK, parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_DENSE_CANDIDATES), topK));
+        int sparseCandidates = Math.max(topK, parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_SPARSE_CANDIDATES), topK));
+        CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> sparseFuture = vectorDatabaseService.sparseRetrievalAsync(queryText, sparseCandidates, filter);
+        List<EmbeddingModel.EmbeddingsQueryItem> denseItems = vectorDatabaseService.knnRetrieval(queryVector, denseCandidates, filter);
+        List<EmbeddingModel.EmbeddingsQueryItem> sparseItems;
+        try {
+            sparseItems = sparseFuture.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+        int rrfK = Math.max(parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_RRF_K), DEFAULT_RRF_K), 1);
+        String denseMetricType = metricType != null ? metricType : propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE);
+        return ScoreFusion.fuse(strategy, denseItems, sparseItems, denseMetricType, denseWeight, sparseWeight, rrfK, topK);
+    }
+
+    /**
+     * 批量混合检索，结果与查询一一对应
+     * <p>
+     * 每个通道对全部查询只发起一次多向量检索，再逐个查询融合；NATIVE 策略下由向量数据库逐个混合检索。
+     */
+    public List<List<EmbeddingModel.EmbeddingsQueryItem>> searchBatch(List<String> queryTexts,
+                                                                      List<float[]> queryVectors,
+                                                                      int topK,
+                                                                      String metricType,
+                                                                      float denseWeight,
+                                                                      float sparseWeight,
+                                                                      VectorFilter filter) {
+        // 与 VectorDatabaseService.hybridRetrieval 一致：两个权重都不大于 0 时只用稠密通道
+        boolean dense = denseWeight > 0f || sparseWeight <= 0f;
+        boolean sparse = sparseWeight > 0f;
+        if (!sparse) {
+            return vectorDatabaseService.knnRetrievalBatch(queryVectors, topK, filter);
+        }
+        if (!dense) {
+            return vectorDatabaseService.sparseRetrievalBatch(queryTexts, topK, filter);
+        }
+        FusionStrategy strategy = FusionStrategy.of(propertiesService.getProperty(PropertiesService.RETRIEVE_FUSION_STRATEGY), DEFAULT_STRATEGY);
+        if (strategy == FusionStrategy.NATIVE) {
+            List<List<EmbeddingModel.EmbeddingsQueryItem>> results = new ArrayList<>(queryTexts.size());
+            for (int i = 0; i < queryTexts.size(); i++) {
+                results.add(vectorDatabaseService.hybridRetrieval(queryTexts.get(i), queryVectors.get(i), topK, metricType, denseWeight, sparseWeight, filter));
+            }
+            return results;
+        }
+        int denseCandidates = Math.max(topK, parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_DENSE_CANDIDATES), topK));
+        int sparseCandidates = Math.max(topK, parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_SPARSE_CANDIDATES), topK));
+        CompletableFuture<List<List<EmbeddingModel.EmbeddingsQueryItem>>> sparseFuture = CompletableFuture.supplyAsync(
+                () -> vectorDatabaseService.sparseRetrievalBatch(queryTexts, sparseCandidates, filter), SEARCH_EXECUTOR);
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> denseResults = vectorDatabaseService.knnRetrievalBatch(queryVectors, denseCandidates, filter);
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> sparseResults;
+        try {
+            sparseResults = sparseFuture.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+        int rrfK = Math.max(parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_RRF_K), DEFAULT_RRF_K), 1);
+        String denseMetricType = metricType != null ? metricType : propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE);
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> results = new ArrayList<>(queryTexts.size());
+        for (int i = 0; i < queryTexts.size(); i++) {
+            results.add(ScoreFusion.fuse(strategy, denseResults.get(i), sparseResults.get(i), denseMetricType, denseWeight, sparseWeight, rrfK, topK));
+        }
+        return results;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (StringUtils.isBlank(value)) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
+import io.github.jerryt92.jrag.service.PropertiesService;
+import io.github.jerryt92.jrag.service.rag.knowledge.KnowledgeCache;
+import io.github.jerryt92.jrag.service.rag.vdb.local.VectorUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 最大边际相关（MMR）多样化
+ * <p>
+ * 一个文本块可以有多条大纲（embeddings_item），检索结果的前 K 条经常是同一文本块的不同大纲，浪费名额。
+ * 这里从更多的候选中逐条选取 λ·相关度 − (1 − λ)·与已选结果的最大相似度 最高的结果，
+ * 同时限制每个文本块、每个来源文件最多入选的条数。相关度为候选分数的 min-max 归一化，
+ * 相似度为嵌入向量的余弦相似度，向量数据库未返回向量时只按文本块判断是否重复。
+ */
+@Service
+public class MmrDiversifier {
+    // 默认值与 sql/data 中的初始配置一致
+    private static final boolean DEFAULT_ENABLED = true;
+    private static final float DEFAULT_LAMBDA = 0.7f;
+    private static final int DEFAULT_CANDIDATES = 20;
+    private static final int DEFAULT_MAX_PER_CHUNK = 1;
+    private static final int DEFAULT_MAX_PER_FILE = 3;
+
+    private final PropertiesService propertiesService;
+    private final KnowledgeCache knowledgeCache;
+
+    public MmrDiversifier(PropertiesService propertiesService, KnowledgeCache knowledgeCache) {
+        this.propertiesService = propertiesService;
+        this.knowledgeCache = knowledgeCache;
+    }
+
+    public boolean isEnabled() {
+        String enabled = propertiesService.getProperty(PropertiesService.RETRIEVE_MMR_ENABLED);
+        return StringUtils.isBlank(enabled) ? DEFAULT_ENABLED : Boolean.parseBoolean(enabled.trim());
+    }
+
+    /**
+     * 需要保留 count 条结果时向量检索应返回的候选数量
+     */
+    public int candidateCount(int count) {
+        if (!isEnabled()) {
+            return count;
+        }
+        return Math.max(count, parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_MMR_CANDIDATES), DEFAULT_CANDIDATES));
+    }
+
+    /**
+     * 从按相关度从高到低排列的候选中选出至多 count 条，受条数上限约束时可能少于 count 条
+     */
+    public List<EmbeddingModel.EmbeddingsQueryItem> diversify(List<EmbeddingModel.EmbeddingsQueryItem> candidates, int count) {
+        if (!isEnabled()) {
+            return candidates.size() > count ? new ArrayList<>(candidates.subList(0, count)) : candidates;
+        }
+        float lambda = parseFloat(propertiesService.getProperty(PropertiesService.RETRIEVE_MMR_LAMBDA), DEFAULT_LAMBDA);
+        lambda = Math.min(Math.max(lambda, 0f), 1f);
+        int maxPerChunk = parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_MMR_MAX_PER_CHUNK), DEFAULT_MAX_PER_CHUNK);
+        int maxPerFile = parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_MMR_MAX_PER_FILE), DEFAULT_MAX_PER_FILE);
+        Map<String, Integer> textChunkFileIds = new HashMap<>();
+        if (maxPerFile > 0) {
+            List<String> textChunkIds = candidates.stream().map(EmbeddingModel.EmbeddingsQueryItem::getTextChunkId).filter(Objects::nonNull).distinct().toList();
+            for (TextChunkPo textChunkPo : knowledgeCache.getTextChunks(textChunkIds).values()) {
+                if (textChunkPo.getSrcFileId() != null) {
+                    textChunkFileIds.put(textChunkPo.getId(), textChunkPo.getSrcFileId());
+                }
+            }
+        }
+        return select(candidates, count, lambda, maxPerChunk, maxPerFile, textChunkFileIds);
+    }
+
+    /**
+     * @param maxPerChunk      每个文本块最多入选的条数，不大于 0 时不限制
+     * @param maxPerFile       每个来源文件最多入选的条数，不大于 0 时不限制
+     * @param textChunkFileIds 文本块 id 到来源文件 id，没有来源文件的文本块不受文件上限约束
+     */
+    static List<EmbeddingModel.EmbeddingsQueryItem> select(List<EmbeddingModel.EmbeddingsQueryItem> candidates,
+                                                          int count,
+                                                          float lambda,
+                                                          int maxPerChunk,
+                                                          int maxPerFile,
+                                                          Map<String, Integer> textChunkFileIds) {
+        int size = candidates.size();
+        if (size == 0 || count <= 0) {
+            return new ArrayList<>();
+        }
+        float[] relevance = relevance(candidates);
+        float[][] vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            float[] embedding = candidates.get(i).getEmbedding();
+            if (embedding != null) {
+                vectors[i] = Arrays.copyOf(embedding, embedding.length);
+                VectorUtil.normalize(vectors[i], 0, vectors[i].length);
+            }
+        }
+        // 每个候选与已选结果的最大相似度，每选出一条增量更新
+        float[] maxSimilarity = new float[size];
+        boolean[] done = new boolean[size];
+        Map<String, Integer> chunkCounts = new HashMap<>();
+        Map<Integer, Integer> fileCounts = new HashMap<>();
+        List<EmbeddingModel.EmbeddingsQueryItem> selected = new ArrayList<>(Math.min(count, size));
+        while (selected.size() < count) {
+            int best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                EmbeddingModel.EmbeddingsQueryItem candidate = candidates.get(i);
+                Integer fileId = textChunkFileIds.get(candidate.getTextChunkId());
+                if ((maxPerChunk > 0 && chunkCounts.getOrDefault(candidate.getTextChunkId(), 0) >= maxPerChunk)
+                        || (maxPerFile > 0 && fileId != null && fileCounts.getOrDefault(fileId, 0) >= maxPerFile)) {
+                    // 条数上限只增不减，跳过的候选不会再入选
+                    done[i] = true;
+                    continue;
+                }
+                float score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            done[best] = true;
+            EmbeddingModel.EmbeddingsQueryItem chosen = candidates.get(best);
+            selected.add(chosen);
+            chunkCounts.merge(chosen.getTextChunkId(), 1, Integer::sum);
+            Integer fileId = textChunkFileIds.get(chosen.getTextChunkId());
+            if (fileId != null) {
+                fileCounts.merge(fileId, 1, Integer::sum);
+            }
+            for (int i = 0; i < size; i++) {
+                if (!done[i]) {
+                    maxSimilarity[i] = Math.max(maxSimilarity[i], similarity(candidates.get(i), vectors[i], chosen, vectors[best]));
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 候选分数 min-max 归一化到 [0, 1]；候选按相关度排列，首尾分数决定分数越大还是越小越相关（如 L2 距离）
+     */
+    private static float[] relevance(List<EmbeddingModel.EmbeddingsQueryItem> candidates) {
+        int size = candidates.size();
+        float[] relevance = new float[size];
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            relevance[i] = candidates.get(i).getScore();
+            min = Math.min(min, relevance[i]);
+            max = Math.max(max, relevance[i]);
+        }
+        boolean ascending = relevance[0] < relevance[size - 1];
+        for (int i = 0; i < size; i++) {
+            if (max - min <= 0f) {
+                relevance[i] = 1f;
+            } else {
+                float normalized = (relevance[i] - min) / (max - min);
+                relevance[i] = ascending ? 1f - normalized : normalized;
+            }
+        }
+        return relevance;
+    }
+
+    private static float similarity(EmbeddingModel.EmbeddingsQueryItem a, float[] aVector,
+                                    EmbeddingModel.EmbeddingsQueryItem b, float[] bVector) {
+        if (aVector != null && bVector != null && aVector.length == bVector.length) {
+            return VectorUtil.dotProduct(aVector, 0, bVector, 0, aVector.length);
+        }
+        return Objects.equals(a.getTextChunkId(), b.getTextChunkId()) ? 1f : 0f;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (StringUtils.isBlank(value)) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static float parseFloat(String value, float fallback) {
+        if (StringUtils.isBlank(value)) {
+            return fallback;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import io.github.jerryt92.jrag.event.PropertiesUpdatedEvent;
+import io.github.jerryt92.jrag.model.RagInfoDto;
+import io.github.jerryt92.jrag.service.rag.vdb.local.VectorUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 检索结果缓存
+ * <p>
+ * 第一级按归一化后的查询文本精确匹配，命中时无需嵌入与检索；第二级按查询向量的余弦相似度匹配，
+ * 命中时省去向量检索与文本块、文件查询；只差一个关键词的问题也可能高于阈值，因此第二级默认关闭。知识被修改或删除时失效引用了对应文本块的条目，
+ * 新增文本块或检索配置变化时清空缓存，其余变化由 ttl 兜底。
+ * <p>
+ * 失效与清空会递增 generation，写入时 generation 已变化则丢弃，避免检索期间发生的修改被旧结果覆盖。
+ */
+@Slf4j
+@Service
+@EnableScheduling
+public class QueryResultCache {
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION_PATTERN = Pattern.compile("[\\p{Punct}？！。，、；：～…\\s]+$");
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    // 第二级缓存的余弦相似度阈值，不在 (0, 1) 内时不启用
+    private final float similarityThreshold;
+    private final Map<String, Entry> entries;
+    // 由 entries 的锁保护
+    private long generation;
+    private final LongAdder textHits = new LongAdder();
+    private final LongAdder vectorHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryResultCache(@Value("${jrag.query-cache.enabled:true}") boolean enabled,
+                            @Value("${jrag.query-cache.max-entries:1000}") int maxEntries,
+                            @Value("${jrag.query-cache.ttl-seconds:600}") long ttlSeconds,
+                            @Value("${jrag.query-cache.similarity-threshold:0}") float similarityThreshold) {
+        this.enabled = enabled;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.similarityThreshold = similarityThreshold;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按查询文本查找
+     */
+    public Entry getByText(String queryText) {
+        if (!enabled || StringUtils.isBlank(queryText)) {
+            return null;
+        }
+        String key = normalize(queryText);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.isExpired()) {
+                textHits.increment();
+                return entry;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按查询向量查找余弦相似度最高且不低于阈值的条目，未命中时计入 miss
+     */
+    public Entry getByVector(float[] queryVector) {
+        if (!enabled) {
+            return null;
+        }
+        if (queryVector != null && similarityThreshold > 0f && similarityThreshold < 1f) {
+            float[] normalized = normalize(queryVector);
+            Entry best = null;
+            float bestSimilarity = similarityThreshold;
+            // 锁内只复制引用，相似度计算在锁外进行，避免串行化并发检索
+            Entry[] snapshot;
+            synchronized (entries) {
+                snapshot = entries.values().toArray(new Entry[0]);
+            }
+            for (Entry entry : snapshot) {
+                if (entry.vector.length != normalized.length || entry.isExpired()) {
+                    continue;
+                }
+                float similarity = VectorUtil.dotProduct(entry.vector, 0, normalized, 0, normalized.length);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best != null) {
+                vectorHits.increment();
+                return best;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 查找前取得，写入时传给 {@link #put}
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * 写入检索结果，expectedGeneration 之后发生过失效或清空时丢弃
+     *
+     * @param hashes 检索命中的嵌入数据 hash
+     */
+    public void put(String queryText, float[] queryVector, Collection<String> hashes, List<RagInfoDto> ragInfos, String context, long expectedGeneration) {
+        if (!enabled || StringUtils.isBlank(queryText) || queryVector == null) {
+            return;
+        }
+        Set<String> textChunkIds = new HashSet<>();
+        for (RagInfoDto ragInfo : ragInfos) {
+            textChunkIds.add(ragInfo.getTextChunkId());
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(List.copyOf(ragInfos), context, normalize(queryVector), new HashSet<>(hashes), textChunkIds, now, now + ttlMillis);
+        synchronized (entries) {
+            if (generation == expectedGeneration) {
+                entries.put(normalize(queryText), entry);
+            }
+        }
+    }
+
+    /**
+     * 失效引用了任一文本块的条目
+     */
+    public void invalidateTextChunks(Collection<String> textChunkIds) {
+        if (textChunkIds == null || textChunkIds.isEmpty()) {
+            return;
+        }
+        invalidate(entry -> textChunkIds.stream().anyMatch(entry.textChunkIds::contains));
+    }
+
+    /**
+     * 变更写入向量数据库后调用
+     * <p>
+     * 知识提交时已失效当时的相关条目，之后到写入向量数据库之间的检索仍读到旧的向量：
+     * 失效引用了这些嵌入数据或文本块的条目，以及 since 之后写入的条目（可能缺少新增的数据），为 {@link Long#MAX_VALUE} 时不按时间失效。
+     */
+    public void invalidateVectorWrites(Collection<String> hashes, Collection<String> textChunkIds, long since) {
+        invalidate(entry -> entry.createTime >= since
+                || hashes.stream().anyMatch(entry.hashes::contains)
+                || textChunkIds.stream().anyMatch(entry.textChunkIds::contains));
+    }
+
+    private void invalidate(Predicate<Entry> predicate) {
+        if (!enabled) {
+            return;
+        }
+        int count = 0;
+        synchronized (entries) {
+            generation++;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (predicate.test(iterator.next())) {
+                    iterator.remove();
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            log.debug("Invalidated {} cached query results", count);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    /**
+     * 检索相关配置（topK、度量方式、权重、嵌入模型等）变化后结果不再有效
+     */
+    @EventListener
+    public void handlePropertiesUpdated(PropertiesUpdatedEvent event) {
+        clear();
+    }
+
+    public long getHitCount() {
+        return textHits.sum() + vectorHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 命中率，无请求时返回 NaN
+     */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    @Scheduled(fixedRate = 10, timeUnit = TimeUnit.MINUTES)
+    public void logStatistics() {
+        if (!enabled || getHitCount() + getMissCount() == 0) {
+            return;
+        }
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        log.info("Query result cache hit ratio: {}, text hits: {}, vector hits: {}, misses: {}, entries: {}",
+                String.format("%.3f", getHitRatio()), textHits.sum(), vectorHits.sum(), misses.sum(), size);
+    }
+
+    static String normalize(String queryText) {
+        String normalized = WHITESPACE_PATTERN.matcher(queryText.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return TRAILING_PUNCTUATION_PATTERN.matcher(normalized).replaceAll("");
+    }
+
+    private static float[] normalize(float[] vector) {
+        float[] normalized = vector.clone();
+        VectorUtil.normalize(normalized, 0, normalized.length);
+        return normalized;
+    }
+
+    /**
+     * 缓存的检索结果
+     *
+     * @param ragInfos   引用的文本块及文件
+     * @param context    拼接好的检索内容，无检索结果时为 null
+     * @param hashes     检索命中的嵌入数据 hash
+     * @param createTime 写入缓存的时间
+     */
+    public record Entry(List<RagInfoDto> ragInfos, String context, float[] vector, Set<String> hashes, Set<String> textChunkIds, long createTime, long expireAt) {
+        boolean isExpired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 检索各阶段（嵌入、向量检索、多样化、重排序、文本块与文件查询、组装）的耗时统计
+ */
+@Slf4j
+@Service
+@EnableScheduling
+public class RetrievalMetrics {
+    public static final String STAGE_EMBED = "embed";
+    public static final String STAGE_SEARCH = "search";
+    public static final String STAGE_DIVERSIFY = "diversify";
+    public static final String STAGE_RERANK = "rerank";
+    public static final String STAGE_TEXT_CHUNKS = "text-chunks";
+    public static final String STAGE_FILES = "files";
+    public static final String STAGE_PACK = "pack";
+    public static final String STAGE_TOTAL = "total";
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    /**
+     * 记录从 startNanos（{@link System#nanoTime()}）到现在的耗时
+     */
+    public void record(String stage, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        Stage stats = stages.computeIfAbsent(stage, k -> new Stage());
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulate(nanos);
+    }
+
+    public <T> T time(String stage, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(stage, start);
+        }
+    }
+
+    /**
+     * 各阶段的平均耗时（毫秒）
+     */
+    public Map<String, Double> averageMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        stages.forEach((stage, stats) -> {
+            long count = stats.count.sum();
+            if (count > 0) {
+                result.put(stage, stats.totalNanos.sum() / 1e6 / count);
+            }
+        });
+        return result;
+    }
+
+    @Scheduled(fixedRate = 10, timeUnit = TimeUnit.MINUTES)
+    public void logStatistics() {
+        if (stages.isEmpty()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        stages.forEach((stage, stats) -> {
+            long count = stats.count.sum();
+            if (count > 0) {
+                summary.append(String.format(" %s: avg %.1f ms, max %.1f ms (%d);",
+                        stage, stats.totalNanos.sum() / 1e6 / count, stats.maxNanos.get() / 1e6, count));
+            }
+        });
+        log.info("Retrieval stage latency:{}", summary);
+    }
+
+    private static final class Stage {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+}
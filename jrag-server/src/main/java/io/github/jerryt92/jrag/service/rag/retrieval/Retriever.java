@@ -1,51 +1,75 @@
 package io.github.jerryt92.jrag.service.rag.retrieval;
 
-import com.alibaba.fastjson2.JSONArray;
-import com.alibaba.fastjson2.JSONObject;
-import io.github.jerryt92.jrag.mapper.mgb.FilePoMapper;
-import io.github.jerryt92.jrag.mapper.mgb.TextChunkPoMapper;
+import io.github.jerryt92.jrag.event.PropertiesUpdatedEvent;
 import io.github.jerryt92.jrag.model.ChatModel;
 import io.github.jerryt92.jrag.model.EmbeddingModel;
 import io.github.jerryt92.jrag.model.KnowledgeRetrieveItemDto;
 import io.github.jerryt92.jrag.model.RagInfoDto;
 import io.github.jerryt92.jrag.model.Translator;
 import io.github.jerryt92.jrag.po.mgb.FilePo;
-import io.github.jerryt92.jrag.po.mgb.FilePoExample;
 import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
-import io.github.jerryt92.jrag.po.mgb.TextChunkPoExample;
 import io.github.jerryt92.jrag.service.PropertiesService;
 import io.github.jerryt92.jrag.service.embedding.EmbeddingService;
-import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
-import io.github.jerryt92.jrag.utils.MathCalculatorUtil;
+import io.github.jerryt92.jrag.service.embedding.QueryEmbeddingBatcher;
+import io.github.jerryt92.jrag.service.rag.knowledge.KnowledgeCache;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
+import io.github.jerryt92.jrag.service.rerank.RerankService;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * 检索器
  */
+@Slf4j
 @Service
 public class Retriever {
+    // 文本块与文件查询并行执行，阻塞在 JDBC 上的虚拟线程不占用平台线程
+    private static final ExecutorService LOOKUP_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
     private final EmbeddingService embeddingService;
-    private final VectorDatabaseService vectorDatabaseService;
-    private final TextChunkPoMapper textChunkPoMapper;
-    private final FilePoMapper filePoMapper;
+    private final QueryEmbeddingBatcher queryEmbeddingBatcher;
+    private final KnowledgeCache knowledgeCache;
     private final PropertiesService propertiesService;
+    private final QueryResultCache queryResultCache;
+    private final HybridSearcher hybridSearcher;
+    private final MmrDiversifier mmrDiversifier;
+    private final RerankService rerankService;
+    private final ContextPacker contextPacker;
+    private final RetrievalMetrics retrievalMetrics;
+    // 批量检索时每批的查询数量，即一次嵌入请求与一次多向量检索包含的查询数
+    private final int retrieveBatchSize;
+    private volatile ScorePredicate scorePredicate;
 
-    public Retriever(EmbeddingService embeddingService, VectorDatabaseService vectorDatabaseService, TextChunkPoMapper textChunkPoMapper, FilePoMapper filePoMapper, PropertiesService propertiesService) {
+    public Retriever(EmbeddingService embeddingService, QueryEmbeddingBatcher queryEmbeddingBatcher, KnowledgeCache knowledgeCache, PropertiesService propertiesService, QueryResultCache queryResultCache, HybridSearcher hybridSearcher, MmrDiversifier mmrDiversifier, RerankService rerankService, ContextPacker contextPacker, RetrievalMetrics retrievalMetrics, @Value("${jrag.knowledge-retrieve.batch-size:64}") int retrieveBatchSize) {
         this.embeddingService = embeddingService;
-        this.vectorDatabaseService = vectorDatabaseService;
-        this.textChunkPoMapper = textChunkPoMapper;
-        this.filePoMapper = filePoMapper;
+        this.queryEmbeddingBatcher = queryEmbeddingBatcher;
+        this.knowledgeCache = knowledgeCache;
         this.propertiesService = propertiesService;
+        this.queryResultCache = queryResultCache;
+        this.hybridSearcher = hybridSearcher;
+        this.mmrDiversifier = mmrDiversifier;
+        this.rerankService = rerankService;
+        this.contextPacker = contextPacker;
+        this.retrievalMetrics = retrievalMetrics;
+        this.retrieveBatchSize = Math.max(retrieveBatchSize, 1);
     }
 
     /**
@@ -55,6 +79,13 @@ public class Retriever {
      * @return
      */
     public List<RagInfoDto> retrieveQuery(ChatModel.ChatRequest chatRequest) {
+        return retrieveQueryAsync(chatRequest).block();
+    }
+
+    /**
+     * 异步检索，查询向量化期间调用方可并行处理其他 I/O，结果返回前不会修改 chatRequest
+     */
+    public Mono<List<RagInfoDto>> retrieveQueryAsync(ChatModel.ChatRequest chatRequest) {
         // 相似度匹配
         // 找到最后一个来自USER的内容
         String queryContent = null;
@@ -65,137 +96,326 @@ public class Retriever {
                 break;
             }
         }
-        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = similarityRetrieval(
-                queryContent,
-                KnowledgeRetrieveItemDto.MetricTypeEnum.valueOf(propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE)),
-                Integer.parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_TOP_K)),
-                propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_SCORE_COMPARE_EXPR)
-        );
-        List<RagInfoDto> retrieveResult = new ArrayList<>();
-        if (!embeddingsQueryItems.isEmpty()) {
-            // 查询文本块
-            HashSet<String> textChunkIds = new HashSet<>();
-            for (EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem : embeddingsQueryItems) {
-                textChunkIds.add(embeddingsQueryItem.getTextChunkId());
-            }
-            TextChunkPoExample textChunkPoExample = new TextChunkPoExample();
-            textChunkPoExample.createCriteria().andIdIn(new ArrayList<>(textChunkIds));
-            Map<String, TextChunkPo> textChunkMap = new HashMap<>();
-            List<Integer> srcFileIds = new ArrayList<>();
-            List<TextChunkPo> textChunkPoList = textChunkPoMapper.selectByExampleWithBLOBs(textChunkPoExample);
-            int totalChar = 0;
-            for (TextChunkPo textChunkPo : textChunkPoList) {
-                textChunkMap.put(textChunkPo.getId(), textChunkPo);
-                if (textChunkPo.getSrcFileId() != null && !srcFileIds.contains(textChunkPo.getSrcFileId())) {
-                    srcFileIds.add(textChunkPo.getSrcFileId());
-                }
-                totalChar += textChunkPo.getTextChunk().length();
-                if (totalChar > 8192) {
-                    break;
-                }
-            }
-            JSONArray ragDataArray = new JSONArray();
-            int num = 1;
-            for (EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem : embeddingsQueryItems) {
-                TextChunkPo textChunkPo = textChunkMap.get(embeddingsQueryItem.getTextChunkId());
-                if (textChunkPo != null) {
-                    JSONObject ragData = new JSONObject();
-                    ragData.put("content-" + num, textChunkMap.get(embeddingsQueryItem.getTextChunkId()).getTextChunk());
-                    ragDataArray.add(ragData);
-                    num++;
-                }
-            }
-            Map<Integer, FilePo> fileMap = new HashMap<>();
-            if (!srcFileIds.isEmpty()) {
-                FilePoExample filePoExample = new FilePoExample();
-                filePoExample.createCriteria().andIdIn(srcFileIds);
-                fileMap = filePoMapper.selectByExample(filePoExample)
-                        .stream().collect(Collectors.toMap(FilePo::getId, filePo -> filePo, (v1, v2) -> v1));
-            }
+        String finalQueryContent = queryContent;
+        if (StringUtils.isBlank(queryContent)) {
+            return Mono.just(new ArrayList<>());
+        }
+        // 未命中时检索期间发生的失效会使写入被丢弃
+        long cacheGeneration = queryResultCache.generation();
+        QueryResultCache.Entry cachedEntry = queryResultCache.getByText(queryContent);
+        if (cachedEntry != null) {
+            return Mono.just(applyContext(chatRequest, queryContent, cachedEntry.ragInfos(), cachedEntry.context()));
+        }
+        KnowledgeRetrieveItemDto.MetricTypeEnum metricType = KnowledgeRetrieveItemDto.MetricTypeEnum.valueOf(propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE));
+        int topK = Integer.parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_TOP_K));
+        String metricScoreCompareExpr = propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_SCORE_COMPARE_EXPR);
+        long start = System.nanoTime();
+        // 向量化，并发查询会被合并为一次嵌入请求
+        return queryEmbeddingBatcher.embedAsync(queryContent)
+                .doOnNext(queryVector -> retrievalMetrics.record(RetrievalMetrics.STAGE_EMBED, start))
+                .publishOn(Schedulers.boundedElastic())
+                .flatMap(queryVector -> {
+                    QueryResultCache.Entry similarEntry = queryResultCache.getByVector(queryVector);
+                    if (similarEntry != null) {
+                        return Mono.just(applyContext(chatRequest, finalQueryContent, similarEntry.ragInfos(), similarEntry.context()));
+                    }
+                    // 启用重排序时多取候选，重排序后只保留得分最高的若干条；启用多样化时再多取，去掉重复的文本块后交给重排序
+                    int rerankCandidates = rerankService.candidateCount(topK);
+                    List<EmbeddingModel.EmbeddingsQueryItem> searched = retrievalMetrics.time(RetrievalMetrics.STAGE_SEARCH,
+                            () -> vectorRetrieval(finalQueryContent, queryVector, metricType, mmrDiversifier.candidateCount(rerankCandidates), metricScoreCompareExpr));
+                    List<EmbeddingModel.EmbeddingsQueryItem> candidates = retrievalMetrics.time(RetrievalMetrics.STAGE_DIVERSIFY,
+                            () -> mmrDiversifier.diversify(searched, rerankCandidates));
+                    long rerankStart = System.nanoTime();
+                    // 重排序使用文本块内容，查询结果进入知识缓存，之后组装检索内容时直接命中
+                    Map<String, TextChunkPo> candidateTextChunks = rerankService.isEnabled()
+                            ? retrievalMetrics.time(RetrievalMetrics.STAGE_TEXT_CHUNKS, () -> selectTextChunks(candidates.stream()
+                            .map(EmbeddingModel.EmbeddingsQueryItem::getTextChunkId).filter(Objects::nonNull).distinct().toList()))
+                            : Collections.emptyMap();
+                    return rerankService.rerank(finalQueryContent, candidates, candidateTextChunks, rerankService.topN(topK))
+                            .doOnNext(reranked -> {
+                                if (rerankService.isEnabled()) {
+                                    retrievalMetrics.record(RetrievalMetrics.STAGE_RERANK, rerankStart);
+                                }
+                            })
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(reranked -> {
+                                List<RagInfoDto> ragInfos = new ArrayList<>();
+                                String context = buildRagInfos(reranked.items(), ragInfos);
+                                // 重排序回退时结果只是向量检索的顺序，不缓存，下次请求重新重排序
+                                if (!reranked.fallback()) {
+                                    queryResultCache.put(finalQueryContent, queryVector, reranked.items().stream().map(EmbeddingModel.EmbeddingsQueryItem::getHash).toList(), ragInfos, context, cacheGeneration);
+                                }
+                                retrievalMetrics.record(RetrievalMetrics.STAGE_TOTAL, start);
+                                return applyContext(chatRequest, finalQueryContent, ragInfos, context);
+                            });
+                })
+                .defaultIfEmpty(new ArrayList<>());
+    }
+
+    /**
+     * 将检索内容作为系统提示词加入上下文
+     */
+    private List<RagInfoDto> applyContext(ChatModel.ChatRequest chatRequest, String queryContent, List<RagInfoDto> ragInfos, String context) {
+        if (context != null) {
             ChatModel.Message systemPromptMessage = new ChatModel.Message()
                     .setRole(ChatModel.Role.SYSTEM)
                     .setContent(
                             "The user's question is : \"" + queryContent + "\".\nThe contents (each part of \"content-x\" must be complete) :"
-                                    + ragDataArray
+                                    + context
                     );
             chatRequest.getMessages().add(systemPromptMessage);
-            for (TextChunkPo textChunkPo : textChunkPoList) {
-                RagInfoDto ragInfoDto = new RagInfoDto();
-                ragInfoDto.setTextChunkId(textChunkPo.getId());
-                ragInfoDto.setTextChunk(textChunkPo.getTextChunk());
-                FilePo filePo = fileMap.get(textChunkPo.getSrcFileId());
-                if (filePo != null) {
-                    ragInfoDto.setSrcFile(Translator.translateToFileDto(Translator.translateToFileBo(filePo)));
-                }
-                retrieveResult.add(ragInfoDto);
+        }
+        return new ArrayList<>(ragInfos);
+    }
+
+    /**
+     * 查询文本块及文件，按 token 预算组装检索内容并填充 ragInfos
+     * <p>
+     * 文本块与文件优先从内存缓存读取；来源文件按文本块 id 关联查询，与文本块查询并行执行。
+     *
+     * @return 拼接好的检索内容，无检索结果时返回 null
+     */
+    private String buildRagInfos(List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems, List<RagInfoDto> retrieveResult) {
+        List<String> textChunkIds = embeddingsQueryItems.stream().map(EmbeddingModel.EmbeddingsQueryItem::getTextChunkId).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (textChunkIds.isEmpty()) {
+            return null;
+        }
+        CompletableFuture<Map<Integer, FilePo>> filesFuture = lookupAsync(RetrievalMetrics.STAGE_FILES,
+                () -> knowledgeCache.getFilesByTextChunkIds(textChunkIds));
+        Map<String, TextChunkPo> textChunkMap = retrievalMetrics.time(RetrievalMetrics.STAGE_TEXT_CHUNKS, () -> selectTextChunks(textChunkIds));
+        // 按检索结果的相关度顺序组装
+        List<TextChunkPo> rankedTextChunks = new ArrayList<>(textChunkMap.size());
+        for (String textChunkId : textChunkIds) {
+            TextChunkPo textChunkPo = textChunkMap.get(textChunkId);
+            if (textChunkPo != null) {
+                rankedTextChunks.add(textChunkPo);
             }
         }
-        return retrieveResult;
+        ContextPacker.Packed packed = retrievalMetrics.time(RetrievalMetrics.STAGE_PACK, () -> contextPacker.pack(rankedTextChunks));
+        Map<Integer, FilePo> fileMap = join(filesFuture);
+        for (TextChunkPo textChunkPo : packed.textChunks()) {
+            RagInfoDto ragInfoDto = new RagInfoDto();
+            ragInfoDto.setTextChunkId(textChunkPo.getId());
+            ragInfoDto.setTextChunk(textChunkPo.getTextChunk());
+            FilePo filePo = fileMap.get(textChunkPo.getSrcFileId());
+            if (filePo != null) {
+                ragInfoDto.setSrcFile(Translator.translateToFileDto(Translator.translateToFileBo(filePo)));
+            }
+            retrieveResult.add(ragInfoDto);
+        }
+        return packed.context();
+    }
+
+    private Map<String, TextChunkPo> selectTextChunks(List<String> textChunkIds) {
+        if (textChunkIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return knowledgeCache.getTextChunks(textChunkIds);
+    }
+
+    private <T> CompletableFuture<T> lookupAsync(String stage, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> retrievalMetrics.time(stage, supplier), LOOKUP_EXECUTOR);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
     }
 
     public List<EmbeddingModel.EmbeddingsQueryItem> similarityRetrieval(String queryText, KnowledgeRetrieveItemDto.MetricTypeEnum metricType, int topK, String metricScoreCompareExpr) {
+        return similarityRetrievalAsync(queryText, metricType, topK, metricScoreCompareExpr).block();
+    }
+
+    /**
+     * 异步相似度检索，向量检索与后续数据库查询在 boundedElastic 线程上执行
+     */
+    public Mono<List<EmbeddingModel.EmbeddingsQueryItem>> similarityRetrievalAsync(String queryText, KnowledgeRetrieveItemDto.MetricTypeEnum metricType, int topK, String metricScoreCompareExpr) {
         if (StringUtils.isBlank(queryText)) {
-            return Collections.emptyList();
-        }
-        // 向量化
-        EmbeddingModel.EmbeddingsRequest embeddingsRequest = new EmbeddingModel.EmbeddingsRequest()
-                .setInput(Collections.singletonList(queryText));
-        EmbeddingModel.EmbeddingsResponse embed = embeddingService.embed(embeddingsRequest);
-        if (embed.getData().isEmpty()) {
-            return Collections.emptyList();
+            return Mono.just(Collections.emptyList());
         }
+        // 向量化，并发查询会被合并为一次嵌入请求
+        return queryEmbeddingBatcher.embedAsync(queryText)
+                .publishOn(Schedulers.boundedElastic())
+                .map(queryVector -> vectorRetrieval(queryText, queryVector, metricType, topK, metricScoreCompareExpr))
+                .defaultIfEmpty(Collections.emptyList());
+    }
+
+    private List<EmbeddingModel.EmbeddingsQueryItem> vectorRetrieval(String queryText, float[] queryVector, KnowledgeRetrieveItemDto.MetricTypeEnum metricType, int topK, String metricScoreCompareExpr) {
         float[] weights = resolveRetrieveWeights();
-        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = vectorDatabaseService.hybridRetrieval(
+        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = hybridSearcher.search(
                 queryText,
-                embed.getData().getFirst().getEmbeddings(),
+                queryVector,
                 topK,
                 metricType == null ? null : metricType.name(),
                 weights[0],
-                weights[1]
+                weights[1],
+                null
         );
+        ScorePredicate scorePredicate = scorePredicate(metricScoreCompareExpr);
         List<EmbeddingModel.EmbeddingsQueryItem> result = new ArrayList<>();
         for (EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem : embeddingsQueryItems) {
-            String calculateExpressionResult = MathCalculatorUtil.calculateExpression(embeddingsQueryItem.getScore() + metricScoreCompareExpr);
-            if (StringUtils.isBlank(metricScoreCompareExpr) || "true".equals(calculateExpressionResult)) {
+            if (matches(scorePredicate, embeddingsQueryItem)) {
                 result.add(embeddingsQueryItem);
             }
         }
         return result;
     }
 
-    public List<KnowledgeRetrieveItemDto> retrieveKnowledge(String queryText, Integer topK) {
+    /**
+     * 检索知识
+     *
+     * @param filter 元数据过滤条件，为 null 时不过滤
+     */
+    public List<KnowledgeRetrieveItemDto> retrieveKnowledge(String queryText, Integer topK, VectorFilter filter) {
         List<KnowledgeRetrieveItemDto> retrieveResult = new ArrayList<>();
-        if (StringUtils.isBlank(queryText)) {
+        if (StringUtils.isBlank(queryText) || (filter != null && filter.isEmpty())) {
             return retrieveResult;
         }
-        // 向量化
-        EmbeddingModel.EmbeddingsRequest embeddingsRequest = new EmbeddingModel.EmbeddingsRequest()
-                .setInput(Collections.singletonList(queryText));
-        EmbeddingModel.EmbeddingsResponse embed = embeddingService.embed(embeddingsRequest);
-        if (embed.getData().isEmpty()) {
+        // 向量化，并发查询会被合并为一次嵌入请求
+        float[] queryVector = retrievalMetrics.time(RetrievalMetrics.STAGE_EMBED, () -> queryEmbeddingBatcher.embed(queryText));
+        if (queryVector == null) {
             return retrieveResult;
         }
         float[] weights = resolveRetrieveWeights();
-        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = vectorDatabaseService.hybridRetrieval(
+        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = retrievalMetrics.time(RetrievalMetrics.STAGE_SEARCH, () -> hybridSearcher.search(
                 queryText,
-                embed.getData().getFirst().getEmbeddings(),
+                queryVector,
                 topK,
                 propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE),
                 weights[0],
-                weights[1]
-        );
+                weights[1],
+                filter
+        ));
         List<String> textChunkIds = embeddingsQueryItems.stream().map(EmbeddingModel.EmbeddingsQueryItem::getTextChunkId).filter(Objects::nonNull).distinct().collect(Collectors.toList());
-        TextChunkPoExample textChunkPoExample = new TextChunkPoExample();
-        textChunkPoExample.createCriteria().andIdIn(textChunkIds);
-        List<TextChunkPo> textChunkPos = textChunkIds.isEmpty() ? Collections.emptyList() : textChunkPoMapper.selectByExampleWithBLOBs(textChunkPoExample);
-        Map<String, TextChunkPo> textChunkMap = textChunkPos.stream().collect(Collectors.toMap(TextChunkPo::getId, textChunkPo -> textChunkPo));
+        Map<String, TextChunkPo> textChunkMap = retrievalMetrics.time(RetrievalMetrics.STAGE_TEXT_CHUNKS, () -> selectTextChunks(textChunkIds));
+        return translateRetrieveItems(embeddingsQueryItems, textChunkMap);
+    }
+
+    /**
+     * 批量检索知识
+     * <p>
+     * 查询按 batchSize 分批，每批只发起一次嵌入请求、每个通道一次多向量检索、一次文本块查询，
+     * 每批完成后按查询顺序逐条回调；某一批失败时该批的每条查询带错误信息回调，不影响其他批次。
+     *
+     * @param topK     每条查询的检索数量，为 null 时使用 RETRIEVE_TOP_K
+     * @param filter   元数据过滤条件，对全部查询生效，为 null 时不过滤
+     * @param consumer 每完成一条查询回调一次
+     */
+    public void retrieveKnowledgeBatch(List<String> queryTexts, Integer topK, VectorFilter filter, Consumer<BatchRetrieveResult> consumer) {
+        int resolvedTopK = topK != null ? topK : Integer.parseInt(propertiesService.getProperty(PropertiesService.RETRIEVE_TOP_K));
+        for (int from = 0; from < queryTexts.size(); from += retrieveBatchSize) {
+            int to = Math.min(from + retrieveBatchSize, queryTexts.size());
+            List<List<KnowledgeRetrieveItemDto>> batchResults;
+            try {
+                batchResults = retrieveKnowledgeBatch(queryTexts.subList(from, to), resolvedTopK, filter);
+            } catch (Exception e) {
+                log.error("Batch retrieve failed, queries {} - {}", from, to - 1, e);
+                for (int i = from; i < to; i++) {
+                    consumer.accept(new BatchRetrieveResult(i, Collections.emptyList(), e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
+                }
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                consumer.accept(new BatchRetrieveResult(i, batchResults.get(i - from), null));
+            }
+        }
+    }
+
+    private List<List<KnowledgeRetrieveItemDto>> retrieveKnowledgeBatch(List<String> queryTexts, int topK, VectorFilter filter) {
+        // 一次嵌入请求向量化本批全部查询，空白查询与嵌入失败的查询不参与检索；过滤条件没有匹配的文本块时无需检索
+        List<String> distinctTexts = filter != null && filter.isEmpty() ? List.of() : queryTexts.stream().filter(StringUtils::isNotBlank).distinct().toList();
+        Map<String, float[]> textVectors = new HashMap<>();
+        if (!distinctTexts.isEmpty()) {
+            EmbeddingModel.EmbeddingsResponse embeddingsResponse = embeddingService.embed(new EmbeddingModel.EmbeddingsRequest().setInput(distinctTexts));
+            if (embeddingsResponse != null && embeddingsResponse.getData() != null) {
+                for (EmbeddingModel.EmbeddingsItem embeddingsItem : embeddingsResponse.getData()) {
+                    textVectors.putIfAbsent(embeddingsItem.getText(), embeddingsItem.getEmbeddings());
+                }
+            }
+        }
+        List<String> searchTexts = new ArrayList<>();
+        List<float[]> searchVectors = new ArrayList<>();
+        for (String text : distinctTexts) {
+            float[] vector = textVectors.get(text);
+            if (vector != null) {
+                searchTexts.add(text);
+                searchVectors.add(vector);
+            }
+        }
+        Map<String, List<EmbeddingModel.EmbeddingsQueryItem>> textResults = new HashMap<>();
+        if (!searchTexts.isEmpty()) {
+            float[] weights = resolveRetrieveWeights();
+            List<List<EmbeddingModel.EmbeddingsQueryItem>> searchResults = hybridSearcher.searchBatch(
+                    searchTexts,
+                    searchVectors,
+                    topK,
+                    propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE),
+                    weights[0],
+                    weights[1],
+                    filter
+            );
+            for (int i = 0; i < searchTexts.size(); i++) {
+                textResults.put(searchTexts.get(i), searchResults.get(i));
+            }
+        }
+        List<String> textChunkIds = textResults.values().stream().flatMap(List::stream).map(EmbeddingModel.EmbeddingsQueryItem::getTextChunkId).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Map<String, TextChunkPo> textChunkMap = selectTextChunks(textChunkIds);
+        List<List<KnowledgeRetrieveItemDto>> results = new ArrayList<>(queryTexts.size());
+        for (String queryText : queryTexts) {
+            List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = queryText == null ? null : textResults.get(queryText);
+            results.add(embeddingsQueryItems == null ? new ArrayList<>() : translateRetrieveItems(embeddingsQueryItems, textChunkMap));
+        }
+        return results;
+    }
+
+    private List<KnowledgeRetrieveItemDto> translateRetrieveItems(List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems, Map<String, TextChunkPo> textChunkMap) {
+        List<KnowledgeRetrieveItemDto> retrieveResult = new ArrayList<>(embeddingsQueryItems.size());
+        ScorePredicate scorePredicate = scorePredicate(propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_SCORE_COMPARE_EXPR));
+        KnowledgeRetrieveItemDto.MetricTypeEnum metricType = KnowledgeRetrieveItemDto.MetricTypeEnum.valueOf(propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE));
         for (EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem : embeddingsQueryItems) {
-            String calculateExpressionResult = MathCalculatorUtil.calculateExpression(embeddingsQueryItem.getScore() + propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_SCORE_COMPARE_EXPR));
-            retrieveResult.add(Translator.translateToEmbeddingsQueryItemDto(embeddingsQueryItem, textChunkMap.get(embeddingsQueryItem.getTextChunkId()), !"true".equals(calculateExpressionResult), KnowledgeRetrieveItemDto.MetricTypeEnum.valueOf(propertiesService.getProperty(PropertiesService.RETRIEVE_METRIC_TYPE)), embeddingService.getDimension()));
+            retrieveResult.add(Translator.translateToEmbeddingsQueryItemDto(embeddingsQueryItem, textChunkMap.get(embeddingsQueryItem.getTextChunkId()), !matches(scorePredicate, embeddingsQueryItem), metricType, embeddingService.getDimension()));
         }
         return retrieveResult;
     }
 
+    /**
+     * 批量检索中单条查询的结果
+     *
+     * @param index 查询的序号
+     * @param items 检索结果，失败时为空
+     * @param error 失败时的错误信息，成功时为 null
+     */
+    public record BatchRetrieveResult(int index, List<KnowledgeRetrieveItemDto> items, String error) {
+    }
+
+    /**
+     * 按表达式文本缓存编译结果，配置更新时失效
+     */
+    private ScorePredicate scorePredicate(String metricScoreCompareExpr) {
+        ScorePredicate cached = scorePredicate;
+        if (cached != null && Objects.equals(cached.source(), metricScoreCompareExpr)) {
+            return cached;
+        }
+        ScorePredicate compiled = ScorePredicate.compile(metricScoreCompareExpr);
+        scorePredicate = compiled;
+        return compiled;
+    }
+
+    private static boolean matches(ScorePredicate scorePredicate, EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem) {
+        Float score = embeddingsQueryItem.getScore();
+        return score != null && scorePredicate.test(score);
+    }
+
+    @EventListener
+    public void handlePropertiesUpdated(PropertiesUpdatedEvent event) {
+        if (event.getPropertyNames() != null && event.getPropertyNames().contains(PropertiesService.RETRIEVE_METRIC_SCORE_COMPARE_EXPR)) {
+            scorePredicate = null;
+        }
+    }
+
     private float[] resolveRetrieveWeights() {
         float denseWeight = parseWeight(propertiesService.getProperty(PropertiesService.RETRIEVE_DENSE_WEIGHT), 0.5f);
         float sparseWeight = parseWeight(propertiesService.getProperty(PropertiesService.RETRIEVE_SPARSE_WEIGHT), 0.5f);
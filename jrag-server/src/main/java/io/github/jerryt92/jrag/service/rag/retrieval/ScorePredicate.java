@@ -0,0 +1,109 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的 score 过滤条件（RETRIEVE_METRIC_SCORE_COMPARE_EXPR）
+ * <p>
+ * 形如 {@code > 0.7} 的单个比较直接编译为 float 比较；其他表达式只解析一次 SpEL，
+ * 计算时将 score 拼接在表达式之前求值，与逐条调用 {@code MathCalculatorUtil} 的语义一致。
+ */
+@Slf4j
+public final class ScorePredicate {
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final Pattern SIMPLE_COMPARE_PATTERN = Pattern.compile("^\\s*(>=|<=|==|!=|>|<)\\s*([-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?)\\s*$");
+    // 与 MathCalculatorUtil 相同：独立整数按 Long 计算
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("(?<![\\d.])(\\d+)(?![\\d.L])");
+
+    private final String source;
+    private final Operator operator;
+    private final float threshold;
+    private final Expression expression;
+
+    private ScorePredicate(String source, Operator operator, float threshold, Expression expression) {
+        this.source = source;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.expression = expression;
+    }
+
+    /**
+     * 编译比较表达式，空表达式不过滤，无法解析的表达式过滤全部结果
+     */
+    public static ScorePredicate compile(String source) {
+        if (StringUtils.isBlank(source)) {
+            return new ScorePredicate(source, Operator.ACCEPT_ALL, 0f, null);
+        }
+        String normalized = source.replace("（", "(")
+                .replace("）", ")")
+                .replace("×", "*")
+                .replace("÷", "/")
+                .replace("＞", ">")
+                .replace("＜", "<")
+                .replace("＝", "=")
+                .replace("≥", ">=")
+                .replace("≤", "<=");
+        Matcher matcher = SIMPLE_COMPARE_PATTERN.matcher(normalized);
+        if (matcher.matches()) {
+            return new ScorePredicate(source, Operator.of(matcher.group(1)), Float.parseFloat(matcher.group(2)), null);
+        }
+        try {
+            Expression expression = PARSER.parseExpression("#score " + INTEGER_PATTERN.matcher(normalized).replaceAll("$1L"));
+            return new ScorePredicate(source, Operator.EXPRESSION, 0f, expression);
+        } catch (Exception e) {
+            log.error("Invalid score compare expression: {}", source, e);
+            return new ScorePredicate(source, Operator.REJECT_ALL, 0f, null);
+        }
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public boolean test(float score) {
+        return switch (operator) {
+            case GT -> score > threshold;
+            case GE -> score >= threshold;
+            case LT -> score < threshold;
+            case LE -> score <= threshold;
+            case EQ -> score == threshold;
+            case NE -> score != threshold;
+            case ACCEPT_ALL -> true;
+            case REJECT_ALL -> false;
+            case EXPRESSION -> evaluate(score);
+        };
+    }
+
+    private boolean evaluate(float score) {
+        try {
+            SimpleEvaluationContext context = SimpleEvaluationContext.forReadOnlyDataBinding().build();
+            context.setVariable("score", score);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        } catch (Exception e) {
+            log.error("Score compare expression evaluation failed: {}", source, e);
+            return false;
+        }
+    }
+
+    private enum Operator {
+        GT, GE, LT, LE, EQ, NE, ACCEPT_ALL, REJECT_ALL, EXPRESSION;
+
+        static Operator of(String symbol) {
+            return switch (symbol) {
+                case ">" -> GT;
+                case ">=" -> GE;
+                case "<" -> LT;
+                case "<=" -> LE;
+                case "==" -> EQ;
+                default -> NE;
+            };
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+/**
+ * 计算文本的 token 数，用于按 token 预算组装检索内容
+ * <p>
+ * 默认使用 {@link #estimating()} 估算；注册一个 TokenCounter Bean 即可替换为与模型一致的分词器。
+ */
+@FunctionalInterface
+public interface TokenCounter {
+    int count(String text);
+
+    /**
+     * 不依赖分词器的估算：中日韩文字每字按 1 个 token，拉丁字母、数字每 4 个字符按 1 个 token，
+     * 其他符号各按 1 个 token，空白不计。对常见 BPE 分词器略偏大，不会超出预算。
+     */
+    static TokenCounter estimating() {
+        return text -> {
+            if (text == null || text.isEmpty()) {
+                return 0;
+            }
+            int tokens = 0;
+            int wordLength = 0;
+            int i = 0;
+            while (i < text.length()) {
+                int codePoint = text.codePointAt(i);
+                i += Character.charCount(codePoint);
+                if (codePoint < 0x80 && Character.isLetterOrDigit(codePoint)) {
+                    wordLength++;
+                    continue;
+                }
+                tokens += (wordLength + 3) / 4;
+                wordLength = 0;
+                if (!Character.isWhitespace(codePoint)) {
+                    tokens++;
+                }
+            }
+            return tokens + (wordLength + 3) / 4;
+        };
+    }
+}
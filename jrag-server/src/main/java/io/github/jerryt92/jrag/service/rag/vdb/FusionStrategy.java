@@ -0,0 +1,38 @@
+package io.github.jerryt92.jrag.service.rag.vdb;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 混合检索的融合策略（RETRIEVE_FUSION_STRATEGY）
+ */
+public enum FusionStrategy {
+    /**
+     * 交由向量数据库融合，Milvus 为 WeightedRanker
+     * <p>
+     * Milvus 只返回融合后的分数，denseScore 由返回的向量在本地计算，sparseScore 为空；需要各通道分数时使用其他策略。
+     */
+    NATIVE,
+    /**
+     * 各通道分数按 WeightedRanker 的方式归一化后加权求和
+     */
+    WEIGHTED,
+    /**
+     * Reciprocal Rank Fusion，只使用各通道内的排名
+     */
+    RRF,
+    /**
+     * Distribution-Based Score Fusion，按各通道本次结果的均值 ± 3 倍标准差归一化后加权求和
+     */
+    DBSF;
+
+    public static FusionStrategy of(String value, FusionStrategy fallback) {
+        if (StringUtils.isBlank(value)) {
+            return fallback;
+        }
+        try {
+            return FusionStrategy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
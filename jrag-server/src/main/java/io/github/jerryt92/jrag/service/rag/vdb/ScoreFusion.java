@@ -0,0 +1,118 @@
+package io.github.jerryt92.jrag.service.rag.vdb;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 稠密、稀疏两个通道检索结果的融合
+ * <p>
+ * 检索阶段的 {@link FusionStrategy} 融合与进程内向量数据库的混合检索共用，保证两者的 score 一致。
+ */
+public final class ScoreFusion {
+    private ScoreFusion() {
+    }
+
+    /**
+     * 融合两个通道的结果，两个列表均需按相关度从高到低排列
+     *
+     * @param metricType 稠密通道的度量方式
+     * @param rrfK       RRF 常数，其他策略忽略
+     * @return 按融合后的分数从高到低排列，最多 topK 条，score 在 [0, 1] 内
+     */
+    public static List<EmbeddingModel.EmbeddingsQueryItem> fuse(FusionStrategy strategy,
+                                                         List<EmbeddingModel.EmbeddingsQueryItem> denseItems,
+                                                         List<EmbeddingModel.EmbeddingsQueryItem> sparseItems,
+                                                         String metricType,
+                                                         float denseWeight,
+                                                         float sparseWeight,
+                                                         int rrfK,
+                                                         int topK) {
+        float[] denseScores = channelScores(strategy, rawScores(denseItems, false), metricType, rrfK);
+        float[] sparseScores = channelScores(strategy, rawScores(sparseItems, true), ScoreNormalizer.BM25, rrfK);
+        // RRF 分数除以两个通道都排第一时的分数，映射到 (0, 1]
+        float scale = strategy == FusionStrategy.RRF ? (rrfK + 1f) / (denseWeight + sparseWeight) : 1f;
+        Map<String, EmbeddingModel.EmbeddingsQueryItem> merged = new LinkedHashMap<>();
+        Map<String, Float> fusedScores = new HashMap<>();
+        for (int i = 0; i < denseItems.size(); i++) {
+            EmbeddingModel.EmbeddingsQueryItem item = denseItems.get(i);
+            merged.putIfAbsent(item.getHash(), item);
+            fusedScores.merge(item.getHash(), denseWeight * denseScores[i], Float::sum);
+        }
+        for (int i = 0; i < sparseItems.size(); i++) {
+            EmbeddingModel.EmbeddingsQueryItem item = sparseItems.get(i);
+            EmbeddingModel.EmbeddingsQueryItem existing = merged.putIfAbsent(item.getHash(), item);
+            if (existing != null) {
+                existing.setSparseScore(item.getSparseScore());
+            }
+            fusedScores.merge(item.getHash(), sparseWeight * sparseScores[i], Float::sum);
+        }
+        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = new ArrayList<>(merged.size());
+        for (EmbeddingModel.EmbeddingsQueryItem item : merged.values()) {
+            float hybridScore = Math.min(fusedScores.get(item.getHash()) * scale, 1f);
+            embeddingsQueryItems.add(item.setScore(hybridScore).setHybridScore(hybridScore));
+        }
+        embeddingsQueryItems.sort(Comparator.comparing(EmbeddingModel.EmbeddingsQueryItem::getHybridScore).reversed());
+        return embeddingsQueryItems.size() > topK ? new ArrayList<>(embeddingsQueryItems.subList(0, topK)) : embeddingsQueryItems;
+    }
+
+    private static float[] rawScores(List<EmbeddingModel.EmbeddingsQueryItem> items, boolean sparse) {
+        float[] rawScores = new float[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            EmbeddingModel.EmbeddingsQueryItem item = items.get(i);
+            Float score = sparse ? item.getSparseScore() : item.getDenseScore();
+            rawScores[i] = score == null ? 0f : score;
+        }
+        return rawScores;
+    }
+
+    /**
+     * 计算单个通道内各条结果融合前的分数，rawScores 按相关度从高到低排列
+     */
+    private static float[] channelScores(FusionStrategy strategy, float[] rawScores, String metricType, int rrfK) {
+        float[] scores = new float[rawScores.length];
+        switch (strategy) {
+            case RRF -> {
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = 1f / (rrfK + i + 1);
+                }
+            }
+            case DBSF -> {
+                if (scores.length == 0) {
+                    break;
+                }
+                // L2 距离越小越相似，取负后与其他度量方向一致
+                float sign = "L2".equals(metricType) ? -1f : 1f;
+                double sum = 0;
+                for (float rawScore : rawScores) {
+                    sum += sign * rawScore;
+                }
+                double mean = sum / rawScores.length;
+                double variance = 0;
+                for (float rawScore : rawScores) {
+                    variance += (sign * rawScore - mean) * (sign * rawScore - mean);
+                }
+                double std = Math.sqrt(variance / rawScores.length);
+                for (int i = 0; i < scores.length; i++) {
+                    if (std == 0) {
+                        scores[i] = 1f;
+                    } else {
+                        double normalized = (sign * rawScores[i] - (mean - 3 * std)) / (6 * std);
+                        scores[i] = (float) Math.max(0, Math.min(1, normalized));
+                    }
+                }
+            }
+            default -> {
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = ScoreNormalizer.normalize(metricType, rawScores[i]);
+                }
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.jerryt92.jrag.service.rag.vdb;
+
+/**
+ * 检索分数归一化，与 Milvus WeightedRanker 的归一化方式相同：映射到 [0, 1] 且越大越相似
+ * <p>
+ * Milvus Lite 与进程内向量数据库的混合检索、检索阶段的 WEIGHTED 融合共用，使这些结果的 score 与 Milvus WeightedRanker 可比。
+ */
+public final class ScoreNormalizer {
+    public static final String BM25 = "BM25";
+
+    private ScoreNormalizer() {
+    }
+
+    /**
+     * @param metricType 度量方式（COSINE / IP / L2 / BM25），未知时按距离（越小越相似）处理
+     * @param score      原始分数，为 null 时返回 0
+     */
+    public static float normalize(String metricType, Float score) {
+        if (score == null) {
+            return 0f;
+        }
+        return switch (metricType == null ? "" : metricType) {
+            case "COSINE" -> (1f + score) * 0.5f;
+            case "IP" -> (float) (0.5 + Math.atan(score) / Math.PI);
+            case BM25 -> (float) (2 * Math.atan(score) / Math.PI);
+            default -> (float) (1 - 2 * Math.atan(score) / Math.PI);
+        };
+    }
+}
@@ -3,20 +3,107 @@ package io.github.jerryt92.jrag.service.rag.vdb;
 import io.github.jerryt92.jrag.model.EmbeddingModel;
 import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface VectorDatabaseService {
+    /**
+     * 加载已持久化的向量数据
+     *
+     * @param checkEmbeddingHash 当前嵌入模型的校验hash
+     * @return 持久化数据与当前嵌入模型、维度、度量方式一致时返回 true，此时无需 reBuildVectorDatabase 与 initData
+     */
+    default boolean loadPersistedData(int dimension, String metricTypeStr, String checkEmbeddingHash) {
+        return false;
+    }
+
     void reBuildVectorDatabase(int dimension, String metricTypeStr);
 
+    /**
+     * 列出已有数据的 hash 及其版本（embeddings_item.update_time），loadPersistedData 返回 true 后用于增量同步
+     *
+     * @return 不记录版本的实现 value 为 null，只按 hash 比较；返回 null 表示不支持增量同步
+     */
+    default Map<String, Long> listDataVersions() {
+        return null;
+    }
+
+    /**
+     * reBuildVectorDatabase 之后分批写入全部数据，可能被多个线程并发调用
+     */
     void initData(List<EmbeddingsItemPoWithBLOBs> embeddingsItemPos);
 
+    /**
+     * 全部数据已通过 initData 写入
+     */
+    default void initDataComplete() {
+    }
+
     /**
      * 根据余弦相似度近似近邻（ANN）搜索
      *
      * @param queryVector 查询向量
      * @param topK        表示返回最相似的K个向量
      */
-    List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK);
+    default List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK) {
+        return knnRetrieval(queryVector, topK, null);
+    }
+
+    /**
+     * 带元数据过滤的近似近邻搜索，过滤在检索过程中完成，返回满足条件的最相似的K个向量
+     *
+     * @param filter 过滤条件，为 null 时不过滤
+     */
+    List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK, VectorFilter filter);
+
+    /**
+     * 稀疏向量（BM25 关键词）检索，score 与 sparseScore 为 BM25 分数
+     *
+     * @param queryText 查询文本
+     * @param topK      表示返回最相似的K个文本
+     */
+    default List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK) {
+        return sparseRetrieval(queryText, topK, null);
+    }
+
+    /**
+     * 带元数据过滤的稀疏向量检索
+     *
+     * @param filter 过滤条件，为 null 时不过滤
+     */
+    List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK, VectorFilter filter);
+
+    /**
+     * 批量近似近邻搜索，结果与查询向量一一对应；默认逐个检索，支持多向量检索的实现应在一次请求中完成
+     */
+    default List<List<EmbeddingModel.EmbeddingsQueryItem>> knnRetrievalBatch(List<float[]> queryVectors, int topK) {
+        return knnRetrievalBatch(queryVectors, topK, null);
+    }
+
+    default List<List<EmbeddingModel.EmbeddingsQueryItem>> knnRetrievalBatch(List<float[]> queryVectors, int topK, VectorFilter filter) {
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> results = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            results.add(knnRetrieval(queryVector, topK, filter));
+        }
+        return results;
+    }
+
+    /**
+     * 批量稀疏向量检索，结果与查询文本一一对应；默认逐个检索
+     */
+    default List<List<EmbeddingModel.EmbeddingsQueryItem>> sparseRetrievalBatch(List<String> queryTexts, int topK) {
+        return sparseRetrievalBatch(queryTexts, topK, null);
+    }
+
+    default List<List<EmbeddingModel.EmbeddingsQueryItem>> sparseRetrievalBatch(List<String> queryTexts, int topK, VectorFilter filter) {
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> results = new ArrayList<>(queryTexts.size());
+        for (String queryText : queryTexts) {
+            results.add(sparseRetrieval(queryText, topK, filter));
+        }
+        return results;
+    }
 
     /**
      * 混合检索（语义向量 + 稀疏向量）
@@ -28,14 +115,67 @@ public interface VectorDatabaseService {
      * @param denseWeight  语义向量权重
      * @param sparseWeight 稀疏向量权重
      */
+    default List<EmbeddingModel.EmbeddingsQueryItem> hybridRetrieval(String queryText,
+                                                                     float[] queryVector,
+                                                                     int topK,
+                                                                     String metricType,
+                                                                     float denseWeight,
+                                                                     float sparseWeight) {
+        return hybridRetrieval(queryText, queryVector, topK, metricType, denseWeight, sparseWeight, null);
+    }
+
+    /**
+     * 带元数据过滤的混合检索，两个通道使用相同的过滤条件
+     *
+     * @param filter 过滤条件，为 null 时不过滤
+     */
     List<EmbeddingModel.EmbeddingsQueryItem> hybridRetrieval(String queryText,
                                                              float[] queryVector,
                                                              int topK,
                                                              String metricType,
                                                              float denseWeight,
-                                                             float sparseWeight);
+                                                             float sparseWeight,
+                                                             VectorFilter filter);
+
+    /**
+     * 异步近似近邻搜索；默认在虚拟线程中执行同步检索，远程实现应在自己的连接上执行
+     */
+    default CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> knnRetrievalAsync(float[] queryVector, int topK, VectorFilter filter) {
+        return CompletableFuture.supplyAsync(() -> knnRetrieval(queryVector, topK, filter), Thread::startVirtualThread);
+    }
+
+    /**
+     * 异步稀疏向量检索
+     */
+    default CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> sparseRetrievalAsync(String queryText, int topK, VectorFilter filter) {
+        return CompletableFuture.supplyAsync(() -> sparseRetrieval(queryText, topK, filter), Thread::startVirtualThread);
+    }
+
+    /**
+     * 异步混合检索
+     */
+    default CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> hybridRetrievalAsync(String queryText,
+                                                                                             float[] queryVector,
+                                                                                             int topK,
+                                                                                             String metricType,
+                                                                                             float denseWeight,
+                                                                                             float sparseWeight,
+                                                                                             VectorFilter filter) {
+        return CompletableFuture.supplyAsync(() -> hybridRetrieval(queryText, queryVector, topK, metricType, denseWeight, sparseWeight, filter), Thread::startVirtualThread);
+    }
 
     void putData(List<EmbeddingsItemPoWithBLOBs> embeddingsItems);
 
     void deleteData(List<String> ids);
+
+    /**
+     * 异步写入，可与 deleteDataAsync 并发执行，调用方需保证两者的 hash 不重叠
+     */
+    default CompletableFuture<Void> putDataAsync(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
+        return CompletableFuture.runAsync(() -> putData(embeddingsItems), Thread::startVirtualThread);
+    }
+
+    default CompletableFuture<Void> deleteDataAsync(List<String> ids) {
+        return CompletableFuture.runAsync(() -> deleteData(ids), Thread::startVirtualThread);
+    }
 }
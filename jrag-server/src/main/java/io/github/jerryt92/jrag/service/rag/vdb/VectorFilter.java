@@ -0,0 +1,45 @@
+package io.github.jerryt92.jrag.service.rag.vdb;
+
+import java.util.Set;
+
+/**
+ * 向量检索的元数据过滤条件
+ * <p>
+ * 以文本块 ID 限定检索范围：文件、创建者、描述等元数据保存在 text_chunk 表中，由调用方解析为文本块 ID 后传入。
+ * Milvus 将其作为 text_chunk_id 的过滤表达式在检索时预过滤，进程内索引将其转换为序号位图。
+ *
+ * @param textChunkIds 允许出现在结果中的文本块 ID，为空时不返回任何结果
+ */
+public record VectorFilter(Set<String> textChunkIds) {
+    public VectorFilter {
+        textChunkIds = Set.copyOf(textChunkIds);
+    }
+
+    public boolean isEmpty() {
+        return textChunkIds.isEmpty();
+    }
+
+    /**
+     * Milvus 布尔表达式，用于 search 的 filter 与 hybridSearch 各通道的 expr
+     */
+    public String toExpression() {
+        StringBuilder expression = new StringBuilder("text_chunk_id in [");
+        boolean first = true;
+        for (String textChunkId : textChunkIds) {
+            if (!first) {
+                expression.append(',');
+            }
+            first = false;
+            expression.append('"');
+            for (int i = 0; i < textChunkId.length(); i++) {
+                char c = textChunkId.charAt(i);
+                if (c == '"' || c == '\\') {
+                    expression.append('\\');
+                }
+                expression.append(c);
+            }
+            expression.append('"');
+        }
+        return expression.append(']').toString();
+    }
+}
@@ -0,0 +1,322 @@
+package io.github.jerryt92.jrag.service.rag.vdb.bm25;
+
+import io.github.jerryt92.jrag.service.rag.vdb.local.NeighborQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 进程内 BM25 倒排索引，可作为任意 {@code VectorDatabaseService} 的关键词（稀疏）检索通道
+ * <p>
+ * 文档按写入顺序分配递增的内部文档号，覆盖写入或删除时旧文档号只做标记并扣减文档频率，
+ * 已删除文档超过一定比例后压缩倒排表。检索使用 WAND：按各词项的分数上界跳过不可能进入 top-K 的文档。
+ * BM25 参数与 Milvus 默认值一致（k1 = 1.2，b = 0.75）。
+ */
+public class Bm25Index {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // 已删除文档数超过该比例时压缩
+    private static final float COMPACT_RATIO = 0.2f;
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<String, Integer> idToDoc = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private String[] docIds = new String[1024];
+    private int[] docLengths = new int[1024];
+    // 文档包含的词项对应的倒排表，删除时据此扣减文档频率
+    private PostingList[][] docTerms = new PostingList[1024][];
+    private int docCount;
+    private int deletedCount;
+    private long totalLength;
+
+    /**
+     * 写入文档，id 已存在时覆盖
+     */
+    public void put(String id, String text) {
+        List<String> tokens = Bm25Tokenizer.tokenizeDocument(text);
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String token : tokens) {
+            termFrequencies.merge(token, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            if (docCount == docIds.length) {
+                int newLength = docIds.length + (docIds.length >> 1);
+                docIds = Arrays.copyOf(docIds, newLength);
+                docLengths = Arrays.copyOf(docLengths, newLength);
+                docTerms = Arrays.copyOf(docTerms, newLength);
+            }
+            int docId = docCount++;
+            docIds[docId] = id;
+            docLengths[docId] = tokens.size();
+            totalLength += tokens.size();
+            idToDoc.put(id, docId);
+            PostingList[] terms = new PostingList[termFrequencies.size()];
+            int termIndex = 0;
+            for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+                PostingList postingList = postings.computeIfAbsent(entry.getKey(), k -> new PostingList());
+                postingList.add(docId, entry.getValue(), tokens.size());
+                terms[termIndex++] = postingList;
+            }
+            docTerms[docId] = terms;
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            idToDoc.clear();
+            deleted.clear();
+            docIds = new String[1024];
+            docLengths = new int[1024];
+            docTerms = new PostingList[1024][];
+            docCount = 0;
+            deletedCount = 0;
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToDoc.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 检索与查询文本 BM25 分数最高的 K 个文档
+     *
+     * @param accept 文档 id 过滤条件，为 null 时不过滤
+     * @return 按分数从高到低排列
+     */
+    public List<Hit> search(String query, int topK, Predicate<String> accept) {
+        List<String> queryTokens = Bm25Tokenizer.tokenizeQuery(query);
+        if (queryTokens.isEmpty() || topK <= 0) {
+            return List.of();
+        }
+        Map<String, Integer> queryTermFrequencies = new HashMap<>();
+        for (String token : queryTokens) {
+            queryTermFrequencies.merge(token, 1, Integer::sum);
+        }
+        lock.readLock().lock();
+        try {
+            int liveCount = idToDoc.size();
+            if (liveCount == 0) {
+                return List.of();
+            }
+            float avgDocLength = Math.max((float) totalLength / liveCount, 1f);
+            List<TermScorer> scorers = new ArrayList<>(queryTermFrequencies.size());
+            for (Map.Entry<String, Integer> entry : queryTermFrequencies.entrySet()) {
+                PostingList postingList = postings.get(entry.getKey());
+                if (postingList != null) {
+                    scorers.add(new TermScorer(postingList, entry.getValue(), liveCount, avgDocLength));
+                }
+            }
+            if (scorers.isEmpty()) {
+                return List.of();
+            }
+            NeighborQueue results = wand(scorers, topK, accept);
+            int[] docs = new int[results.size()];
+            float[] scores = new float[results.size()];
+            int count = results.drainDescending(docs, scores);
+            List<Hit> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                hits.add(new Hit(docIds[docs[i]], scores[i]));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * WAND top-K：游标按当前文档号排序，累加分数上界直到超过堆顶阈值，得到枢轴文档；
+     * 枢轴之前的游标直接跳到枢轴文档，只有所有前序游标都对齐时才完整计算分数。
+     */
+    private NeighborQueue wand(List<TermScorer> scorers, int topK, Predicate<String> accept) {
+        NeighborQueue results = new NeighborQueue(topK, true);
+        TermScorer[] cursors = scorers.toArray(new TermScorer[0]);
+        for (TermScorer cursor : cursors) {
+            cursor.next();
+        }
+        while (true) {
+            sortByDocId(cursors);
+            float threshold = results.size() < topK ? Float.NEGATIVE_INFINITY : results.topSimilarity();
+            float upperBound = 0f;
+            int pivot = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i].docId() == PostingList.NO_MORE_DOCS) {
+                    break;
+                }
+                upperBound += cursors[i].upperBound;
+                if (upperBound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            int pivotDoc = cursors[pivot].docId();
+            if (cursors[0].docId() == pivotDoc) {
+                float score = 0f;
+                for (TermScorer cursor : cursors) {
+                    if (cursor.docId() != pivotDoc) {
+                        break;
+                    }
+                    score += cursor.score(docLengths[pivotDoc]);
+                    cursor.next();
+                }
+                if (!deleted.get(pivotDoc) && (accept == null || accept.test(docIds[pivotDoc]))) {
+                    results.insertWithOverflow(pivotDoc, score, topK);
+                }
+            } else {
+                for (int i = 0; i < pivot; i++) {
+                    if (cursors[i].docId() < pivotDoc) {
+                        cursors[i].advance(pivotDoc);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static void sortByDocId(TermScorer[] cursors) {
+        // 游标每轮只移动少数几个，插入排序接近线性
+        for (int i = 1; i < cursors.length; i++) {
+            TermScorer cursor = cursors[i];
+            int j = i - 1;
+            while (j >= 0 && cursors[j].docId() > cursor.docId()) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+
+    private void removeInternal(String id) {
+        Integer docId = idToDoc.remove(id);
+        if (docId == null) {
+            return;
+        }
+        deleted.set(docId);
+        deletedCount++;
+        totalLength -= docLengths[docId];
+        docIds[docId] = null;
+        for (PostingList postingList : docTerms[docId]) {
+            postingList.markDeleted();
+        }
+        docTerms[docId] = null;
+    }
+
+    private void maybeCompact() {
+        if (deletedCount < COMPACT_MIN_DELETED || deletedCount < docCount * COMPACT_RATIO) {
+            return;
+        }
+        Iterator<Map.Entry<String, PostingList>> iterator = postings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PostingList postingList = iterator.next().getValue();
+            if (postingList.liveCount() == 0) {
+                iterator.remove();
+            } else {
+                postingList.compact(deleted, docLengths);
+            }
+        }
+        // 文档号不回收，已删除标记保留，压缩后的倒排表中不再包含这些文档
+        deletedCount = 0;
+    }
+
+    /**
+     * 倒排表占用的内存（估算）
+     */
+    public long ramBytesUsed() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) docLengths.length * 16;
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                bytes += entry.getKey().length() * 2L + 48 + entry.getValue().ramBytesUsed();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 单个查询词项的打分游标
+     */
+    private static final class TermScorer {
+        private final PostingList.Cursor cursor;
+        private final float weight;
+        private final float avgDocLength;
+        private final float upperBound;
+
+        TermScorer(PostingList postingList, int queryTermFrequency, int liveCount, float avgDocLength) {
+            this.cursor = postingList.cursor();
+            int docFrequency = postingList.liveCount();
+            float idf = (float) Math.log(1 + (liveCount - docFrequency + 0.5) / (docFrequency + 0.5));
+            this.weight = idf * queryTermFrequency;
+            this.avgDocLength = avgDocLength;
+            // 词频越大、文档越短分数越高，用最大词频与最短文档长度得到上界（压缩前包含已删除文档，上界只会偏大）
+            this.upperBound = termScore(postingList.maxTf(), postingList.minDocLength());
+        }
+
+        int docId() {
+            return cursor.docId();
+        }
+
+        void next() {
+            cursor.next();
+        }
+
+        void advance(int target) {
+            cursor.advance(target);
+        }
+
+        float score(int docLength) {
+            return termScore(cursor.tf(), docLength);
+        }
+
+        private float termScore(int tf, int docLength) {
+            float norm = K1 * (1 - B + B * docLength / avgDocLength);
+            return weight * tf * (K1 + 1) / (tf + norm);
+        }
+    }
+
+    /**
+     * 检索结果
+     *
+     * @param id    写入时的文档 id
+     * @param score BM25 分数
+     */
+    public record Hit(String id, float score) {
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.jerryt92.jrag.service.rag.vdb.bm25;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * BM25 分词器
+ * <p>
+ * 拉丁字母、数字按连续片段切分并转小写；中日韩文字没有空格分隔，按二元组（bigram）切分。
+ * 建索引时同时写入单字，查询时连续两个以上的中日韩文字只使用二元组，单独一个字才使用单字，
+ * 这样单字查询也能命中，而多字查询不会被高频单字稀释。
+ */
+public final class Bm25Tokenizer {
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private Bm25Tokenizer() {
+    }
+
+    public static List<String> tokenizeDocument(String text) {
+        return tokenize(text, true);
+    }
+
+    public static List<String> tokenizeQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static List<String> tokenize(String text, boolean document) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        List<String> cjkRun = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                cjkRun.add(new String(Character.toChars(codePoint)));
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjkRun, tokens, document);
+                word.appendCodePoint(codePoint);
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjkRun, tokens, document);
+            }
+        }
+        flushWord(word, tokens);
+        flushCjk(cjkRun, tokens, document);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.isEmpty()) {
+            return;
+        }
+        if (word.length() <= MAX_TOKEN_LENGTH) {
+            tokens.add(word.toString().toLowerCase(Locale.ROOT));
+        }
+        word.setLength(0);
+    }
+
+    private static void flushCjk(List<String> cjkRun, List<String> tokens, boolean document) {
+        if (cjkRun.isEmpty()) {
+            return;
+        }
+        if (cjkRun.size() == 1 || document) {
+            tokens.addAll(cjkRun);
+        }
+        for (int i = 0; i + 1 < cjkRun.size(); i++) {
+            tokens.add(cjkRun.get(i) + cjkRun.get(i + 1));
+        }
+        cjkRun.clear();
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
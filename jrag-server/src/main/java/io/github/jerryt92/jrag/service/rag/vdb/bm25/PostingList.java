@@ -0,0 +1,177 @@
+package io.github.jerryt92.jrag.service.rag.vdb.bm25;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 单个词项的倒排表
+ * <p>
+ * 文档号递增追加，按（文档号差值, 词频）两个 varint 压缩存放在 byte 数组中；
+ * 每 {@link #SKIP_INTERVAL} 条记录一个跳表项，{@link Cursor#advance(int)} 据此跳过整块。
+ * 同时记录最大词频与最短文档长度，用于计算 WAND 的分数上界。
+ */
+final class PostingList {
+    static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    private static final int SKIP_INTERVAL = 64;
+
+    private byte[] data = new byte[16];
+    private int length;
+    private int count;
+    // 未删除的文档数，即文档频率
+    private int liveCount;
+    private int lastDocId = -1;
+    private int maxTf;
+    private int minDocLength = Integer.MAX_VALUE;
+    // 第 k 个跳表项对应第 k * SKIP_INTERVAL 条记录：前一条记录的文档号（差值基准）与字节偏移
+    private int[] skipBaseDocIds = new int[0];
+    private int[] skipOffsets = new int[0];
+
+    void add(int docId, int tf, int docLength) {
+        if (docId <= lastDocId) {
+            throw new IllegalArgumentException("Doc id must be increasing: " + docId + " <= " + lastDocId);
+        }
+        if (count % SKIP_INTERVAL == 0) {
+            int skips = count / SKIP_INTERVAL;
+            if (skips == skipOffsets.length) {
+                int newLength = Math.max(4, skips * 2);
+                skipBaseDocIds = Arrays.copyOf(skipBaseDocIds, newLength);
+                skipOffsets = Arrays.copyOf(skipOffsets, newLength);
+            }
+            skipBaseDocIds[skips] = lastDocId;
+            skipOffsets[skips] = length;
+        }
+        writeVInt(docId - lastDocId);
+        writeVInt(tf);
+        lastDocId = docId;
+        count++;
+        liveCount++;
+        maxTf = Math.max(maxTf, tf);
+        minDocLength = Math.min(minDocLength, docLength);
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * 倒排表中的某个文档被删除，记录本身在压缩时才移除
+     */
+    void markDeleted() {
+        liveCount--;
+    }
+
+    int maxTf() {
+        return maxTf;
+    }
+
+    int minDocLength() {
+        return minDocLength;
+    }
+
+    /**
+     * 原地去掉已删除文档的记录，并重新计算最大词频与最短文档长度
+     */
+    void compact(BitSet deleted, int[] docLengths) {
+        PostingList compacted = new PostingList();
+        Cursor cursor = cursor();
+        for (int docId = cursor.next(); docId != NO_MORE_DOCS; docId = cursor.next()) {
+            if (!deleted.get(docId)) {
+                compacted.add(docId, cursor.tf(), docLengths[docId]);
+            }
+        }
+        data = Arrays.copyOf(compacted.data, compacted.length);
+        length = compacted.length;
+        count = compacted.count;
+        liveCount = compacted.liveCount;
+        lastDocId = compacted.lastDocId;
+        maxTf = compacted.maxTf;
+        minDocLength = compacted.minDocLength;
+        skipBaseDocIds = compacted.skipBaseDocIds;
+        skipOffsets = compacted.skipOffsets;
+    }
+
+    long ramBytesUsed() {
+        return data.length + (long) skipOffsets.length * 8 + 48;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void writeVInt(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * 顺序遍历倒排表，非线程安全
+     */
+    final class Cursor {
+        private int position;
+        private int index;
+        private int docId = -1;
+        private int tf;
+
+        int docId() {
+            return docId;
+        }
+
+        int tf() {
+            return tf;
+        }
+
+        int next() {
+            if (index >= count) {
+                docId = NO_MORE_DOCS;
+                return docId;
+            }
+            docId += readVInt();
+            tf = readVInt();
+            index++;
+            return docId;
+        }
+
+        /**
+         * 移动到第一个文档号不小于 target 的记录
+         */
+        int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            // 找到基准文档号小于 target 的最后一个跳表项，跳过之前的整块
+            int skips = (count + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+            int skip = (index + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+            int best = -1;
+            while (skip < skips && skipBaseDocIds[skip] < target) {
+                best = skip++;
+            }
+            if (best >= 0 && best * SKIP_INTERVAL > index) {
+                position = skipOffsets[best];
+                index = best * SKIP_INTERVAL;
+                docId = skipBaseDocIds[best];
+            }
+            while (docId < target) {
+                if (next() == NO_MORE_DOCS) {
+                    break;
+                }
+            }
+            return docId;
+        }
+
+        private int readVInt() {
+            byte b = data[position++];
+            int value = b & 0x7F;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.util.Arrays;
+
+/**
+ * 1 bit 符号量化索引
+ * <p>
+ * 每维与训练得到的均值比较取符号位，按 64 维打包为 long，候选按汉明距离预筛。
+ * 汉明距离只近似角度，对未归一化的 IP / L2 向量误差较大，可适当调大 rescore-factor。
+ */
+public class BinaryQuantizedIndex extends QuantizedIndex {
+    private final int words;
+    private final float[] means;
+    private long[] codes;
+    // 训练与编码时读取向量的缓冲，写入由调用方串行化
+    private final float[] vector;
+
+    public BinaryQuantizedIndex(LocalVectorStore store, int rescoreFactor) {
+        super(store, rescoreFactor);
+        this.vector = new float[dimension];
+        this.words = (dimension + Long.SIZE - 1) / Long.SIZE;
+        this.means = new float[dimension];
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        codes = codes == null ? new long[Math.multiplyExact(capacity, words)] : Arrays.copyOf(codes, Math.multiplyExact(capacity, words));
+    }
+
+    @Override
+    protected int capacity() {
+        return codes == null ? 0 : codes.length / words;
+    }
+
+    @Override
+    protected void train(int count) {
+        double[] sums = new double[dimension];
+        int live = 0;
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (!store.isLive(ordinal)) {
+                continue;
+            }
+            store.readVector(ordinal, vector);
+            for (int i = 0; i < dimension; i++) {
+                sums[i] += vector[i];
+            }
+            live++;
+        }
+        for (int i = 0; i < dimension; i++) {
+            means[i] = live == 0 ? 0f : (float) (sums[i] / live);
+        }
+    }
+
+    @Override
+    protected void encode(int ordinal) {
+        store.readVector(ordinal, vector);
+        encode(vector, 0, codes, ordinal * words);
+    }
+
+    @Override
+    protected QueryScorer scorer(float[] query) {
+        long[] queryCode = new long[words];
+        encode(query, 0, queryCode, 0);
+        return ordinal -> -VectorUtil.hammingDistance(queryCode, 0, codes, ordinal * words, words);
+    }
+
+    private void encode(float[] vector, int offset, long[] target, int targetOffset) {
+        Arrays.fill(target, targetOffset, targetOffset + words, 0L);
+        for (int i = 0; i < dimension; i++) {
+            if (vector[offset + i] > means[i]) {
+                target[targetOffset + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+    }
+}
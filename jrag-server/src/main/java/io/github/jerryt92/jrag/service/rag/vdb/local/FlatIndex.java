@@ -0,0 +1,68 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * 暴力（精确）检索索引
+ * <p>
+ * 顺序扫描存储中的连续向量数组，配合 SIMD 内核逐条计算相似度，用有界堆保留 top-K。
+ * 适用于中小规模知识库（约 20 万条以内），召回率为 100%，写入无需建图。
+ * 存储不在堆中保留向量时（量化索引的精确检索、recall 抽样）逐条从段文件读取。
+ */
+public class FlatIndex implements VectorIndex {
+    private final LocalVectorStore store;
+    private final VectorMetric metric;
+
+    public FlatIndex(LocalVectorStore store) {
+        this.store = store;
+        this.metric = store.metric();
+    }
+
+    @Override
+    public void add(int ordinal) {
+        // 向量已写入存储，无需额外结构
+    }
+
+    @Override
+    public void remove(int ordinal) {
+        // 删除标记由存储维护
+    }
+
+    @Override
+    public NeighborQueue search(float[] query, int topK, IntPredicate accept) {
+        NeighborQueue results = new NeighborQueue(Math.max(topK, 1), true);
+        if (topK <= 0) {
+            return results;
+        }
+        float[] vectors = store.vectors();
+        int dimension = store.dimension();
+        int size = store.size();
+        float[] scratch = vectors == null ? new float[dimension] : null;
+        for (int ordinal = 0, offset = 0; ordinal < size; ordinal++, offset += dimension) {
+            if (!accept.test(ordinal)) {
+                continue;
+            }
+            float similarity = vectors != null
+                    ? metric.similarity(query, 0, vectors, offset, dimension)
+                    : store.similarity(query, ordinal, scratch);
+            results.insertWithOverflow(ordinal, similarity, topK);
+        }
+        return results;
+    }
+
+    /**
+     * 只扫描位图中的序号，计算量与候选数成正比，用于过滤后候选较少的检索
+     */
+    public NeighborQueue search(float[] query, int topK, BitSet ordinals) {
+        NeighborQueue results = new NeighborQueue(Math.max(topK, 1), true);
+        if (topK <= 0) {
+            return results;
+        }
+        float[] scratch = new float[store.dimension()];
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            results.insertWithOverflow(ordinal, store.similarity(query, ordinal, scratch), topK);
+        }
+        return results;
+    }
+}
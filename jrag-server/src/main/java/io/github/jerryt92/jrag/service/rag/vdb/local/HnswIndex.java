@@ -0,0 +1,333 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW（Hierarchical Navigable Small World）近似近邻索引
+ * <p>
+ * 邻接表按层存放在 int 数组中，下标 0 为邻居数量；第 0 层最多 2*M 个邻居，其余层最多 M 个。
+ * 删除采用墓碑方式：被删除的节点仍参与图遍历，但不会出现在检索结果中。
+ * 非线程安全，写入与检索的并发由 {@link LocalVectorDatabaseService} 的读写锁控制（检索只读）。
+ */
+public class HnswIndex implements VectorIndex {
+    private static final String GRAPH_FILE = "hnsw.graph";
+    private static final int GRAPH_FORMAT_VERSION = 1;
+
+    private final LocalVectorStore store;
+    private final VectorMetric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    // links[node][level] = {count, neighbor1, neighbor2, ...}
+    private int[][][] links = new int[1024][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(LocalVectorStore store, int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW M must be >= 2, got " + m);
+        }
+        if (!store.heapVectors()) {
+            throw new IllegalArgumentException("HNSW index requires vectors kept on heap");
+        }
+        this.store = store;
+        this.metric = store.metric();
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(efSearch, 1);
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    @Override
+    public void add(int node) {
+        if (node >= links.length) {
+            links = Arrays.copyOf(links, Math.max(node + 1, links.length + (links.length >> 1)));
+        }
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections(l) + 1];
+        }
+        links[node] = nodeLinks;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        float[] vectors = store.vectors();
+        int queryOffset = store.offset(node);
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedySearch(vectors, queryOffset, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NeighborQueue candidates = searchLayer(vectors, queryOffset, ep, efConstruction, l, null);
+            int[] nodes = new int[candidates.size()];
+            float[] similarities = new float[candidates.size()];
+            int count = candidates.drainDescending(nodes, similarities);
+            ep = nodes[0];
+            int[] selected = selectNeighbors(vectors, nodes, similarities, count, m);
+            int[] neighbors = nodeLinks[l];
+            neighbors[0] = selected.length;
+            System.arraycopy(selected, 0, neighbors, 1, selected.length);
+            for (int neighbor : selected) {
+                connect(vectors, neighbor, node, l);
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    @Override
+    public void remove(int ordinal) {
+        // 墓碑删除，节点保留在图中用于导航
+    }
+
+    @Override
+    public NeighborQueue search(float[] query, int topK, IntPredicate accept) {
+        if (entryPoint < 0 || topK <= 0) {
+            return new NeighborQueue(1, true);
+        }
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedySearch(query, 0, ep, l);
+        }
+        NeighborQueue results = searchLayer(query, 0, ep, Math.max(efSearch, topK), 0, accept);
+        while (results.size() > topK) {
+            results.pop();
+        }
+        return results;
+    }
+
+    /**
+     * 图结构写入 hnsw.graph，节点数与存储序号数一致时下次启动可直接加载
+     */
+    @Override
+    public void save(Path directory) throws IOException {
+        int nodeCount = store.size();
+        Path tmp = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(GRAPH_FORMAT_VERSION);
+            out.writeInt(m);
+            out.writeInt(nodeCount);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < nodeCount; node++) {
+                int[][] nodeLinks = node < links.length ? links[node] : null;
+                // 未加入图的节点（恢复时跳过的已删除节点）层数记为 0
+                out.writeInt(nodeLinks == null ? 0 : nodeLinks.length);
+                if (nodeLinks == null) {
+                    continue;
+                }
+                for (int[] neighbors : nodeLinks) {
+                    out.writeInt(neighbors[0]);
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        out.writeInt(neighbors[i]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, directory.resolve(GRAPH_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean load(Path directory) throws IOException {
+        Path graphPath = directory.resolve(GRAPH_FILE);
+        if (!Files.isRegularFile(graphPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphPath), 1 << 16))) {
+            if (in.readInt() != GRAPH_FORMAT_VERSION || in.readInt() != m) {
+                return false;
+            }
+            int nodeCount = in.readInt();
+            if (nodeCount != store.size()) {
+                return false;
+            }
+            int loadedEntryPoint = in.readInt();
+            int loadedMaxLevel = in.readInt();
+            int[][][] loadedLinks = new int[Math.max(nodeCount, 1024)][][];
+            for (int node = 0; node < nodeCount; node++) {
+                int levels = in.readInt();
+                if (levels == 0) {
+                    continue;
+                }
+                int[][] nodeLinks = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] neighbors = new int[maxConnections(l) + 1];
+                    int count = in.readInt();
+                    neighbors[0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        neighbors[i] = in.readInt();
+                    }
+                    nodeLinks[l] = neighbors;
+                }
+                loadedLinks[node] = nodeLinks;
+            }
+            links = loadedLinks;
+            entryPoint = loadedEntryPoint;
+            maxLevel = loadedMaxLevel;
+        }
+        return true;
+    }
+
+    /**
+     * 在指定层上贪心移动到距离查询向量最近的节点
+     */
+    private int greedySearch(float[] query, int queryOffset, int ep, int level) {
+        float[] vectors = store.vectors();
+        int dimension = store.dimension();
+        int current = ep;
+        float currentSimilarity = metric.similarity(query, queryOffset, vectors, store.offset(current), dimension);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                float similarity = metric.similarity(query, queryOffset, vectors, store.offset(neighbor), dimension);
+                if (similarity > currentSimilarity) {
+                    currentSimilarity = similarity;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层 beam search
+     *
+     * @param accept 为 null 时所有节点都可进入结果（构建阶段）
+     * @return minHeap 形式的结果，最多 ef 个
+     */
+    private NeighborQueue searchLayer(float[] query, int queryOffset, int ep, int ef, int level, IntPredicate accept) {
+        float[] vectors = store.vectors();
+        int dimension = store.dimension();
+        NeighborQueue candidates = new NeighborQueue(ef, false);
+        NeighborQueue results = new NeighborQueue(ef, true);
+        BitSet visited = new BitSet(store.size());
+        float epSimilarity = metric.similarity(query, queryOffset, vectors, store.offset(ep), dimension);
+        candidates.add(ep, epSimilarity);
+        if (accept == null || accept.test(ep)) {
+            results.add(ep, epSimilarity);
+        }
+        visited.set(ep);
+        while (!candidates.isEmpty()) {
+            float candidateSimilarity = candidates.topSimilarity();
+            if (results.size() >= ef && candidateSimilarity < results.topSimilarity()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] neighbors = links[candidate][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = metric.similarity(query, queryOffset, vectors, store.offset(neighbor), dimension);
+                if (results.size() < ef || similarity > results.topSimilarity()) {
+                    candidates.add(neighbor, similarity);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.insertWithOverflow(neighbor, similarity, ef);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式邻居选择：候选按与基准节点的相似度降序遍历，
+     * 若候选与某个已选邻居的相似度高于与基准节点的相似度则暂时跳过，不足 maxCount 时再用跳过的候选补齐
+     *
+     * @param sortedCandidates 按与基准节点相似度降序排列的候选
+     * @param baseSimilarities 候选与基准节点的相似度
+     */
+    private int[] selectNeighbors(float[] vectors, int[] sortedCandidates, float[] baseSimilarities, int count, int maxCount) {
+        if (count <= maxCount) {
+            return Arrays.copyOf(sortedCandidates, count);
+        }
+        int dimension = store.dimension();
+        int[] selected = new int[maxCount];
+        int selectedCount = 0;
+        int[] pruned = new int[count];
+        int prunedCount = 0;
+        for (int i = 0; i < count && selectedCount < maxCount; i++) {
+            int candidate = sortedCandidates[i];
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                float toSelected = metric.similarity(vectors, store.offset(candidate), vectors, store.offset(selected[j]), dimension);
+                if (toSelected > baseSimilarities[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = candidate;
+            } else {
+                pruned[prunedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < prunedCount && selectedCount < maxCount; i++) {
+            selected[selectedCount++] = pruned[i];
+        }
+        return selectedCount == maxCount ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * 为 neighbor 增加一条指向 node 的边，超出上限时重新做启发式选择
+     */
+    private void connect(float[] vectors, int neighbor, int node, int level) {
+        int[] neighborLinks = links[neighbor][level];
+        int count = neighborLinks[0];
+        int maxCount = neighborLinks.length - 1;
+        if (count < maxCount) {
+            neighborLinks[count + 1] = node;
+            neighborLinks[0] = count + 1;
+            return;
+        }
+        int dimension = store.dimension();
+        int baseOffset = store.offset(neighbor);
+        NeighborQueue queue = new NeighborQueue(count + 1, true);
+        queue.add(node, metric.similarity(vectors, baseOffset, vectors, store.offset(node), dimension));
+        for (int i = 1; i <= count; i++) {
+            int existing = neighborLinks[i];
+            queue.add(existing, metric.similarity(vectors, baseOffset, vectors, store.offset(existing), dimension));
+        }
+        int[] sorted = new int[queue.size()];
+        float[] similarities = new float[queue.size()];
+        int total = queue.drainDescending(sorted, similarities);
+        int[] selected = selectNeighbors(vectors, sorted, similarities, total, maxCount);
+        neighborLinks[0] = selected.length;
+        System.arraycopy(selected, 0, neighborLinks, 1, selected.length);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        return (int) (-Math.log(1 - r) * levelMultiplier);
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.util.Arrays;
+
+/**
+ * int8 标量量化索引
+ * <p>
+ * 每维独立计算 min/max，x ≈ offset + scale * (code + 128)。查询时把 q * scale 再量化为 int8，
+ * 内积化为常数项加 int8 内积，L2 额外使用写入时保存的向量模长平方。
+ */
+public class Int8QuantizedIndex extends QuantizedIndex {
+    private final float[] offsets;
+    private final float[] scales;
+    private byte[] codes;
+    private float[] squareNorms;
+    // 训练与编码时读取向量的缓冲，写入由调用方串行化
+    private final float[] vector;
+
+    public Int8QuantizedIndex(LocalVectorStore store, int rescoreFactor) {
+        super(store, rescoreFactor);
+        this.vector = new float[dimension];
+        this.offsets = new float[dimension];
+        this.scales = new float[dimension];
+        Arrays.fill(scales, 1f);
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        codes = codes == null ? new byte[Math.multiplyExact(capacity, dimension)] : Arrays.copyOf(codes, Math.multiplyExact(capacity, dimension));
+        squareNorms = squareNorms == null ? new float[capacity] : Arrays.copyOf(squareNorms, capacity);
+    }
+
+    @Override
+    protected int capacity() {
+        return squareNorms == null ? 0 : squareNorms.length;
+    }
+
+    @Override
+    protected void train(int count) {
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (!store.isLive(ordinal)) {
+                continue;
+            }
+            store.readVector(ordinal, vector);
+            for (int i = 0; i < dimension; i++) {
+                float x = vector[i];
+                min[i] = Math.min(min[i], x);
+                max[i] = Math.max(max[i], x);
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            if (min[i] > max[i]) {
+                // 没有有效向量
+                offsets[i] = 0f;
+                scales[i] = 1f;
+                continue;
+            }
+            float range = max[i] - min[i];
+            offsets[i] = min[i];
+            scales[i] = range > 0f ? range / 255f : 1f;
+        }
+    }
+
+    @Override
+    protected void encode(int ordinal) {
+        store.readVector(ordinal, vector);
+        int codeOffset = ordinal * dimension;
+        for (int i = 0; i < dimension; i++) {
+            int code = Math.round((vector[i] - offsets[i]) / scales[i]);
+            // 超出训练范围的值截断
+            codes[codeOffset + i] = (byte) (Math.clamp(code, 0, 255) - 128);
+        }
+        squareNorms[ordinal] = VectorUtil.dotProduct(vector, 0, vector, 0, dimension);
+    }
+
+    @Override
+    protected QueryScorer scorer(float[] query) {
+        // q·x ≈ Σ q_i * offset_i + Σ w_i * 128 + Σ w_i * code_i，其中 w_i = q_i * scale_i
+        float constant = 0f;
+        float maxWeight = 0f;
+        float[] weights = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            weights[i] = query[i] * scales[i];
+            constant += query[i] * offsets[i] + weights[i] * 128f;
+            maxWeight = Math.max(maxWeight, Math.abs(weights[i]));
+        }
+        float alpha = maxWeight > 0f ? maxWeight / 127f : 1f;
+        byte[] quantizedWeights = new byte[dimension];
+        for (int i = 0; i < dimension; i++) {
+            quantizedWeights[i] = (byte) Math.round(weights[i] / alpha);
+        }
+        float base = constant;
+        if (metric == VectorMetric.L2) {
+            // -(|x|^2 - 2 q·x)，省略与候选无关的 |q|^2
+            return ordinal -> 2f * (base + alpha * VectorUtil.dotProduct(quantizedWeights, 0, codes, ordinal * dimension, dimension)) - squareNorms[ordinal];
+        }
+        return ordinal -> base + alpha * VectorUtil.dotProduct(quantizedWeights, 0, codes, ordinal * dimension, dimension);
+    }
+}
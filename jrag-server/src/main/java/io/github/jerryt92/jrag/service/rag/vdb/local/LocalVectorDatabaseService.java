@@ -0,0 +1,550 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+import io.github.jerryt92.jrag.service.rag.vdb.FusionStrategy;
+import io.github.jerryt92.jrag.service.rag.vdb.ScoreFusion;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
+import io.github.jerryt92.jrag.service.rag.vdb.bm25.Bm25Index;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内向量数据库，数据保存在 JVM 内存中，无需外部 Milvus 进程
+ * <p>
+ * 具体的索引结构（HNSW 等）由 {@link VectorIndex.Factory} 决定，score 语义与 {@code MilvusService} 一致。
+ * 配置数据目录后向量同步写入 {@link VectorSegment}，重启时嵌入模型、维度、度量方式不变则直接加载，无需重新全量写入。
+ * 文本同时写入 {@link Bm25Index}，作为混合检索的关键词（稀疏）通道，加载时由文本重建。
+ * 带过滤条件的检索先由存储得到候选序号位图，在索引遍历与 BM25 计分过程中直接跳过不在位图中的序号。
+ * 写入、删除或加载后，已删除的序号超过阈值时压缩：持读锁复制有效记录到新存储与下一代段文件并重建索引，
+ * 期间检索不受影响；再持写锁替换，压缩期间有写入时放弃本次压缩。
+ */
+@Slf4j
+public class LocalVectorDatabaseService implements VectorDatabaseService {
+    private final String collectionName;
+    private final VectorIndex.Factory indexFactory;
+    // 为 null 时不持久化
+    private final Path dataDirectory;
+    // 为 true 且有段文件时向量不在堆中保留，量化索引从映射的段文件读取 float32 向量重新打分
+    private final boolean offHeapVectors;
+    // 每 recallSampleRate 次检索抽样一次，与精确检索结果比较 recall@K，0 表示不统计
+    private final int recallSampleRate;
+    // 过滤后候选数不超过该值时只对候选精确计算，否则在索引中按位图预过滤
+    private final int filterExactThreshold;
+    private final AtomicLong queryCount = new AtomicLong();
+    private final DoubleAdder recallSum = new DoubleAdder();
+    private final LongAdder recallSamples = new LongAdder();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private LocalVectorStore store;
+    private VectorIndex index;
+    private Bm25Index bm25Index = new Bm25Index();
+    // 最近一次 loadPersistedData 传入的 checkEmbeddingHash，重建时写入清单
+    private String checkEmbeddingHash;
+    // 当前内存数据已完成全量写入时对应的 checkEmbeddingHash
+    private String readyCheckEmbeddingHash;
+    // 索引是否包含存储中的全部序号，写入中途失败时为 false，关闭时不保存与存储不一致的索引
+    private boolean indexConsistent = true;
+
+    public LocalVectorDatabaseService(String collectionName, VectorIndex.Factory indexFactory, Path dataDirectory, boolean offHeapVectors,
+                                      int recallSampleRate, int filterExactThreshold) {
+        this.collectionName = collectionName;
+        this.indexFactory = indexFactory;
+        this.dataDirectory = dataDirectory;
+        this.offHeapVectors = offHeapVectors;
+        this.recallSampleRate = recallSampleRate;
+        this.filterExactThreshold = Math.max(filterExactThreshold, 0);
+    }
+
+    @Override
+    public boolean loadPersistedData(int dimension, String metricTypeStr, String checkEmbeddingHash) {
+        VectorMetric metric = VectorMetric.of(metricTypeStr);
+        lock.writeLock().lock();
+        try {
+            this.checkEmbeddingHash = checkEmbeddingHash;
+            if (store != null && store.dimension() == dimension && store.metric() == metric
+                    && readyCheckEmbeddingHash != null && Objects.equals(readyCheckEmbeddingHash, checkEmbeddingHash)) {
+                // 内存中的数据已是最新，无需重新加载
+                return true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (dataDirectory == null) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        VectorSegment segment = null;
+        try {
+            segment = VectorSegment.openIfMatches(dataDirectory, dimension, metric, checkEmbeddingHash);
+            if (segment == null) {
+                return false;
+            }
+            // 加载与索引构建在锁外进行，完成后再替换
+            LocalVectorStore newStore = new LocalVectorStore(dimension, metric, !offHeapVectors);
+            newStore.attach(segment);
+            segment.loadInto(newStore);
+            VectorIndex newIndex = indexFactory.create(newStore);
+            boolean indexLoaded = newIndex.load(dataDirectory);
+            Bm25Index newBm25Index = new Bm25Index();
+            for (int ordinal = 0; ordinal < newStore.size(); ordinal++) {
+                if (newStore.isLive(ordinal)) {
+                    if (!indexLoaded) {
+                        newIndex.add(ordinal);
+                    }
+                    newBm25Index.put(newStore.hash(ordinal), newStore.text(ordinal));
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                closeSegment();
+                store = newStore;
+                index = newIndex;
+                bm25Index = newBm25Index;
+                readyCheckEmbeddingHash = checkEmbeddingHash;
+                indexConsistent = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Local collection {} loaded from {}, {} vectors, index {}, cost {} ms", collectionName, dataDirectory,
+                    newStore.liveCount(), indexLoaded ? "loaded" : "rebuilt", System.currentTimeMillis() - start);
+            maybeCompact();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to load local collection {} from {}, rebuilding", collectionName, dataDirectory, e);
+            if (segment != null) {
+                try {
+                    segment.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void reBuildVectorDatabase(int dimension, String metricTypeStr) {
+        VectorMetric metric = VectorMetric.of(metricTypeStr);
+        lock.writeLock().lock();
+        try {
+            closeSegment();
+            VectorSegment segment = null;
+            if (dataDirectory != null) {
+                try {
+                    segment = VectorSegment.create(dataDirectory, dimension, metric, checkEmbeddingHash);
+                } catch (IOException e) {
+                    log.warn("Failed to create vector segment in {}, local collection {} will not be persisted", dataDirectory, collectionName, e);
+                }
+            }
+            // 没有段文件时向量只能保存在堆中
+            store = new LocalVectorStore(dimension, metric, !offHeapVectors || segment == null);
+            store.attach(segment);
+            index = indexFactory.create(store);
+            bm25Index = new Bm25Index();
+            readyCheckEmbeddingHash = null;
+            indexConsistent = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Local collection {} rebuilt, dimension: {}, metric type: {}", collectionName, dimension, metric);
+    }
+
+    @Override
+    public void initData(List<EmbeddingsItemPoWithBLOBs> embeddingsItemPos) {
+        int count = write(embeddingsItemPos);
+        if (count > 0) {
+            log.debug("Inserted {} vectors into local collection {}", count, collectionName);
+        }
+    }
+
+    @Override
+    public void initDataComplete() {
+        lock.writeLock().lock();
+        try {
+            if (store == null) {
+                return;
+            }
+            readyCheckEmbeddingHash = checkEmbeddingHash;
+            VectorSegment segment = store.segment();
+            if (segment != null) {
+                segment.markComplete(store.metric(), checkEmbeddingHash);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write manifest of local collection {}", collectionName, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void putData(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
+        int count = write(embeddingsItems);
+        if (count > 0) {
+            log.info("Upserted {} vectors into local collection {}", count, collectionName);
+            maybeCompact();
+        }
+    }
+
+    /**
+     * 本地存储不记录版本，只按 hash 比较，补写宕机前未写入的数据、删除多余的数据
+     */
+    @Override
+    public Map<String, Long> listDataVersions() {
+        Map<String, Long> versions = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (store == null) {
+                return versions;
+            }
+            for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+                if (store.isLive(ordinal)) {
+                    versions.put(store.hash(ordinal), null);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return versions;
+    }
+
+    @Override
+    public void deleteData(List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        lock.writeLock().lock();
+        try {
+            if (store == null) {
+                return;
+            }
+            for (String id : ids) {
+                int ordinal = store.remove(id);
+                if (ordinal >= 0) {
+                    index.remove(ordinal);
+                    bm25Index.remove(id);
+                    count++;
+                }
+            }
+            store.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Deleted {} vectors from local collection {}", count, collectionName);
+        if (count > 0) {
+            maybeCompact();
+        }
+    }
+
+    @Override
+    public List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK, VectorFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (store == null || topK <= 0) {
+                return Collections.emptyList();
+            }
+            float[] query = store.prepareQuery(queryVector);
+            if (filter != null) {
+                return toQueryItems(filteredSearch(query, topK, store.ordinalsOf(filter.textChunkIds())));
+            }
+            NeighborQueue results = index.search(query, topK, store::isLive);
+            List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = toQueryItems(results);
+            if (recallSampleRate > 0 && queryCount.incrementAndGet() % recallSampleRate == 0) {
+                sampleRecall(query, topK, embeddingsQueryItems);
+            }
+            return embeddingsQueryItems;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EmbeddingModel.EmbeddingsQueryItem> hybridRetrieval(String queryText,
+                                                                    float[] queryVector,
+                                                                    int topK,
+                                                                    String metricType,
+                                                                    float denseWeight,
+                                                                    float sparseWeight,
+                                                                    VectorFilter filter) {
+        float safeDenseWeight = Math.max(denseWeight, 0f);
+        float safeSparseWeight = Math.max(sparseWeight, 0f);
+        if (safeDenseWeight <= 0f && safeSparseWeight <= 0f) {
+            safeDenseWeight = 1f;
+        }
+        if (safeSparseWeight <= 0f) {
+            return knnRetrieval(queryVector, topK, filter);
+        }
+        if (safeDenseWeight <= 0f) {
+            return sparseRetrieval(queryText, topK, filter);
+        }
+        List<EmbeddingModel.EmbeddingsQueryItem> denseItems = knnRetrieval(queryVector, topK, filter);
+        List<EmbeddingModel.EmbeddingsQueryItem> sparseItems = sparseRetrieval(queryText, topK, filter);
+        VectorMetric metric;
+        lock.readLock().lock();
+        try {
+            if (store == null) {
+                return Collections.emptyList();
+            }
+            metric = store.metric();
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 与 Milvus WeightedRanker 一致：各通道分数归一化后加权求和
+        return ScoreFusion.fuse(FusionStrategy.WEIGHTED, denseItems, sparseItems, metric.name(), safeDenseWeight, safeSparseWeight, 0, topK);
+    }
+
+    @Override
+    public List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK, VectorFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (store == null || topK <= 0) {
+                return Collections.emptyList();
+            }
+            Predicate<String> accept = null;
+            if (filter != null) {
+                BitSet allowed = store.ordinalsOf(filter.textChunkIds());
+                if (allowed.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                accept = hash -> {
+                    int ordinal = store.ordinal(hash);
+                    return ordinal >= 0 && allowed.get(ordinal);
+                };
+            }
+            List<Bm25Index.Hit> hits = bm25Index.search(queryText, topK, accept);
+            List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = new ArrayList<>(hits.size());
+            for (Bm25Index.Hit hit : hits) {
+                int ordinal = store.ordinal(hit.id());
+                if (ordinal >= 0) {
+                    embeddingsQueryItems.add(store.toQueryItem(ordinal, hit.score())
+                            .setSparseScore(hit.score())
+                            .setHybridScore(hit.score()));
+                }
+            }
+            return embeddingsQueryItems;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 过滤检索：候选不超过 filterExactThreshold 时只对候选精确计算；
+     * 否则索引遍历时按位图预过滤，过滤过严导致结果不足时退回对候选精确计算
+     */
+    private NeighborQueue filteredSearch(float[] query, int topK, BitSet allowed) {
+        int candidates = allowed.cardinality();
+        if (candidates <= filterExactThreshold) {
+            return new FlatIndex(store).search(query, topK, allowed);
+        }
+        NeighborQueue results = index.search(query, topK, allowed::get);
+        if (results.size() < Math.min(topK, candidates)) {
+            return new FlatIndex(store).search(query, topK, allowed);
+        }
+        return results;
+    }
+
+    private int write(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
+        if (embeddingsItems == null || embeddingsItems.isEmpty()) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            if (store == null) {
+                log.warn("Local collection {} is not initialized, {} vectors skipped", collectionName, embeddingsItems.size());
+                return 0;
+            }
+            try {
+                for (EmbeddingsItemPoWithBLOBs embeddingsItemPo : embeddingsItems) {
+                    int ordinal = store.put(embeddingsItemPo, embeddingsItemPo.getEmbedding());
+                    index.add(ordinal);
+                    bm25Index.put(embeddingsItemPo.getHash(), embeddingsItemPo.getText());
+                }
+            } catch (RuntimeException e) {
+                // 序号可能已分配但未加入索引
+                indexConsistent = false;
+                throw e;
+            }
+            store.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return embeddingsItems.size();
+    }
+
+    /**
+     * 已删除的序号超过阈值时压缩存储、段文件并重建索引，同一时刻只有一个线程执行
+     */
+    private void maybeCompact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compact();
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private void compact() {
+        long start = System.currentTimeMillis();
+        LocalVectorStore current;
+        long modCount;
+        int previousSize;
+        VectorSegment newSegment = null;
+        LocalVectorStore compacted;
+        VectorIndex newIndex;
+        lock.readLock().lock();
+        try {
+            if (store == null || !store.needsCompaction()) {
+                return;
+            }
+            current = store;
+            modCount = current.modCount();
+            previousSize = current.size();
+            if (current.segment() != null) {
+                newSegment = current.segment().next();
+            }
+            compacted = current.compactTo(newSegment);
+            newIndex = indexFactory.create(compacted);
+            for (int ordinal = 0; ordinal < compacted.size(); ordinal++) {
+                newIndex.add(ordinal);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to compact local collection {}", collectionName, e);
+            discard(newSegment);
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (store != current || current.modCount() != modCount) {
+                // 压缩期间有写入或重建，留待下次写入后再压缩
+                discard(newSegment);
+                return;
+            }
+            if (newSegment != null) {
+                newSegment.replace(current.segment(), current.metric(), checkEmbeddingHash);
+                current.attach(null);
+            }
+            store = compacted;
+            index = newIndex;
+            indexConsistent = true;
+        } catch (IOException e) {
+            log.warn("Failed to switch local collection {} to the compacted segment", collectionName, e);
+            discard(newSegment);
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Local collection {} compacted from {} to {} ordinals, cost {} ms", collectionName, previousSize,
+                compacted.size(), System.currentTimeMillis() - start);
+    }
+
+    private void discard(VectorSegment segment) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.discard();
+        } catch (IOException e) {
+            log.warn("Failed to discard compacted segment of local collection {}", collectionName, e);
+        }
+    }
+
+    /**
+     * 抽样统计的平均 recall@K，未抽样时返回 NaN
+     */
+    public double getAverageRecall() {
+        long samples = recallSamples.sum();
+        return samples == 0 ? Double.NaN : recallSum.sum() / samples;
+    }
+
+    /**
+     * 与精确检索结果比较，统计近似索引（HNSW、量化）的 recall@K
+     */
+    private void sampleRecall(float[] query, int topK, List<EmbeddingModel.EmbeddingsQueryItem> approximateItems) {
+        List<EmbeddingModel.EmbeddingsQueryItem> exactItems = toQueryItems(new FlatIndex(store).search(query, topK, store::isLive));
+        if (exactItems.isEmpty()) {
+            return;
+        }
+        Set<String> exactHashes = exactItems.stream().map(EmbeddingModel.EmbeddingsQueryItem::getHash).collect(Collectors.toSet());
+        long hits = approximateItems.stream().filter(item -> exactHashes.contains(item.getHash())).count();
+        double recall = (double) hits / exactItems.size();
+        recallSum.add(recall);
+        recallSamples.increment();
+        log.info("Local collection {} recall@{}: {}, average {} over {} samples", collectionName, topK,
+                String.format("%.3f", recall), String.format("%.3f", getAverageRecall()), recallSamples.sum());
+    }
+
+    /**
+     * 关闭时刷盘并保存索引结构，由 Spring 在容器关闭时调用
+     * <p>
+     * 是否保存只取决于索引与存储中的序号是否一致，能否复用由下次加载时的清单决定。
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (store == null || store.segment() == null) {
+                return;
+            }
+            closeSegment();
+            if (indexConsistent) {
+                index.save(dataDirectory);
+            } else {
+                log.warn("Index of local collection {} is inconsistent with the store, not saved", collectionName);
+            }
+            log.info("Local collection {} saved to {}", collectionName, dataDirectory);
+        } catch (IOException e) {
+            log.warn("Failed to save index of local collection {}", collectionName, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeSegment() {
+        VectorSegment segment = store == null ? null : store.segment();
+        if (segment == null) {
+            return;
+        }
+        store.attach(null);
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Failed to close vector segment of local collection {}", collectionName, e);
+        }
+    }
+
+    private List<EmbeddingModel.EmbeddingsQueryItem> toQueryItems(NeighborQueue results) {
+        int[] ordinals = new int[results.size()];
+        float[] similarities = new float[results.size()];
+        int count = results.drainDescending(ordinals, similarities);
+        VectorMetric metric = store.metric();
+        List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float score = metric.toScore(similarities[i]);
+            embeddingsQueryItems.add(store.toQueryItem(ordinals[i], score)
+                    .setDenseScore(score)
+                    .setHybridScore(score));
+        }
+        return embeddingsQueryItems;
+    }
+}
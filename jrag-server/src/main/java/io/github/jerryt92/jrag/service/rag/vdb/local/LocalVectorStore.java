@@ -0,0 +1,421 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地向量存储
+ * <p>
+ * 所有向量按序号（ordinal）连续存放在同一个 float 数组中，序号只增不减；
+ * 覆盖写入或删除时旧序号被标记为已删除，由索引在检索时跳过。
+ * 已删除的序号超过 {@link #needsCompaction()} 的阈值后，由调用方通过 {@link #compactTo} 复制有效记录得到序号连续的新存储。
+ * 挂载 {@link VectorSegment} 后，写入与删除会同步追加到段文件。
+ * 不在堆中保留向量时（量化索引只用 float32 向量重新打分），向量只写入段文件，按需从映射的 vectors.f32 读取，
+ * 此时 {@link #vectors()} 返回 null，需通过 {@link #readVector} / {@link #similarity} 访问。
+ * 非线程安全，由 {@link LocalVectorDatabaseService} 负责加锁。
+ */
+public class LocalVectorStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    // 与 Bm25Index 一致：已删除的序号达到该比例且不少于 COMPACT_MIN_DELETED 时压缩
+    private static final float COMPACT_RATIO = 0.2f;
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    private final int dimension;
+    private final VectorMetric metric;
+    private final boolean heapVectors;
+    private final Map<String, Integer> hashToOrdinal = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // 文本块 ID 到其有效序号，按文本块过滤时据此直接构建位图
+    private final Map<String, List<Integer>> textChunkOrdinals = new HashMap<>();
+    // 不在堆中保留向量时为 null
+    private float[] vectors;
+    private String[] hashes;
+    private String[] embeddingModels;
+    private String[] embeddingProviders;
+    private String[] texts;
+    private String[] textChunkIds;
+    private int size;
+    // 每次写入或删除加一，压缩期间有修改时放弃压缩结果
+    private long modCount;
+    private VectorSegment segment;
+
+    public LocalVectorStore(int dimension, VectorMetric metric) {
+        this(dimension, metric, true);
+    }
+
+    /**
+     * @param heapVectors 为 false 时向量只保存在段文件中，写入前必须挂载段文件
+     */
+    public LocalVectorStore(int dimension, VectorMetric metric, boolean heapVectors) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Invalid vector dimension: " + dimension);
+        }
+        this.dimension = dimension;
+        this.metric = metric;
+        this.heapVectors = heapVectors;
+        this.vectors = heapVectors ? new float[INITIAL_CAPACITY * dimension] : null;
+        this.hashes = new String[INITIAL_CAPACITY];
+        this.embeddingModels = new String[INITIAL_CAPACITY];
+        this.embeddingProviders = new String[INITIAL_CAPACITY];
+        this.texts = new String[INITIAL_CAPACITY];
+        this.textChunkIds = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * 写入一条向量，hash 已存在时旧序号被标记删除
+     *
+     * @return 新向量的序号
+     */
+    public int put(EmbeddingsItemPoWithBLOBs embeddingsItemPo, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector dimension mismatch, expected " + dimension + " but got " + vector.length + ", hash: " + embeddingsItemPo.getHash());
+        }
+        int ordinal = append(embeddingsItemPo.getHash(), embeddingsItemPo.getTextChunkId(), embeddingsItemPo.getEmbeddingModel(),
+                embeddingsItemPo.getEmbeddingProvider(), embeddingsItemPo.getText(), vector, 0, metric.normalized());
+        Integer previous = hashToOrdinal.put(embeddingsItemPo.getHash(), ordinal);
+        if (previous != null) {
+            markDeleted(previous);
+        }
+        addTextChunkOrdinal(ordinal);
+        modCount++;
+        return ordinal;
+    }
+
+    /**
+     * 删除向量
+     *
+     * @return 被删除的序号，不存在时返回 -1
+     */
+    public int remove(String hash) {
+        Integer ordinal = hashToOrdinal.remove(hash);
+        if (ordinal == null) {
+            return -1;
+        }
+        markDeleted(ordinal);
+        modCount++;
+        return ordinal;
+    }
+
+    /**
+     * 已删除的序号是否多到需要压缩
+     */
+    boolean needsCompaction() {
+        int deletedCount = size - hashToOrdinal.size();
+        return deletedCount >= COMPACT_MIN_DELETED && deletedCount >= size * COMPACT_RATIO;
+    }
+
+    long modCount() {
+        return modCount;
+    }
+
+    /**
+     * 按序号顺序将有效记录复制到新存储，新序号从 0 开始连续分配，本存储不变
+     *
+     * @param target 新存储挂载的段文件，为 null 时不持久化
+     */
+    LocalVectorStore compactTo(VectorSegment target) {
+        LocalVectorStore compacted = new LocalVectorStore(dimension, metric, heapVectors);
+        compacted.attach(target);
+        compacted.ensureCapacity(liveCount());
+        float[] vector = heapVectors ? null : new float[dimension];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (deleted.get(ordinal)) {
+                continue;
+            }
+            if (!heapVectors) {
+                readVector(ordinal, vector);
+            }
+            // 向量已按度量方式预处理，不再重复归一化
+            int newOrdinal = compacted.append(hashes[ordinal], textChunkIds[ordinal], embeddingModels[ordinal],
+                    embeddingProviders[ordinal], texts[ordinal], heapVectors ? vectors : vector, heapVectors ? offset(ordinal) : 0, false);
+            compacted.hashToOrdinal.put(hashes[ordinal], newOrdinal);
+            compacted.addTextChunkOrdinal(newOrdinal);
+        }
+        compacted.flush();
+        return compacted;
+    }
+
+    /**
+     * 挂载段文件，之后的写入与删除同步到磁盘
+     */
+    void attach(VectorSegment segment) {
+        this.segment = segment;
+    }
+
+    VectorSegment segment() {
+        return segment;
+    }
+
+    /**
+     * 将缓冲中的写入刷入段文件
+     */
+    void flush() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 用段文件中读出的数据初始化存储，数组直接被存储持有，向量已按度量方式预处理
+     *
+     * @param vectors 不在堆中保留向量时为 null
+     */
+    void restore(float[] vectors, String[] hashes, String[] embeddingModels, String[] embeddingProviders,
+                 String[] texts, String[] textChunkIds, BitSet deleted, int count) {
+        this.vectors = vectors;
+        this.hashes = hashes;
+        this.embeddingModels = embeddingModels;
+        this.embeddingProviders = embeddingProviders;
+        this.texts = texts;
+        this.textChunkIds = textChunkIds;
+        this.size = count;
+        this.deleted.clear();
+        this.deleted.or(deleted);
+        hashToOrdinal.clear();
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (deleted.get(ordinal)) {
+                continue;
+            }
+            Integer previous = hashToOrdinal.put(hashes[ordinal], ordinal);
+            if (previous != null) {
+                // 覆盖写入后删除标记尚未落盘，以后写入的为准
+                this.deleted.set(previous);
+                texts[previous] = null;
+            }
+        }
+        textChunkOrdinals.clear();
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (!this.deleted.get(ordinal)) {
+                addTextChunkOrdinal(ordinal);
+            }
+        }
+    }
+
+    /**
+     * 属于给定文本块的有效序号
+     */
+    public BitSet ordinalsOf(Collection<String> textChunkIds) {
+        BitSet ordinals = new BitSet(size);
+        for (String textChunkId : textChunkIds) {
+            List<Integer> chunkOrdinals = textChunkOrdinals.get(textChunkId);
+            if (chunkOrdinals != null) {
+                for (int ordinal : chunkOrdinals) {
+                    ordinals.set(ordinal);
+                }
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * 按 hash 查找序号，不存在时返回 -1
+     */
+    public int ordinal(String hash) {
+        Integer ordinal = hashToOrdinal.get(hash);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    String hash(int ordinal) {
+        return hashes[ordinal];
+    }
+
+    String text(int ordinal) {
+        return texts[ordinal];
+    }
+
+    public boolean isLive(int ordinal) {
+        return ordinal < size && !deleted.get(ordinal);
+    }
+
+    /**
+     * 已分配的序号数（包含已删除的）
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 有效向量数
+     */
+    public int liveCount() {
+        return hashToOrdinal.size();
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public VectorMetric metric() {
+        return metric;
+    }
+
+    /**
+     * 连续存放的向量数组，扩容后会被替换，调用方不应长期持有；不在堆中保留向量时返回 null
+     */
+    public float[] vectors() {
+        return vectors;
+    }
+
+    public boolean heapVectors() {
+        return heapVectors;
+    }
+
+    /**
+     * 将向量复制到 target，不在堆中保留向量时从段文件读取
+     */
+    public void readVector(int ordinal, float[] target) {
+        if (heapVectors) {
+            System.arraycopy(vectors, offset(ordinal), target, 0, dimension);
+            return;
+        }
+        if (segment == null) {
+            throw new IllegalStateException("Vector segment is not attached");
+        }
+        segment.readVector(ordinal, target);
+    }
+
+    /**
+     * 查询向量与序号对应向量的相似度
+     *
+     * @param scratch 不在堆中保留向量时用于读取向量的缓冲，长度为维度
+     */
+    public float similarity(float[] query, int ordinal, float[] scratch) {
+        if (heapVectors) {
+            return metric.similarity(query, 0, vectors, offset(ordinal), dimension);
+        }
+        readVector(ordinal, scratch);
+        return metric.similarity(query, 0, scratch, 0, dimension);
+    }
+
+    public int offset(int ordinal) {
+        return ordinal * dimension;
+    }
+
+    /**
+     * 按当前度量方式预处理查询向量（COSINE 时归一化），不修改入参
+     */
+    public float[] prepareQuery(float[] queryVector) {
+        if (queryVector.length != dimension) {
+            throw new IllegalArgumentException("Query vector dimension mismatch, expected " + dimension + " but got " + queryVector.length);
+        }
+        float[] query = Arrays.copyOf(queryVector, dimension);
+        if (metric.normalized()) {
+            VectorUtil.normalize(query, 0, dimension);
+        }
+        return query;
+    }
+
+    public EmbeddingModel.EmbeddingsQueryItem toQueryItem(int ordinal, float score) {
+        return new EmbeddingModel.EmbeddingsQueryItem()
+                .setHash(hashes[ordinal])
+                .setScore(score)
+                .setEmbeddingModel(embeddingModels[ordinal])
+                .setEmbeddingProvider(embeddingProviders[ordinal])
+                .setText(texts[ordinal])
+                .setTextChunkId(textChunkIds[ordinal])
+                .setEmbedding(vector(ordinal));
+    }
+
+    private float[] vector(int ordinal) {
+        float[] vector = new float[dimension];
+        readVector(ordinal, vector);
+        return vector;
+    }
+
+    private int append(String hash, String textChunkId, String embeddingModel, String embeddingProvider, String text,
+                       float[] vector, int vectorOffset, boolean normalize) {
+        if (!heapVectors && segment == null) {
+            throw new IllegalStateException("Vector segment is not attached");
+        }
+        ensureCapacity(size + 1);
+        int ordinal = size;
+        float[] target;
+        int offset;
+        if (heapVectors) {
+            target = vectors;
+            offset = offset(ordinal);
+            System.arraycopy(vector, vectorOffset, vectors, offset, dimension);
+        } else {
+            target = normalize ? Arrays.copyOfRange(vector, vectorOffset, vectorOffset + dimension) : vector;
+            offset = normalize ? 0 : vectorOffset;
+        }
+        if (normalize) {
+            VectorUtil.normalize(target, offset, dimension);
+        }
+        hashes[ordinal] = hash;
+        embeddingModels[ordinal] = embeddingModel;
+        embeddingProviders[ordinal] = embeddingProvider;
+        texts[ordinal] = text;
+        textChunkIds[ordinal] = textChunkId;
+        size++;
+        if (segment != null) {
+            try {
+                segment.append(ordinal, hash, textChunkId, embeddingModel, embeddingProvider, text, target, offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return ordinal;
+    }
+
+    private void markDeleted(int ordinal) {
+        deleted.set(ordinal);
+        removeTextChunkOrdinal(ordinal);
+        // 释放文本，向量槽位保留以维持序号连续
+        texts[ordinal] = null;
+        if (segment != null) {
+            try {
+                segment.markDeleted(ordinal);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void addTextChunkOrdinal(int ordinal) {
+        if (textChunkIds[ordinal] != null) {
+            textChunkOrdinals.computeIfAbsent(textChunkIds[ordinal], k -> new ArrayList<>(2)).add(ordinal);
+        }
+    }
+
+    private void removeTextChunkOrdinal(int ordinal) {
+        List<Integer> chunkOrdinals = textChunkIds[ordinal] == null ? null : textChunkOrdinals.get(textChunkIds[ordinal]);
+        if (chunkOrdinals == null) {
+            return;
+        }
+        chunkOrdinals.remove(Integer.valueOf(ordinal));
+        if (chunkOrdinals.isEmpty()) {
+            textChunkOrdinals.remove(textChunkIds[ordinal]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= hashes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, hashes.length + (hashes.length >> 1));
+        if (heapVectors) {
+            vectors = Arrays.copyOf(vectors, Math.multiplyExact(newCapacity, dimension));
+        }
+        hashes = Arrays.copyOf(hashes, newCapacity);
+        embeddingModels = Arrays.copyOf(embeddingModels, newCapacity);
+        embeddingProviders = Arrays.copyOf(embeddingProviders, newCapacity);
+        texts = Arrays.copyOf(texts, newCapacity);
+        textChunkIds = Arrays.copyOf(textChunkIds, newCapacity);
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.util.Arrays;
+
+/**
+ * 基于 long 数组的二叉堆，元素为（节点序号，相似度）
+ * <p>
+ * 高 32 位存放可排序的相似度，低 32 位存放节点序号，避免装箱和对象分配。
+ * minHeap 为 true 时堆顶是相似度最低的元素（用于保留 top-K），否则堆顶是相似度最高的元素（用于候选扩展）。
+ */
+public final class NeighborQueue {
+    private final boolean minHeap;
+    private long[] heap;
+    private int size;
+
+    public NeighborQueue(int initialCapacity, boolean minHeap) {
+        this.minHeap = minHeap;
+        this.heap = new long[Math.max(initialCapacity, 1) + 1];
+    }
+
+    public void add(int node, float similarity) {
+        if (size + 1 == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length + (heap.length >> 1) + 1);
+        }
+        heap[++size] = encode(node, similarity);
+        upHeap(size);
+    }
+
+    /**
+     * 有界插入：未满时直接插入，已满时仅当相似度高于堆顶时替换堆顶（仅用于 minHeap）
+     *
+     * @return 是否插入成功
+     */
+    public boolean insertWithOverflow(int node, float similarity, int maxSize) {
+        if (size < maxSize) {
+            add(node, similarity);
+            return true;
+        }
+        if (size == 0 || similarity <= topSimilarity()) {
+            return false;
+        }
+        heap[1] = encode(node, similarity);
+        downHeap(1);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int topNode() {
+        return decodeNode(heap[1]);
+    }
+
+    public float topSimilarity() {
+        return decodeSimilarity(heap[1]);
+    }
+
+    public int pop() {
+        int node = topNode();
+        heap[1] = heap[size];
+        size--;
+        if (size > 0) {
+            downHeap(1);
+        }
+        return node;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * 依次弹出全部元素，按相似度从高到低写入 nodes / similarities（仅用于 minHeap）
+     *
+     * @return 元素个数
+     */
+    public int drainDescending(int[] nodes, float[] similarities) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            similarities[i] = topSimilarity();
+            nodes[i] = pop();
+        }
+        return count;
+    }
+
+    private long encode(int node, float similarity) {
+        int sortable = floatToSortableInt(minHeap ? similarity : -similarity);
+        return ((long) sortable << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private int decodeNode(long value) {
+        return (int) value;
+    }
+
+    private float decodeSimilarity(long value) {
+        float f = sortableIntToFloat((int) (value >> 32));
+        return minHeap ? f : -f;
+    }
+
+    private void upHeap(int index) {
+        long value = heap[index];
+        int parent = index >>> 1;
+        while (parent > 0 && value < heap[parent]) {
+            heap[index] = heap[parent];
+            index = parent;
+            parent = index >>> 1;
+        }
+        heap[index] = value;
+    }
+
+    private void downHeap(int index) {
+        long value = heap[index];
+        int child = index << 1;
+        while (child <= size) {
+            if (child < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= value) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+            child = index << 1;
+        }
+        heap[index] = value;
+    }
+
+    private static int floatToSortableInt(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    private static float sortableIntToFloat(int value) {
+        return Float.intBitsToFloat(value ^ ((value >> 31) & 0x7FFFFFFF));
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.util.function.IntPredicate;
+
+/**
+ * 量化暴力检索索引
+ * <p>
+ * 先顺序扫描量化向量取 topK * rescoreFactor 个候选，再用存储中的 float32 向量重新打分得到 top-K。
+ * 量化参数从已写入的向量中训练，向量数每翻一倍重新训练并重新编码一次，均摊到每次写入为常数开销。
+ * float32 向量通过 {@link LocalVectorStore#readVector} 读取，存储不在堆中保留向量时来自映射的段文件，
+ * 堆中只有量化编码。
+ */
+public abstract class QuantizedIndex implements VectorIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    protected final LocalVectorStore store;
+    protected final VectorMetric metric;
+    protected final int dimension;
+    private final int rescoreFactor;
+    // 已编码的序号数
+    private int encodedCount;
+    // 上次训练时的序号数
+    private int trainedCount;
+
+    protected QuantizedIndex(LocalVectorStore store, int rescoreFactor) {
+        if (rescoreFactor < 1) {
+            throw new IllegalArgumentException("Rescore factor must be >= 1, got " + rescoreFactor);
+        }
+        this.store = store;
+        this.metric = store.metric();
+        this.dimension = store.dimension();
+        this.rescoreFactor = rescoreFactor;
+    }
+
+    @Override
+    public void add(int ordinal) {
+        if (ordinal >= capacity()) {
+            grow(Math.max(ordinal + 1, Math.max(INITIAL_CAPACITY, capacity() + (capacity() >> 1))));
+        }
+        int count = Math.max(encodedCount, ordinal + 1);
+        if (count >= trainedCount * 2) {
+            train(count);
+            for (int i = 0; i < count; i++) {
+                encode(i);
+            }
+            trainedCount = count;
+        } else {
+            encode(ordinal);
+        }
+        encodedCount = count;
+    }
+
+    @Override
+    public void remove(int ordinal) {
+        // 删除标记由存储维护
+    }
+
+    @Override
+    public NeighborQueue search(float[] query, int topK, IntPredicate accept) {
+        NeighborQueue results = new NeighborQueue(Math.max(topK, 1), true);
+        if (topK <= 0 || encodedCount == 0) {
+            return results;
+        }
+        int candidateCount = Math.multiplyExact(topK, rescoreFactor);
+        NeighborQueue candidates = new NeighborQueue(Math.min(candidateCount, encodedCount), true);
+        QueryScorer scorer = scorer(query);
+        for (int ordinal = 0; ordinal < encodedCount; ordinal++) {
+            if (accept.test(ordinal)) {
+                candidates.insertWithOverflow(ordinal, scorer.score(ordinal), candidateCount);
+            }
+        }
+        float[] scratch = new float[dimension];
+        while (!candidates.isEmpty()) {
+            int ordinal = candidates.pop();
+            results.insertWithOverflow(ordinal, store.similarity(query, ordinal, scratch), topK);
+        }
+        return results;
+    }
+
+    /**
+     * 扩容（首次调用时分配）量化向量数组
+     */
+    protected abstract void grow(int capacity);
+
+    /**
+     * 可容纳的序号数，未分配时为 0
+     */
+    protected abstract int capacity();
+
+    /**
+     * 用序号 [0, count) 中未删除的向量训练量化参数
+     */
+    protected abstract void train(int count);
+
+    /**
+     * 按当前量化参数编码一个序号
+     */
+    protected abstract void encode(int ordinal);
+
+    /**
+     * 为查询向量构造近似打分器，分数越大越相似
+     */
+    protected abstract QueryScorer scorer(float[] query);
+
+    protected interface QueryScorer {
+        float score(int ordinal);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 JDK Vector API（jdk.incubator.vector）的向量计算内核
+ * <p>
+ * 仅在运行时加载了 jdk.incubator.vector 模块时由 {@link VectorUtil} 调用，否则不会触发类加载。
+ */
+final class SimdVectorUtil {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // int8 内积按 8 字节一组加载，经 short 扩展为 8 路 int 累加，需要 256 位寄存器
+    static final boolean INT8_SIMD_ENABLED = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256;
+
+    private SimdVectorUtil() {
+    }
+
+    static float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        int step = SPECIES.length();
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        FloatVector acc2 = FloatVector.zero(SPECIES);
+        int i = 0;
+        // 两路累加器，减少 FMA 之间的数据依赖
+        int unrolledBound = dimension - 2 * step + 1;
+        for (; i < unrolledBound; i += 2 * step) {
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc1);
+            acc2 = FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + step), acc2);
+        }
+        int bound = SPECIES.loopBound(dimension);
+        for (; i < bound; i += step) {
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc1);
+        }
+        float sum = acc1.add(acc2).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        int step = SPECIES.length();
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        FloatVector acc2 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int unrolledBound = dimension - 2 * step + 1;
+        for (; i < unrolledBound; i += 2 * step) {
+            FloatVector diff1 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc1 = diff1.fma(diff1, acc1);
+            FloatVector diff2 = FloatVector.fromArray(SPECIES, a, aOffset + i + step)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i + step));
+            acc2 = diff2.fma(diff2, acc2);
+        }
+        int bound = SPECIES.loopBound(dimension);
+        for (; i < bound; i += step) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc1 = diff.fma(diff, acc1);
+        }
+        float sum = acc1.add(acc2).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    static int dotProduct(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        IntVector acc = IntVector.zero(IntVector.SPECIES_256);
+        int i = 0;
+        int bound = ByteVector.SPECIES_64.loopBound(length);
+        for (; i < bound; i += ByteVector.SPECIES_64.length()) {
+            Vector<Short> va = ByteVector.fromArray(ByteVector.SPECIES_64, a, aOffset + i)
+                    .convertShape(VectorOperators.B2S, ShortVector.SPECIES_128, 0);
+            Vector<Short> vb = ByteVector.fromArray(ByteVector.SPECIES_64, b, bOffset + i)
+                    .convertShape(VectorOperators.B2S, ShortVector.SPECIES_128, 0);
+            // 两个 int8 的乘积不会超出 short 范围
+            acc = acc.add(va.mul(vb).convertShape(VectorOperators.S2I, IntVector.SPECIES_256, 0));
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
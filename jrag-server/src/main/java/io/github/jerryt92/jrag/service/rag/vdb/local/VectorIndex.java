@@ -0,0 +1,49 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.IntPredicate;
+
+/**
+ * 构建在 {@link LocalVectorStore} 之上的向量索引
+ */
+public interface VectorIndex {
+    /**
+     * 将存储中已写入的序号加入索引
+     */
+    void add(int ordinal);
+
+    /**
+     * 序号被删除（存储中已标记），索引可据此释放资源
+     */
+    void remove(int ordinal);
+
+    /**
+     * 检索与查询向量最相似的 K 个序号
+     *
+     * @param query  已按度量方式预处理的查询向量
+     * @param topK   返回数量
+     * @param accept 序号过滤条件，只有满足条件的序号才会出现在结果中
+     * @return minHeap 形式的结果，堆顶为相似度最低的元素
+     */
+    NeighborQueue search(float[] query, int topK, IntPredicate accept);
+
+    /**
+     * 将索引结构保存到目录，无需持久化的索引可不实现
+     */
+    default void save(Path directory) throws IOException {
+    }
+
+    /**
+     * 从目录加载与当前存储一致的索引结构
+     *
+     * @return 加载失败或文件与存储不一致时返回 false，调用方需逐条 {@link #add(int)} 重建
+     */
+    default boolean load(Path directory) throws IOException {
+        return false;
+    }
+
+    interface Factory {
+        VectorIndex create(LocalVectorStore store);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+/**
+ * 本地向量索引支持的度量方式，与 Milvus 的 IP / L2 / COSINE 含义保持一致
+ * <p>
+ * 索引内部统一使用“越大越相似”的相似度，对外输出时再转换为 Milvus 的 score 语义：
+ * IP 为内积，COSINE 为余弦相似度，L2 为欧式距离的平方（越小越相似）。
+ */
+public enum VectorMetric {
+    IP,
+    L2,
+    COSINE;
+
+    public static VectorMetric of(String metricType) {
+        if (metricType == null || metricType.isBlank()) {
+            throw new IllegalArgumentException("Metric type is blank");
+        }
+        try {
+            return VectorMetric.valueOf(metricType.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported metric type for local vector index: " + metricType, e);
+        }
+    }
+
+    /**
+     * 计算两个向量的相似度（越大越相似）
+     */
+    public float similarity(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        if (this == L2) {
+            return -VectorUtil.squareDistance(a, aOffset, b, bOffset, dimension);
+        }
+        // COSINE 的向量在写入与查询前均已归一化，直接使用内积
+        return VectorUtil.dotProduct(a, aOffset, b, bOffset, dimension);
+    }
+
+    /**
+     * 将内部相似度转换为 Milvus 语义的 score
+     */
+    public float toScore(float similarity) {
+        return this == L2 ? -similarity : similarity;
+    }
+
+    /**
+     * 是否需要在写入和查询前对向量做 L2 归一化
+     */
+    public boolean normalized() {
+        return this == COSINE;
+    }
+}
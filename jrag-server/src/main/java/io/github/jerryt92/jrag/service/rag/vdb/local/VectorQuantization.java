@@ -0,0 +1,28 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+/**
+ * 本地向量索引的量化方式
+ * <ul>
+ *     <li>NONE：不量化，使用 float32 全精度扫描</li>
+ *     <li>INT8：每维独立 scale/offset 的 int8 标量量化，索引内存约为 float32 的 1/4</li>
+ *     <li>BINARY：按每维均值取符号的 1 bit 量化，汉明距离预筛，索引内存约为 float32 的 1/32</li>
+ * </ul>
+ * 量化检索先在量化向量上取候选，再用 float32 向量重新打分。
+ * 配置持久化目录时 float32 向量不在堆中保留，重新打分从映射的段文件读取；未配置时 float32 向量仍在堆中，量化编码额外占用内存。
+ */
+public enum VectorQuantization {
+    NONE,
+    INT8,
+    BINARY;
+
+    public static VectorQuantization of(String quantization) {
+        if (quantization == null || quantization.isBlank()) {
+            return NONE;
+        }
+        try {
+            return VectorQuantization.valueOf(quantization.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported vector quantization: " + quantization, e);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 本地向量存储的磁盘段文件
+ * <p>
+ * 目录结构：
+ * <ul>
+ *     <li>manifest.properties：格式版本、checkEmbeddingHash、维度、度量方式、是否完成全量写入、当前段的代数</li>
+ *     <li>vectors.f32：按序号连续存放的 float32（小端）向量，COSINE 时为归一化后的向量</li>
+ *     <li>ids.dat：定长记录，hash(40) + 删除标记(1) + 填充(3) + 元数据偏移(8) + 元数据长度(4)</li>
+ *     <li>meta.dat：变长元数据，依次为 textChunkId、embeddingModel、embeddingProvider、text，每项为 int 长度 + UTF-8 字节</li>
+ * </ul>
+ * 三个数据文件均只追加（删除只改写删除标记），启动时通过 {@link FileChannel#map} 映射读取，末尾写了一半的记录会被截断。
+ * 存储不在堆中保留向量时，vectors.f32 保持映射，{@link #readVector} 从映射中读取已刷盘的向量、从写缓冲中读取未刷盘的向量。
+ * 压缩时有效记录写入下一代段文件（如 vectors-1.f32），写完后以清单切换代数，再删除上一代的段文件。
+ */
+final class VectorSegment implements Closeable {
+    static final String MANIFEST_FILE = "manifest.properties";
+    private static final String VECTORS_FILE = "vectors.f32";
+    private static final String IDS_FILE = "ids.dat";
+    private static final String META_FILE = "meta.dat";
+    private static final String FORMAT_VERSION = "1";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(vectors|ids|meta)(?:-(\\d+))?\\.(f32|dat)");
+    private static final int HASH_BYTES = 40;
+    private static final int DELETED_POSITION = 40;
+    private static final int META_OFFSET_POSITION = 44;
+    private static final int META_LENGTH_POSITION = 52;
+    private static final int RECORD_BYTES = 56;
+    private static final int BUFFER_BYTES = 1 << 20;
+    // 单次 map 的上限，按整条向量对齐
+    private static final long MAX_MAP_BYTES = Integer.MAX_VALUE;
+
+    private final Path directory;
+    private final int dimension;
+    private final int generation;
+    private final FileChannel vectorChannel;
+    private final FileChannel idChannel;
+    private final FileChannel metaChannel;
+    private final ByteBuffer vectorBuffer;
+    private final ByteBuffer idBuffer;
+    private final ByteBuffer metaBuffer;
+    // 已刷入文件的记录数，之后的记录仍在 idBuffer 中
+    private int flushedRecords;
+    // 已刷入文件的向量数，之后的向量仍在 vectorBuffer 中
+    private int flushedVectors;
+    // vectors.f32 的只读映射，每个窗口容纳 vectorsPerWindow 条向量，最后一个窗口随文件增长重新映射
+    private final int vectorsPerWindow;
+    private volatile FloatBuffer[] vectorWindows = new FloatBuffer[0];
+    private volatile int mappedVectors;
+    private int records;
+    private long metaPosition;
+    // 清单中是否已标记完成全量写入，压缩切换清单时保持不变
+    private boolean complete;
+
+    private VectorSegment(Path directory, int dimension, int generation) throws IOException {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.generation = generation;
+        this.vectorChannel = open(directory.resolve(fileName(VECTORS_FILE, generation)));
+        this.idChannel = open(directory.resolve(fileName(IDS_FILE, generation)));
+        this.metaChannel = open(directory.resolve(fileName(META_FILE, generation)));
+        this.vectorBuffer = ByteBuffer.allocate(Math.max(BUFFER_BYTES, dimension * Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        this.idBuffer = ByteBuffer.allocate(BUFFER_BYTES - BUFFER_BYTES % RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.metaBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.vectorsPerWindow = (int) (MAX_MAP_BYTES / ((long) dimension * Float.BYTES));
+    }
+
+    /**
+     * 清空目录并创建新的段，清单标记为未完成
+     */
+    static VectorSegment create(Path directory, int dimension, VectorMetric metric, String checkEmbeddingHash) throws IOException {
+        Files.createDirectories(directory);
+        // 连同索引文件一起清理，避免旧索引被误加载
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.delete(file);
+            }
+        }
+        VectorSegment segment = new VectorSegment(directory, dimension, 0);
+        writeManifest(directory, dimension, metric, checkEmbeddingHash, false, 0);
+        return segment;
+    }
+
+    /**
+     * 清单与当前嵌入模型、维度、度量方式一致且已完成全量写入时打开段，否则返回 null
+     */
+    static VectorSegment openIfMatches(Path directory, int dimension, VectorMetric metric, String checkEmbeddingHash) throws IOException {
+        Path manifestPath = directory.resolve(MANIFEST_FILE);
+        if (checkEmbeddingHash == null || !Files.isRegularFile(manifestPath)) {
+            return null;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            manifest.load(in);
+        }
+        boolean matches = FORMAT_VERSION.equals(manifest.getProperty("formatVersion"))
+                && String.valueOf(dimension).equals(manifest.getProperty("dimension"))
+                && metric.name().equals(manifest.getProperty("metricType"))
+                && checkEmbeddingHash.equals(manifest.getProperty("checkEmbeddingHash"))
+                && Boolean.parseBoolean(manifest.getProperty("complete"));
+        if (!matches) {
+            return null;
+        }
+        int generation = Integer.parseInt(manifest.getProperty("generation", "0"));
+        // 清理压缩中途退出时留下的其他代段文件
+        deleteSegmentFiles(directory, other -> other != generation);
+        VectorSegment segment = new VectorSegment(directory, dimension, generation);
+        segment.complete = true;
+        return segment;
+    }
+
+    /**
+     * 在同一目录下创建下一代空段，用于压缩时写入有效记录，清单仍指向当前段
+     */
+    VectorSegment next() throws IOException {
+        int nextGeneration = generation + 1;
+        deleteSegmentFiles(directory, other -> other == nextGeneration);
+        return new VectorSegment(directory, dimension, nextGeneration);
+    }
+
+    /**
+     * 压缩完成后由 {@link #next()} 创建的段调用：先删除按旧序号保存的索引文件，再以清单切换到本段，最后关闭并删除上一代段文件
+     * <p>
+     * 任一步骤前退出，重启时仍加载上一代段并重建索引；切换清单后退出，上一代段文件在下次打开时清理。
+     *
+     * @throws IOException 清单切换失败，此时上一代段仍然有效
+     */
+    void replace(VectorSegment previous, VectorMetric metric, String checkEmbeddingHash) throws IOException {
+        flush();
+        vectorChannel.force(false);
+        idChannel.force(false);
+        metaChannel.force(false);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String name = file.getFileName().toString();
+                if (!name.equals(MANIFEST_FILE) && !SEGMENT_FILE.matcher(name).matches()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        writeManifest(directory, dimension, metric, checkEmbeddingHash, previous.complete, generation);
+        complete = previous.complete;
+        int previousGeneration = previous.generation;
+        try {
+            previous.close();
+            deleteSegmentFiles(directory, other -> other == previousGeneration);
+        } catch (IOException ignored) {
+            // 清单已切换，残留的上一代段文件在下次打开时清理
+        }
+    }
+
+    /**
+     * 关闭并删除本段文件，用于丢弃未切换的压缩结果
+     */
+    void discard() throws IOException {
+        close();
+        deleteSegmentFiles(directory, other -> other == generation);
+    }
+
+    /**
+     * 全量写入完成后调用，之后重启可直接加载
+     */
+    void markComplete(VectorMetric metric, String checkEmbeddingHash) throws IOException {
+        flush();
+        vectorChannel.force(false);
+        idChannel.force(false);
+        metaChannel.force(false);
+        writeManifest(directory, dimension, metric, checkEmbeddingHash, true, generation);
+        complete = true;
+    }
+
+    /**
+     * 映射段文件并读入存储，存储不在堆中保留向量时不读取向量
+     */
+    void loadInto(LocalVectorStore store) throws IOException {
+        int count = (int) Math.min(idChannel.size() / RECORD_BYTES, vectorChannel.size() / ((long) dimension * Float.BYTES));
+        long metaSize = metaChannel.size();
+        if (metaSize > MAX_MAP_BYTES) {
+            throw new IOException("Vector segment meta file too large: " + metaSize);
+        }
+        String[] hashes = new String[count];
+        String[] textChunkIds = new String[count];
+        String[] embeddingModels = new String[count];
+        String[] embeddingProviders = new String[count];
+        String[] texts = new String[count];
+        BitSet deleted = new BitSet(count);
+        long metaEnd = 0;
+        if (count > 0) {
+            MappedByteBuffer ids = idChannel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * RECORD_BYTES);
+            ids.order(ByteOrder.LITTLE_ENDIAN);
+            MappedByteBuffer meta = metaChannel.map(FileChannel.MapMode.READ_ONLY, 0, metaSize);
+            meta.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] hashBytes = new byte[HASH_BYTES];
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                int base = ordinal * RECORD_BYTES;
+                long metaOffset = ids.getLong(base + META_OFFSET_POSITION);
+                int metaLength = ids.getInt(base + META_LENGTH_POSITION);
+                if (metaOffset < 0 || metaLength < 0 || metaOffset + metaLength > meta.limit()) {
+                    // 元数据未完整写入，丢弃该记录及之后的记录
+                    count = ordinal;
+                    break;
+                }
+                ids.get(base, hashBytes);
+                hashes[ordinal] = new String(hashBytes, StandardCharsets.US_ASCII).trim();
+                if (ids.get(base + DELETED_POSITION) != 0) {
+                    deleted.set(ordinal);
+                }
+                int position = (int) metaOffset;
+                textChunkIds[ordinal] = readString(meta, position);
+                position += stringBytes(meta, position);
+                embeddingModels[ordinal] = readString(meta, position);
+                position += stringBytes(meta, position);
+                embeddingProviders[ordinal] = readString(meta, position);
+                position += stringBytes(meta, position);
+                texts[ordinal] = deleted.get(ordinal) ? null : readString(meta, position);
+                metaEnd = metaOffset + metaLength;
+            }
+        }
+        long vectorBytes = (long) count * dimension * Float.BYTES;
+        float[] vectors = null;
+        if (store.heapVectors()) {
+            vectors = new float[Math.multiplyExact(Math.max(count, 1), dimension)];
+            long windowBytes = MAX_MAP_BYTES - MAX_MAP_BYTES % ((long) dimension * Float.BYTES);
+            int floatOffset = 0;
+            for (long position = 0; position < vectorBytes; position += windowBytes) {
+                long size = Math.min(windowBytes, vectorBytes - position);
+                MappedByteBuffer window = vectorChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                int floats = (int) (size / Float.BYTES);
+                window.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vectors, floatOffset, floats);
+                floatOffset += floats;
+            }
+        }
+        // 截断未完整写入的尾部，之后从截断处继续追加
+        idChannel.truncate((long) count * RECORD_BYTES);
+        vectorChannel.truncate(vectorBytes);
+        metaChannel.truncate(metaEnd);
+        records = count;
+        flushedRecords = count;
+        flushedVectors = count;
+        metaPosition = metaEnd;
+        store.restore(vectors, hashes, embeddingModels, embeddingProviders, texts, textChunkIds, deleted, count);
+    }
+
+    void append(int ordinal, String hash, String textChunkId, String embeddingModel, String embeddingProvider, String text,
+                float[] vectors, int offset) throws IOException {
+        if (ordinal != records) {
+            throw new IllegalStateException("Segment out of sync, expected ordinal " + records + " but got " + ordinal);
+        }
+        byte[] hashBytes = hash.getBytes(StandardCharsets.US_ASCII);
+        if (hashBytes.length > HASH_BYTES) {
+            throw new IllegalArgumentException("Hash too long for vector segment: " + hash);
+        }
+        long metaOffset = metaPosition;
+        int metaLength = writeString(textChunkId) + writeString(embeddingModel) + writeString(embeddingProvider) + writeString(text);
+        metaPosition += metaLength;
+
+        ensureRemaining(idChannel, idBuffer, RECORD_BYTES);
+        int base = idBuffer.position();
+        idBuffer.put(hashBytes);
+        for (int i = hashBytes.length; i < HASH_BYTES; i++) {
+            idBuffer.put((byte) ' ');
+        }
+        idBuffer.put((byte) 0);
+        idBuffer.put(new byte[3]);
+        idBuffer.putLong(metaOffset);
+        idBuffer.putInt(metaLength);
+        idBuffer.position(base + RECORD_BYTES);
+
+        ensureRemaining(vectorChannel, vectorBuffer, dimension * Float.BYTES);
+        for (int i = 0; i < dimension; i++) {
+            vectorBuffer.putFloat(vectors[offset + i]);
+        }
+        records++;
+    }
+
+    /**
+     * 读取序号对应的向量（已按度量方式预处理），读取已刷盘的向量可与其他读取并发
+     */
+    void readVector(int ordinal, float[] target) {
+        if (ordinal >= flushedVectors) {
+            // 尚在写缓冲中，只有持有写锁的写入线程会读到
+            int base = (ordinal - flushedVectors) * dimension * Float.BYTES;
+            for (int i = 0; i < dimension; i++) {
+                target[i] = vectorBuffer.getFloat(base + i * Float.BYTES);
+            }
+            return;
+        }
+        if (ordinal >= mappedVectors) {
+            mapVectors();
+        }
+        FloatBuffer[] windows = vectorWindows;
+        windows[ordinal / vectorsPerWindow].get(ordinal % vectorsPerWindow * dimension, target, 0, dimension);
+    }
+
+    /**
+     * 将映射扩展到全部已刷盘的向量，已映射满的窗口不再重新映射
+     */
+    private synchronized void mapVectors() {
+        int target = flushedVectors;
+        if (target <= mappedVectors) {
+            return;
+        }
+        long vectorBytes = (long) dimension * Float.BYTES;
+        int windowCount = (target + vectorsPerWindow - 1) / vectorsPerWindow;
+        FloatBuffer[] windows = Arrays.copyOf(vectorWindows, windowCount);
+        try {
+            for (int w = mappedVectors / vectorsPerWindow; w < windowCount; w++) {
+                int first = w * vectorsPerWindow;
+                int count = Math.min(vectorsPerWindow, target - first);
+                windows[w] = vectorChannel.map(FileChannel.MapMode.READ_ONLY, first * vectorBytes, count * vectorBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        vectorWindows = windows;
+        mappedVectors = target;
+    }
+
+    void markDeleted(int ordinal) throws IOException {
+        if (ordinal >= flushedRecords) {
+            idBuffer.put((ordinal - flushedRecords) * RECORD_BYTES + DELETED_POSITION, (byte) 1);
+            return;
+        }
+        idChannel.write(ByteBuffer.wrap(new byte[]{1}), (long) ordinal * RECORD_BYTES + DELETED_POSITION);
+    }
+
+    void flush() throws IOException {
+        drain(metaChannel, metaBuffer);
+        drain(vectorChannel, vectorBuffer);
+        drain(idChannel, idBuffer);
+        flushedRecords = records;
+        flushedVectors = records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            vectorChannel.close();
+            idChannel.close();
+            metaChannel.close();
+        }
+    }
+
+    private int writeString(String value) throws IOException {
+        if (value == null) {
+            ensureRemaining(metaChannel, metaBuffer, Integer.BYTES);
+            metaBuffer.putInt(-1);
+            return Integer.BYTES;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(metaChannel, metaBuffer, Integer.BYTES);
+        metaBuffer.putInt(bytes.length);
+        int written = 0;
+        while (written < bytes.length) {
+            if (!metaBuffer.hasRemaining()) {
+                drain(metaChannel, metaBuffer);
+            }
+            int length = Math.min(metaBuffer.remaining(), bytes.length - written);
+            metaBuffer.put(bytes, written, length);
+            written += length;
+        }
+        return Integer.BYTES + bytes.length;
+    }
+
+    private static String readString(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringBytes(ByteBuffer buffer, int position) {
+        return Integer.BYTES + Math.max(buffer.getInt(position), 0);
+    }
+
+    private void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+            if (channel == idChannel) {
+                flushedRecords = records;
+            } else if (channel == vectorChannel) {
+                flushedVectors = records;
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static String fileName(String name, int generation) {
+        if (generation == 0) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        return name.substring(0, dot) + "-" + generation + name.substring(dot);
+    }
+
+    /**
+     * 删除代数满足条件的段文件
+     */
+    private static void deleteSegmentFiles(Path directory, IntPredicate generations) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches() && generations.test(matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2)))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void writeManifest(Path directory, int dimension, VectorMetric metric, String checkEmbeddingHash, boolean complete,
+                                      int generation) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("formatVersion", FORMAT_VERSION);
+        manifest.setProperty("dimension", String.valueOf(dimension));
+        manifest.setProperty("metricType", metric.name());
+        manifest.setProperty("checkEmbeddingHash", checkEmbeddingHash == null ? "" : checkEmbeddingHash);
+        manifest.setProperty("complete", String.valueOf(complete));
+        manifest.setProperty("generation", String.valueOf(generation));
+        Path tmp = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            manifest.store(out, "jrag local vector segment");
+        }
+        Files.move(tmp, directory.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+/**
+ * 向量计算工具
+ * <p>
+ * 启动参数包含 {@code --add-modules jdk.incubator.vector} 时使用 SIMD 内核，否则退化为标量循环。
+ */
+public final class VectorUtil {
+    private static final boolean SIMD_ENABLED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorUtil() {
+    }
+
+    public static boolean isSimdEnabled() {
+        return SIMD_ENABLED;
+    }
+
+    public static float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        if (SIMD_ENABLED) {
+            return SimdVectorUtil.dotProduct(a, aOffset, b, bOffset, dimension);
+        }
+        return scalarDotProduct(a, aOffset, b, bOffset, dimension);
+    }
+
+    public static float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        if (SIMD_ENABLED) {
+            return SimdVectorUtil.squareDistance(a, aOffset, b, bOffset, dimension);
+        }
+        return scalarSquareDistance(a, aOffset, b, bOffset, dimension);
+    }
+
+    /**
+     * int8 向量内积
+     */
+    public static int dotProduct(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (SIMD_ENABLED && SimdVectorUtil.INT8_SIMD_ENABLED) {
+            return SimdVectorUtil.dotProduct(a, aOffset, b, bOffset, length);
+        }
+        return scalarDotProduct(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 二值向量的汉明距离
+     */
+    public static int hammingDistance(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        int distance = 0;
+        for (int i = 0; i < words; i++) {
+            distance += Long.bitCount(a[aOffset + i] ^ b[bOffset + i]);
+        }
+        return distance;
+    }
+
+    static int scalarDotProduct(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static float scalarDotProduct(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int upperBound = dimension & ~3;
+        for (; i < upperBound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    static float scalarSquareDistance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int upperBound = dimension & ~3;
+        for (; i < upperBound; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < dimension; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * 原地 L2 归一化，零向量保持不变
+     */
+    public static void normalize(float[] v, int offset, int dimension) {
+        float norm = (float) Math.sqrt(dotProduct(v, offset, v, offset, dimension));
+        if (norm == 0f) {
+            return;
+        }
+        for (int i = 0; i < dimension; i++) {
+            v[offset + i] /= norm;
+        }
+    }
+}
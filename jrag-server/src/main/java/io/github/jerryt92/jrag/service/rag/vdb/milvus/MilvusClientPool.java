@@ -0,0 +1,121 @@
+package io.github.jerryt92.jrag.service.rag.vdb.milvus;
+
+import io.milvus.v2.client.ConnectConfig;
+import io.milvus.v2.client.MilvusClientV2;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * MilvusClientV2 连接池
+ * <p>
+ * 每个客户端持有独立的 gRPC channel（一条 HTTP/2 连接），调用按轮询分配到各客户端，
+ * 并发检索不再共用同一条连接的流控窗口与 I/O 线程。keep-alive 与单次调用的 deadline 由 {@link ConnectConfig} 决定。
+ * 调用可在当前线程同步执行，也可在虚拟线程中异步执行；每类操作分别统计调用次数、失败次数与耗时。
+ */
+@Slf4j
+class MilvusClientPool implements AutoCloseable {
+    private final MilvusClientV2[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    MilvusClientPool(ConnectConfig connectConfig, int size) {
+        clients = new MilvusClientV2[Math.max(size, 1)];
+        try {
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new MilvusClientV2(connectConfig);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        log.info("Connected to Milvus {} with {} clients", connectConfig.getUri(), clients.length);
+    }
+
+    /**
+     * 建表、加载、遍历等管理操作使用的客户端，不参与统计
+     */
+    MilvusClientV2 client() {
+        return clients[0];
+    }
+
+    /**
+     * 在轮询选出的客户端上同步调用
+     *
+     * @param operation 统计用的操作名
+     */
+    <T> T call(String operation, Function<MilvusClientV2, T> call) {
+        MilvusClientV2 client = clients[Math.floorMod(next.getAndIncrement(), clients.length)];
+        Operation stats = operations.computeIfAbsent(operation, k -> new Operation());
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.apply(client);
+            failed = false;
+            return result;
+        } finally {
+            stats.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * 在虚拟线程中调用，gRPC 阻塞等待期间虚拟线程让出载体线程
+     */
+    <T> CompletableFuture<T> callAsync(String operation, Function<MilvusClientV2, T> call) {
+        return CompletableFuture.supplyAsync(() -> call(operation, call), executor);
+    }
+
+    void logStatistics() {
+        if (operations.isEmpty()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        operations.forEach((operation, stats) -> {
+            long count = stats.count.sum();
+            if (count > 0) {
+                summary.append(String.format(" %s: avg %.1f ms, max %.1f ms (%d, %d failed);",
+                        operation, stats.totalNanos.sum() / 1e6 / count, stats.maxNanos.get() / 1e6, count, stats.failures.sum()));
+            }
+        });
+        log.info("Milvus call latency:{}", summary);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (MilvusClientV2 client : clients) {
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to close Milvus client", e);
+                }
+            }
+        }
+    }
+
+    private static final class Operation {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos, boolean failed) {
+            count.increment();
+            if (failed) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+}
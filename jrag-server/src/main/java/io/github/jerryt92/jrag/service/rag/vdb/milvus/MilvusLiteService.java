@@ -1,12 +1,15 @@
 package io.github.jerryt92.jrag.service.rag.vdb.milvus;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import io.github.jerryt92.jrag.model.EmbeddingModel;
 import io.github.jerryt92.jrag.model.Translator;
 import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+import io.github.jerryt92.jrag.service.rag.vdb.ScoreNormalizer;
 import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
@@ -23,6 +26,8 @@ import java.util.Map;
 
 @Slf4j
 public class MilvusLiteService implements VectorDatabaseService {
+    // 稠密检索同时返回向量，供检索结果多样化计算相似度
+    private static final List<String> DENSE_OUTPUT_FIELDS = List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id", "embedding");
     private final String collectionName;
     private String metricType;
 
@@ -107,7 +112,7 @@ public class MilvusLiteService implements VectorDatabaseService {
         // 3. 写入数据
         if (!embeddingsItemPos.isEmpty()) {
             putData(embeddingsItemPos);
-            log.info("Initialized collection {} with {} vectors", collectionName, embeddingsItemPos.size());
+            log.debug("Initialized collection {} with {} vectors", collectionName, embeddingsItemPos.size());
         }
     }
 
@@ -131,29 +136,30 @@ public class MilvusLiteService implements VectorDatabaseService {
     }
 
     @Override
-    public List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK) {
+    public List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK, VectorFilter filter) {
         List<JsonObject> searchResults = searchVectors(
                 queryVector,
                 "embedding",
                 metricType,
                 topK,
-                List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id")
+                DENSE_OUTPUT_FIELDS,
+                filter
         );
         return toQueryItems(searchResults, ScoreChannel.DENSE);
     }
 
     @Override
-    public List<EmbeddingModel.EmbeddingsQueryItem> hybridRetrieval(String queryText, float[] queryVector, int topK, String metricType, float denseWeight, float sparseWeight) {
+    public List<EmbeddingModel.EmbeddingsQueryItem> hybridRetrieval(String queryText, float[] queryVector, int topK, String metricType, float denseWeight, float sparseWeight, VectorFilter filter) {
         float safeDenseWeight = Math.max(denseWeight, 0f);
         float safeSparseWeight = Math.max(sparseWeight, 0f);
         if (safeDenseWeight <= 0f && safeSparseWeight <= 0f) {
             safeDenseWeight = 1f;
         }
         if (safeSparseWeight <= 0f) {
-            return knnRetrieval(queryVector, topK);
+            return knnRetrieval(queryVector, topK, filter);
         }
         if (safeDenseWeight <= 0f) {
-            return sparseRetrieval(queryText, topK);
+            return sparseRetrieval(queryText, topK, filter);
         }
         String denseMetricType = metricType;
         if (denseMetricType == null || denseMetricType.isBlank()) {
@@ -166,14 +172,16 @@ public class MilvusLiteService implements VectorDatabaseService {
                 "embedding",
                 denseMetricType,
                 scoreTopK,
-                outputFields
+                DENSE_OUTPUT_FIELDS,
+                filter
         );
         List<JsonObject> sparseResults = searchVectors(
                 queryText,
                 "sparse",
                 "BM25",
                 scoreTopK,
-                outputFields
+                outputFields,
+                filter
         );
         Map<String, Float> denseScoreMap = extractScoreMap(denseResults);
         Map<String, Float> sparseScoreMap = extractScoreMap(sparseResults);
@@ -183,7 +191,9 @@ public class MilvusLiteService implements VectorDatabaseService {
             String hash = entry.getKey();
             Float denseScore = denseScoreMap.getOrDefault(hash, 0f);
             Float sparseScore = sparseScoreMap.getOrDefault(hash, 0f);
-            float hybridScore = safeDenseWeight * denseScore + safeSparseWeight * sparseScore;
+            // 与 Milvus WeightedRanker 一致，各通道分数归一化后再加权，未命中的通道不计分
+            float hybridScore = safeDenseWeight * ScoreNormalizer.normalize(denseMetricType, denseScoreMap.get(hash))
+                    + safeSparseWeight * ScoreNormalizer.normalize(ScoreNormalizer.BM25, sparseScoreMap.get(hash));
             JsonObject hit = entry.getValue();
             EmbeddingModel.EmbeddingsQueryItem item = new EmbeddingModel.EmbeddingsQueryItem()
                     .setHash(hash)
@@ -194,7 +204,8 @@ public class MilvusLiteService implements VectorDatabaseService {
                     .setEmbeddingModel(getJsonString(hit, "embedding_model"))
                     .setEmbeddingProvider(getJsonString(hit, "embedding_provider"))
                     .setText(getJsonString(hit, "text"))
-                    .setTextChunkId(getJsonString(hit, "text_chunk_id"));
+                    .setTextChunkId(getJsonString(hit, "text_chunk_id"))
+                    .setEmbedding(getJsonFloatArray(hit, "embedding"));
             merged.add(item);
         }
         merged.sort(Comparator.comparing(EmbeddingModel.EmbeddingsQueryItem::getHybridScore, Comparator.nullsLast(Float::compareTo)).reversed());
@@ -204,13 +215,15 @@ public class MilvusLiteService implements VectorDatabaseService {
         return merged;
     }
 
-    private List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK) {
+    @Override
+    public List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK, VectorFilter filter) {
         List<JsonObject> searchResults = searchVectors(
                 queryText,
                 "sparse",
                 "BM25",
                 topK,
-                List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id")
+                List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id"),
+                filter
         );
         return toQueryItems(searchResults, ScoreChannel.SPARSE);
     }
@@ -219,7 +232,8 @@ public class MilvusLiteService implements VectorDatabaseService {
                                            String annsField,
                                            String metricType,
                                            int topK,
-                                           List<String> outputFields) {
+                                           List<String> outputFields,
+                                           VectorFilter filter) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("collection_name", collectionName);
         payload.put("vector", vector);
@@ -231,6 +245,10 @@ public class MilvusLiteService implements VectorDatabaseService {
         if (metricType != null && !metricType.isBlank()) {
             payload.put("search_params", Map.of("metric_type", metricType));
         }
+        if (filter != null) {
+            // 透传为 MilvusClient.search 的 filter 参数
+            payload.put("filter", filter.toExpression());
+        }
         String jsonResponse = sendRequest("/vectors/search", payload);
         Type listType = new TypeToken<List<JsonObject>>() {
         }.getType();
@@ -251,7 +269,8 @@ public class MilvusLiteService implements VectorDatabaseService {
                     .setEmbeddingModel(getJsonString(hit, "embedding_model"))
                     .setEmbeddingProvider(getJsonString(hit, "embedding_provider"))
                     .setText(getJsonString(hit, "text"))
-                    .setTextChunkId(getJsonString(hit, "text_chunk_id"));
+                    .setTextChunkId(getJsonString(hit, "text_chunk_id"))
+                    .setEmbedding(getJsonFloatArray(hit, "embedding"));
             if (score != null) {
                 if (channel == ScoreChannel.DENSE) {
                     item.setDenseScore(score).setHybridScore(score);
@@ -315,6 +334,18 @@ public class MilvusLiteService implements VectorDatabaseService {
                 : null;
     }
 
+    private float[] getJsonFloatArray(JsonObject json, String memberName) {
+        if (!json.has(memberName) || !json.get(memberName).isJsonArray()) {
+            return null;
+        }
+        JsonArray array = json.getAsJsonArray(memberName);
+        float[] values = new float[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i).getAsFloat();
+        }
+        return values;
+    }
+
     @Override
     public void deleteData(List<String> ids) {
         if (ids == null || ids.isEmpty()) return;
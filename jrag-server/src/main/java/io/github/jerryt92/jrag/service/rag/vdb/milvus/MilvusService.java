@@ -5,22 +5,33 @@ import io.github.jerryt92.jrag.model.EmbeddingModel;
 import io.github.jerryt92.jrag.model.Translator;
 import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
 import io.github.jerryt92.jrag.service.rag.vdb.VectorDatabaseService;
+import io.github.jerryt92.jrag.service.rag.vdb.VectorFilter;
+import io.github.jerryt92.jrag.service.rag.vdb.local.VectorUtil;
 import io.milvus.common.clientenum.FunctionType;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.response.QueryResultsWrapper;
 import io.milvus.v2.client.ConnectConfig;
 import io.milvus.v2.client.MilvusClientV2;
 import io.milvus.v2.common.DataType;
 import io.milvus.v2.common.IndexParam;
 import io.milvus.v2.service.collection.request.AddFieldReq;
 import io.milvus.v2.service.collection.request.CreateCollectionReq;
+import io.milvus.v2.service.collection.request.DescribeCollectionReq;
 import io.milvus.v2.service.collection.request.DropCollectionReq;
 import io.milvus.v2.service.collection.request.GetLoadStateReq;
 import io.milvus.v2.service.collection.request.HasCollectionReq;
+import io.milvus.v2.service.collection.request.LoadCollectionReq;
+import io.milvus.v2.service.collection.response.DescribeCollectionResp;
+import io.milvus.v2.service.index.request.DescribeIndexReq;
+import io.milvus.v2.service.index.response.DescribeIndexResp;
 import io.milvus.v2.service.vector.request.AnnSearchReq;
 import io.milvus.v2.service.vector.request.DeleteReq;
 import io.milvus.v2.service.vector.request.HybridSearchReq;
 import io.milvus.v2.service.vector.request.InsertReq;
+import io.milvus.v2.service.vector.request.QueryIteratorReq;
 import io.milvus.v2.service.vector.request.SearchReq;
 import io.milvus.v2.service.vector.request.UpsertReq;
+import io.milvus.v2.service.vector.request.data.BaseVector;
 import io.milvus.v2.service.vector.request.data.EmbeddedText;
 import io.milvus.v2.service.vector.request.data.FloatVec;
 import io.milvus.v2.service.vector.request.ranker.WeightedRanker;
@@ -29,39 +40,93 @@ import io.milvus.v2.service.vector.response.InsertResp;
 import io.milvus.v2.service.vector.response.SearchResp;
 import io.milvus.v2.service.vector.response.UpsertResp;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class MilvusService implements VectorDatabaseService {
-    private final String clusterEndpoint;
+    private final ConnectConfig connectConfig;
     private final String collectionName;
-    private final String token;
+    // 连接池中的客户端（gRPC channel）数
+    private final int clientPoolSize;
     private IndexParam.MetricType metricType;
-    private MilvusClientV2 client;
+    private volatile MilvusClientPool clientPool;
+    // 最近一次 loadPersistedData 传入的 checkEmbeddingHash，重建时写入 Collection 描述
+    private String checkEmbeddingHash;
+    private static final List<String> OUTPUT_FIELDS = List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id");
+    // 稠密检索同时返回向量，供检索结果多样化计算相似度
+    private static final List<String> DENSE_OUTPUT_FIELDS = List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id", "embedding");
 
     public MilvusService(
-            String clusterEndpoint,
+            ConnectConfig connectConfig,
             String collectionName,
-            String token
+            int clientPoolSize
     ) {
-        this.clusterEndpoint = clusterEndpoint;
+        this.connectConfig = connectConfig;
         this.collectionName = collectionName;
-        this.token = token;
+        this.clientPoolSize = clientPoolSize;
+    }
+
+    private synchronized void connect() {
+        if (clientPool != null) {
+            return;
+        }
+        clientPool = new MilvusClientPool(connectConfig, clientPoolSize);
+    }
+
+    /**
+     * Collection 已存在且维度、度量方式、checkEmbeddingHash（保存在 Collection 描述中）均一致时直接加载，无需重建
+     */
+    @Override
+    public boolean loadPersistedData(int dimension, String metricTypeStr, String checkEmbeddingHash) {
+        this.checkEmbeddingHash = checkEmbeddingHash;
+        metricType = IndexParam.MetricType.valueOf(metricTypeStr);
+        try {
+            connect();
+            MilvusClientV2 client = clientPool.client();
+            if (!client.hasCollection(HasCollectionReq.builder().collectionName(collectionName).build())) {
+                return false;
+            }
+            DescribeCollectionResp describeCollectionResp = client.describeCollection(DescribeCollectionReq.builder()
+                    .collectionName(collectionName)
+                    .build());
+            CreateCollectionReq.FieldSchema embeddingField = describeCollectionResp.getCollectionSchema().getField("embedding");
+            if (!Objects.equals(describeCollectionResp.getDescription(), checkEmbeddingHash)
+                    || embeddingField == null || !Objects.equals(embeddingField.getDimension(), dimension)
+                    || describeCollectionResp.getCollectionSchema().getField("update_time") == null) {
+                return false;
+            }
+            DescribeIndexResp describeIndexResp = client.describeIndex(DescribeIndexReq.builder()
+                    .collectionName(collectionName)
+                    .fieldName("embedding")
+                    .build());
+            boolean metricMatches = describeIndexResp.getIndexDescriptions().stream()
+                    .anyMatch(indexDesc -> "embedding".equals(indexDesc.getFieldName()) && indexDesc.getMetricType() == metricType);
+            if (!metricMatches) {
+                return false;
+            }
+            client.loadCollection(LoadCollectionReq.builder().collectionName(collectionName).build());
+            log.info("Collection {} reused, dimension: {}, metric type: {}", collectionName, dimension, metricType);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to check collection {}, rebuilding", collectionName, e);
+            return false;
+        }
     }
 
     @Override
     public void reBuildVectorDatabase(int dimension, String metricTypeStr) {
         metricType = IndexParam.MetricType.valueOf(metricTypeStr);
-        ConnectConfig connectConfig = ConnectConfig.builder()
-                .uri(clusterEndpoint)
-                .token(token)
-                .build();
-        this.client = new MilvusClientV2(connectConfig);
+        connect();
+        MilvusClientV2 client = clientPool.client();
         // 检查Collection是否存在
         HasCollectionReq hasCollectionReq = HasCollectionReq.builder()
                 .collectionName(collectionName)
@@ -122,6 +187,11 @@ public class MilvusService implements VectorDatabaseService {
                 .maxLength(40)
                 .description("文本块ID")
                 .build());
+        schema.addField(AddFieldReq.builder()
+                .fieldName("update_time")
+                .dataType(DataType.Int64)
+                .description("embeddings_item 的更新时间，用于增量同步")
+                .build());
         List<IndexParam> indexParams = new ArrayList<>();
         // Prepare index parameters
         IndexParam indexParamForIdField = IndexParam.builder()
@@ -143,6 +213,12 @@ public class MilvusService implements VectorDatabaseService {
                 .metricType(IndexParam.MetricType.BM25)
                 .build();
         indexParams.add(indexParamForSparseVectorField);
+        // 标量倒排索引，按文本块过滤时直接得到候选位图
+        IndexParam indexParamForTextChunkIdField = IndexParam.builder()
+                .fieldName("text_chunk_id")
+                .indexType(IndexParam.IndexType.INVERTED)
+                .build();
+        indexParams.add(indexParamForTextChunkIdField);
         CreateCollectionReq.Function bm25Function = CreateCollectionReq.Function.builder()
                 .name("text_bm25_emb")
                 .description("将text通过BM25转换为稀疏向量")
@@ -154,6 +230,7 @@ public class MilvusService implements VectorDatabaseService {
         // Create a collection with schema and index parameters
         CreateCollectionReq customizedSetupReq = CreateCollectionReq.builder()
                 .collectionName(collectionName)
+                .description(checkEmbeddingHash == null ? "" : checkEmbeddingHash)
                 .collectionSchema(schema)
                 .indexParams(indexParams)
                 .build();
@@ -171,60 +248,148 @@ public class MilvusService implements VectorDatabaseService {
 
     @Override
     public void initData(List<EmbeddingsItemPoWithBLOBs> embeddingsItemPos) {
-        // 从关系型数据库中查询全部嵌入数据
-        List<JsonObject> data = new ArrayList<>();
+        // 每批一个 InsertReq，批大小由调用方控制，避免超出 gRPC 消息大小限制
+        List<JsonObject> data = new ArrayList<>(embeddingsItemPos.size());
         for (EmbeddingsItemPoWithBLOBs embeddingsItemPo : embeddingsItemPos) {
-            data.add(Translator.translateToMilvusData(embeddingsItemPo));
+            data.add(toMilvusData(embeddingsItemPo));
         }
         if (!data.isEmpty()) {
             InsertReq insertReq = InsertReq.builder()
                     .collectionName(collectionName)
                     .data(data)
                     .build();
-            InsertResp insertResp = client.insert(insertReq);
-            log.info("Inserted {} vectors into collection {}", insertResp.getInsertCnt(), collectionName);
+            InsertResp insertResp = clientPool.call("insert", client -> client.insert(insertReq));
+            log.debug("Inserted {} vectors into collection {}", insertResp.getInsertCnt(), collectionName);
         }
     }
 
     @Override
     public void putData(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
-        List<JsonObject> milvusData = new ArrayList<>();
+        if (embeddingsItems.isEmpty()) {
+            return;
+        }
+        UpsertReq upsertReq = upsertReq(embeddingsItems);
+        logUpserted(clientPool.call("upsert", client -> client.upsert(upsertReq)));
+    }
+
+    @Override
+    public CompletableFuture<Void> putDataAsync(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
+        if (embeddingsItems.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UpsertReq upsertReq = upsertReq(embeddingsItems);
+        return clientPool.callAsync("upsert", client -> client.upsert(upsertReq)).thenAccept(this::logUpserted);
+    }
+
+    private UpsertReq upsertReq(List<EmbeddingsItemPoWithBLOBs> embeddingsItems) {
+        List<JsonObject> milvusData = new ArrayList<>(embeddingsItems.size());
         for (EmbeddingsItemPoWithBLOBs embeddingsItemPo : embeddingsItems) {
-            milvusData.add(Translator.translateToMilvusData(embeddingsItemPo));
+            milvusData.add(toMilvusData(embeddingsItemPo));
         }
-        if (!milvusData.isEmpty()) {
-            UpsertReq upsertReq = UpsertReq.builder()
-                    .collectionName(collectionName)
-                    .data(milvusData)
-                    .build();
-            UpsertResp upsertResp = client.upsert(upsertReq);
-            log.info("Upserted {} vectors into collection {}", upsertResp.getUpsertCnt(), collectionName);
+        return UpsertReq.builder()
+                .collectionName(collectionName)
+                .data(milvusData)
+                .build();
+    }
+
+    private void logUpserted(UpsertResp upsertResp) {
+        log.info("Upserted {} vectors into collection {}", upsertResp.getUpsertCnt(), collectionName);
+    }
+
+    private static JsonObject toMilvusData(EmbeddingsItemPoWithBLOBs embeddingsItemPo) {
+        JsonObject jsonObject = Translator.translateToMilvusData(embeddingsItemPo);
+        jsonObject.addProperty("update_time", embeddingsItemPo.getUpdateTime() == null ? 0L : embeddingsItemPo.getUpdateTime());
+        return jsonObject;
+    }
+
+    /**
+     * 用 QueryIterator 分批读取全部 hash 与 update_time
+     */
+    @Override
+    public Map<String, Long> listDataVersions() {
+        Map<String, Long> versions = new HashMap<>();
+        QueryIterator queryIterator = clientPool.client().queryIterator(QueryIteratorReq.builder()
+                .collectionName(collectionName)
+                .outputFields(List.of("hash", "update_time"))
+                .batchSize(1000L)
+                .build());
+        try {
+            while (true) {
+                List<QueryResultsWrapper.RowRecord> rowRecords = queryIterator.next();
+                if (rowRecords.isEmpty()) {
+                    break;
+                }
+                for (QueryResultsWrapper.RowRecord rowRecord : rowRecords) {
+                    Object updateTime = rowRecord.get("update_time");
+                    versions.put(rowRecord.get("hash").toString(), updateTime instanceof Number number ? number.longValue() : null);
+                }
+            }
+        } finally {
+            queryIterator.close();
         }
+        return versions;
     }
 
     @Override
-    public List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK) {
-        FloatVec floatVec = new FloatVec(queryVector);
+    public List<EmbeddingModel.EmbeddingsQueryItem> knnRetrieval(float[] queryVector, int topK, VectorFilter filter) {
+        SearchReq searchReq = denseSearchReq(queryVector, topK, metricType, DENSE_OUTPUT_FIELDS, filter);
+        SearchResp searchResp = clientPool.call("search", client -> client.search(searchReq));
+        return toQueryItems(searchResp, ScoreChannel.DENSE);
+    }
+
+    @Override
+    public CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> knnRetrievalAsync(float[] queryVector, int topK, VectorFilter filter) {
+        SearchReq searchReq = denseSearchReq(queryVector, topK, metricType, DENSE_OUTPUT_FIELDS, filter);
+        return clientPool.callAsync("search", client -> client.search(searchReq))
+                .thenApply(searchResp -> toQueryItems(searchResp, ScoreChannel.DENSE));
+    }
+
+    /**
+     * 多个查询向量放在同一个 SearchReq 中，一次请求完成
+     */
+    @Override
+    public List<List<EmbeddingModel.EmbeddingsQueryItem>> knnRetrievalBatch(List<float[]> queryVectors, int topK, VectorFilter filter) {
+        if (queryVectors.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<BaseVector> data = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            data.add(new FloatVec(queryVector));
+        }
         SearchReq searchReq = SearchReq.builder()
                 .collectionName(collectionName)
-                .data(List.of(floatVec))
+                .data(data)
+                .filter(filterExpression(filter))
                 .topK(topK)
                 .searchParams(Map.of(
                         "metric_type", metricType.toString(),
                         "anns_field", "embedding"
                 ))
-                .outputFields(List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id"))
+                .outputFields(DENSE_OUTPUT_FIELDS)
                 .build();
-        SearchResp searchResp = client.search(searchReq);
-        return toQueryItems(searchResp, ScoreChannel.DENSE);
+        return toBatchQueryItems(clientPool.call("search", client -> client.search(searchReq)), queryVectors.size(), ScoreChannel.DENSE);
     }
 
     @Override
     public void deleteData(List<String> ids) {
-        DeleteResp deleteResp = client.delete(DeleteReq.builder()
+        DeleteReq deleteReq = deleteReq(ids);
+        logDeleted(clientPool.call("delete", client -> client.delete(deleteReq)));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteDataAsync(List<String> ids) {
+        DeleteReq deleteReq = deleteReq(ids);
+        return clientPool.callAsync("delete", client -> client.delete(deleteReq)).thenAccept(this::logDeleted);
+    }
+
+    private DeleteReq deleteReq(List<String> ids) {
+        return DeleteReq.builder()
                 .collectionName(collectionName)
                 .ids(new ArrayList<>(ids))
-                .build());
+                .build();
+    }
+
+    private void logDeleted(DeleteResp deleteResp) {
         log.info("Deleted {} vectors from collection {}", deleteResp.getDeleteCnt(), collectionName);
     }
 
@@ -234,17 +399,18 @@ public class MilvusService implements VectorDatabaseService {
                                                                     int topK,
                                                                     String metricTypeStr,
                                                                     float denseWeight,
-                                                                    float sparseWeight) {
+                                                                    float sparseWeight,
+                                                                    VectorFilter filter) {
         float safeDenseWeight = Math.max(denseWeight, 0f);
         float safeSparseWeight = Math.max(sparseWeight, 0f);
         if (safeDenseWeight <= 0f && safeSparseWeight <= 0f) {
             safeDenseWeight = 1f;
         }
         if (safeSparseWeight <= 0f) {
-            return knnRetrieval(queryVector, topK);
+            return knnRetrieval(queryVector, topK, filter);
         }
         if (safeDenseWeight <= 0f) {
-            return sparseRetrieval(queryText, topK);
+            return sparseRetrieval(queryText, topK, filter);
         }
         IndexParam.MetricType denseMetricType = metricType;
         if (metricTypeStr != null) {
@@ -258,6 +424,7 @@ public class MilvusService implements VectorDatabaseService {
                 .vectorFieldName("embedding")
                 .metricType(denseMetricType)
                 .vectors(List.of(new FloatVec(queryVector)))
+                .expr(filterExpression(filter))
                 .topK(topK)
                 .params("{}")
                 .build();
@@ -265,6 +432,7 @@ public class MilvusService implements VectorDatabaseService {
                 .vectorFieldName("sparse")
                 .metricType(IndexParam.MetricType.BM25)
                 .vectors(List.of(new EmbeddedText(queryText)))
+                .expr(filterExpression(filter))
                 .topK(topK)
                 .params("{}")
                 .build();
@@ -273,49 +441,113 @@ public class MilvusService implements VectorDatabaseService {
                 .searchRequests(List.of(denseSearchReq, sparseSearchReq))
                 .ranker(new WeightedRanker(List.of(safeDenseWeight, safeSparseWeight)))
                 .topK(topK)
-                .outFields(List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id"))
+                .outFields(DENSE_OUTPUT_FIELDS)
                 .build();
-        SearchResp searchResp = client.hybridSearch(hybridSearchReq);
-        int scoreTopK = Math.max(topK, 50);
-        SearchResp denseResp = client.search(SearchReq.builder()
+        // 只执行一次 hybridSearch：稠密分数由返回的向量在本地计算，BM25 分数无法还原，sparseScore 为空
+        SearchResp searchResp = clientPool.call("hybrid-search", client -> client.hybridSearch(hybridSearchReq));
+        return toQueryItemsHybrid(searchResp, queryVector, denseMetricType);
+    }
+
+    @Override
+    public List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK, VectorFilter filter) {
+        SearchReq searchReq = sparseSearchReq(queryText, topK, filter);
+        SearchResp searchResp = clientPool.call("search", client -> client.search(searchReq));
+        return toQueryItems(searchResp, ScoreChannel.SPARSE);
+    }
+
+    @Override
+    public CompletableFuture<List<EmbeddingModel.EmbeddingsQueryItem>> sparseRetrievalAsync(String queryText, int topK, VectorFilter filter) {
+        SearchReq searchReq = sparseSearchReq(queryText, topK, filter);
+        return clientPool.callAsync("search", client -> client.search(searchReq))
+                .thenApply(searchResp -> toQueryItems(searchResp, ScoreChannel.SPARSE));
+    }
+
+    @Override
+    public List<List<EmbeddingModel.EmbeddingsQueryItem>> sparseRetrievalBatch(List<String> queryTexts, int topK, VectorFilter filter) {
+        if (queryTexts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<BaseVector> data = new ArrayList<>(queryTexts.size());
+        for (String queryText : queryTexts) {
+            data.add(new EmbeddedText(queryText));
+        }
+        SearchReq searchReq = sparseSearchReq(data, topK, filter);
+        return toBatchQueryItems(clientPool.call("search", client -> client.search(searchReq)), queryTexts.size(), ScoreChannel.SPARSE);
+    }
+
+    private SearchReq denseSearchReq(float[] queryVector, int topK, IndexParam.MetricType denseMetricType, List<String> outputFields, VectorFilter filter) {
+        return SearchReq.builder()
                 .collectionName(collectionName)
                 .data(List.of(new FloatVec(queryVector)))
-                .topK(scoreTopK)
+                .filter(filterExpression(filter))
+                .topK(topK)
                 .searchParams(Map.of(
                         "metric_type", denseMetricType.toString(),
                         "anns_field", "embedding"
                 ))
-                .outputFields(List.of("hash"))
-                .build());
-        SearchResp sparseResp = client.search(SearchReq.builder()
-                .collectionName(collectionName)
-                .data(List.of(new EmbeddedText(queryText)))
-                .annsField("sparse")
-                .metricType(IndexParam.MetricType.BM25)
-                .topK(scoreTopK)
-                .outputFields(List.of("hash"))
-                .build());
-        Map<String, Float> denseScoreMap = extractScoreMap(denseResp);
-        Map<String, Float> sparseScoreMap = extractScoreMap(sparseResp);
-        return toQueryItemsHybrid(searchResp, denseScoreMap, sparseScoreMap);
+                .outputFields(outputFields)
+                .build();
     }
 
-    private List<EmbeddingModel.EmbeddingsQueryItem> sparseRetrieval(String queryText, int topK) {
-        SearchReq searchReq = SearchReq.builder()
+    private SearchReq sparseSearchReq(String queryText, int topK, VectorFilter filter) {
+        return sparseSearchReq(List.of(new EmbeddedText(queryText)), topK, filter);
+    }
+
+    private SearchReq sparseSearchReq(List<BaseVector> data, int topK, VectorFilter filter) {
+        return SearchReq.builder()
                 .collectionName(collectionName)
-                .data(List.of(new EmbeddedText(queryText)))
+                .data(data)
+                .filter(filterExpression(filter))
                 .annsField("sparse")
                 .metricType(IndexParam.MetricType.BM25)
                 .topK(topK)
-                .outputFields(List.of("hash", "embedding_model", "embedding_provider", "text", "text_chunk_id"))
+                .outputFields(OUTPUT_FIELDS)
                 .build();
-        SearchResp searchResp = client.search(searchReq);
-        return toQueryItems(searchResp, ScoreChannel.SPARSE);
+    }
+
+    @Scheduled(fixedRate = 10, timeUnit = TimeUnit.MINUTES)
+    public void logStatistics() {
+        MilvusClientPool pool = clientPool;
+        if (pool != null) {
+            pool.logStatistics();
+        }
+    }
+
+    /**
+     * 关闭连接池，由 Spring 在容器关闭时调用
+     */
+    public void close() {
+        MilvusClientPool pool = clientPool;
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * 过滤条件下推为 Milvus 表达式，在检索时按 text_chunk_id 的倒排索引预过滤
+     */
+    private static String filterExpression(VectorFilter filter) {
+        return filter == null ? null : filter.toExpression();
     }
 
     private List<EmbeddingModel.EmbeddingsQueryItem> toQueryItems(SearchResp searchResp, ScoreChannel channel) {
         List<List<SearchResp.SearchResult>> results = searchResp.getSearchResults();
-        List<SearchResp.SearchResult> searchResults = results.isEmpty() ? Collections.emptyList() : results.get(0);
+        return toQueryItems(results.isEmpty() ? Collections.emptyList() : results.get(0), channel);
+    }
+
+    /**
+     * 多个查询的检索结果按查询顺序返回
+     */
+    private List<List<EmbeddingModel.EmbeddingsQueryItem>> toBatchQueryItems(SearchResp searchResp, int queryCount, ScoreChannel channel) {
+        List<List<SearchResp.SearchResult>> results = searchResp.getSearchResults();
+        List<List<EmbeddingModel.EmbeddingsQueryItem>> batchQueryItems = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            batchQueryItems.add(toQueryItems(i < results.size() ? results.get(i) : Collections.emptyList(), channel));
+        }
+        return batchQueryItems;
+    }
+
+    private List<EmbeddingModel.EmbeddingsQueryItem> toQueryItems(List<SearchResp.SearchResult> searchResults, ScoreChannel channel) {
         List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = new ArrayList<>();
         for (SearchResp.SearchResult searchResult : searchResults) {
             String hash = resolveHash(searchResult);
@@ -326,7 +558,8 @@ public class MilvusService implements VectorDatabaseService {
                     .setEmbeddingModel((String) searchResult.getEntity().get("embedding_model"))
                     .setEmbeddingProvider((String) searchResult.getEntity().get("embedding_provider"))
                     .setText((String) searchResult.getEntity().get("text"))
-                    .setTextChunkId(searchResult.getEntity().get("text_chunk_id").toString());
+                    .setTextChunkId(searchResult.getEntity().get("text_chunk_id").toString())
+                    .setEmbedding(toFloatArray(searchResult.getEntity().get("embedding")));
             if (score != null) {
                 if (channel == ScoreChannel.DENSE) {
                     embeddingsQueryItem.setDenseScore(score).setHybridScore(score);
@@ -342,40 +575,62 @@ public class MilvusService implements VectorDatabaseService {
     }
 
     private List<EmbeddingModel.EmbeddingsQueryItem> toQueryItemsHybrid(SearchResp searchResp,
-                                                                        Map<String, Float> denseScoreMap,
-                                                                        Map<String, Float> sparseScoreMap) {
+                                                                        float[] queryVector,
+                                                                        IndexParam.MetricType denseMetricType) {
         List<List<SearchResp.SearchResult>> results = searchResp.getSearchResults();
         List<SearchResp.SearchResult> searchResults = results.isEmpty() ? Collections.emptyList() : results.get(0);
         List<EmbeddingModel.EmbeddingsQueryItem> embeddingsQueryItems = new ArrayList<>();
         for (SearchResp.SearchResult searchResult : searchResults) {
             String hash = resolveHash(searchResult);
             Float hybridScore = searchResult.getScore();
+            float[] embedding = toFloatArray(searchResult.getEntity().get("embedding"));
             EmbeddingModel.EmbeddingsQueryItem embeddingsQueryItem = new EmbeddingModel.EmbeddingsQueryItem()
                     .setHash(hash)
                     .setScore(hybridScore == null ? 0f : hybridScore)
                     .setHybridScore(hybridScore)
-                    .setDenseScore(denseScoreMap.get(hash))
-                    .setSparseScore(sparseScoreMap.get(hash))
+                    .setDenseScore(denseScore(queryVector, embedding, denseMetricType))
                     .setEmbeddingModel((String) searchResult.getEntity().get("embedding_model"))
                     .setEmbeddingProvider((String) searchResult.getEntity().get("embedding_provider"))
                     .setText((String) searchResult.getEntity().get("text"))
-                    .setTextChunkId(searchResult.getEntity().get("text_chunk_id").toString());
+                    .setTextChunkId(searchResult.getEntity().get("text_chunk_id").toString())
+                    .setEmbedding(embedding);
             embeddingsQueryItems.add(embeddingsQueryItem);
         }
         return embeddingsQueryItems;
     }
 
-    private Map<String, Float> extractScoreMap(SearchResp searchResp) {
-        Map<String, Float> scoreMap = new HashMap<>();
-        List<List<SearchResp.SearchResult>> results = searchResp.getSearchResults();
-        List<SearchResp.SearchResult> searchResults = results.isEmpty() ? Collections.emptyList() : results.get(0);
-        for (SearchResp.SearchResult searchResult : searchResults) {
-            String hash = resolveHash(searchResult);
-            if (hash != null && searchResult.getScore() != null) {
-                scoreMap.put(hash, searchResult.getScore());
+    /**
+     * 按 Milvus 的度量方式计算稠密分数，L2 与 Milvus 一致返回距离的平方
+     */
+    private static Float denseScore(float[] queryVector, float[] embedding, IndexParam.MetricType denseMetricType) {
+        if (embedding == null || embedding.length != queryVector.length) {
+            return null;
+        }
+        int dimension = queryVector.length;
+        return switch (denseMetricType) {
+            case IP -> VectorUtil.dotProduct(queryVector, 0, embedding, 0, dimension);
+            case L2 -> VectorUtil.squareDistance(queryVector, 0, embedding, 0, dimension);
+            case COSINE -> {
+                float norm = (float) Math.sqrt(VectorUtil.dotProduct(queryVector, 0, queryVector, 0, dimension)
+                        * VectorUtil.dotProduct(embedding, 0, embedding, 0, dimension));
+                yield norm == 0f ? 0f : VectorUtil.dotProduct(queryVector, 0, embedding, 0, dimension) / norm;
             }
+            default -> null;
+        };
+    }
+
+    /**
+     * 检索结果中的 FloatVector 字段以 List&lt;Float&gt; 返回，未输出该字段时返回 null
+     */
+    private static float[] toFloatArray(Object value) {
+        if (!(value instanceof List<?> list)) {
+            return null;
+        }
+        float[] vector = new float[list.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) list.get(i)).floatValue();
         }
-        return scoreMap;
+        return vector;
     }
 
     private String resolveHash(SearchResp.SearchResult searchResult) {
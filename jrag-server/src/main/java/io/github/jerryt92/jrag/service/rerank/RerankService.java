@@ -0,0 +1,220 @@
+package io.github.jerryt92.jrag.service.rerank;
+
+import io.github.jerryt92.jrag.config.RerankProperties;
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import io.github.jerryt92.jrag.model.RerankModel;
+import io.github.jerryt92.jrag.po.mgb.TextChunkPo;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import javax.net.ssl.SSLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 交叉编码器重排序
+ * <p>
+ * 向量检索多取若干候选，调用重排序接口对（查询, 文本块内容）打分后保留得分最高的 N 条。
+ * 检索命中的是文本块的大纲，大纲只是内容的摘要，交叉编码器需要看到最终拼入上下文的文本块内容才能判断相关性；
+ * 未查到文本块时退回使用大纲。同一文本块的多个候选只请求一次。
+ * 候选按 batch-size 分批并发请求，得分按（模型, 查询, 文本块及其更新时间）缓存；
+ * 超过单次请求的时间预算或接口出错时回退为向量检索的顺序，不影响对话。
+ */
+@Slf4j
+@Service
+public class RerankService {
+    private final RerankProperties rerankProperties;
+    private final Map<String, Float> scoreCache;
+    private volatile WebClient webClient;
+
+    public RerankService(RerankProperties rerankProperties,
+                         @Value("${jrag.rerank.cache-max-entries:10000}") int cacheMaxEntries) {
+        this.rerankProperties = rerankProperties;
+        this.scoreCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Float> eldest) {
+                return size() > cacheMaxEntries;
+            }
+        };
+        rebuildClient();
+    }
+
+    public boolean isEnabled() {
+        return rerankProperties.enabled;
+    }
+
+    /**
+     * 重排序前向量检索的候选数量
+     */
+    public int candidateCount(int topK) {
+        return isEnabled() ? Math.max(rerankProperties.candidates, topK) : topK;
+    }
+
+    /**
+     * 重排序后保留的数量
+     */
+    public int topN(int topK) {
+        return isEnabled() ? rerankProperties.topN : topK;
+    }
+
+    public synchronized void reload() {
+        rebuildClient();
+        synchronized (scoreCache) {
+            scoreCache.clear();
+        }
+    }
+
+    private void rebuildClient() {
+        try {
+            // 配置忽略 SSL 证书校验
+            SslContext sslContext = SslContextBuilder.forClient()
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .build();
+            HttpClient httpClient = HttpClient.create()
+                    .secure(t -> t.sslContext(sslContext));
+            WebClient.Builder builder = WebClient.builder()
+                    .clientConnector(new ReactorClientHttpConnector(httpClient))
+                    .baseUrl(rerankProperties.baseUrl);
+            if (StringUtils.isNotBlank(rerankProperties.key)) {
+                builder.defaultHeader("Authorization", "Bearer " + rerankProperties.key);
+            }
+            webClient = builder.build();
+        } catch (SSLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 对候选重排序，返回得分最高的 topN 条并设置 rerankScore
+     *
+     * @param candidates 按向量检索得分从高到低排列
+     * @param textChunks 候选引用的文本块，按 id 索引
+     */
+    public Mono<Reranked> rerank(String query, List<EmbeddingModel.EmbeddingsQueryItem> candidates, Map<String, TextChunkPo> textChunks, int topN) {
+        if (!isEnabled() || candidates.size() <= 1 || StringUtils.isBlank(query)) {
+            return Mono.just(new Reranked(limit(candidates, topN), false));
+        }
+        long start = System.currentTimeMillis();
+        String modelName = rerankProperties.modelName;
+        // 候选 hash -> 文档键，引用同一文本块的候选共用一个文档
+        Map<String, String> documentKeys = new HashMap<>();
+        Map<String, String> missDocuments = new LinkedHashMap<>();
+        Map<String, Float> scores = new HashMap<>();
+        synchronized (scoreCache) {
+            for (EmbeddingModel.EmbeddingsQueryItem candidate : candidates) {
+                TextChunkPo textChunkPo = candidate.getTextChunkId() == null ? null : textChunks.get(candidate.getTextChunkId());
+                String documentKey = textChunkPo != null && textChunkPo.getTextChunk() != null
+                        ? textChunkPo.getId() + '@' + textChunkPo.getUpdateTime()
+                        : candidate.getHash();
+                documentKeys.put(candidate.getHash(), documentKey);
+                Float cached = scoreCache.get(cacheKey(modelName, query, documentKey));
+                if (cached != null) {
+                    scores.put(documentKey, cached);
+                } else if (!missDocuments.containsKey(documentKey)) {
+                    missDocuments.put(documentKey, textChunkPo != null && textChunkPo.getTextChunk() != null
+                            ? textChunkPo.getTextChunk()
+                            : StringUtils.defaultString(candidate.getText()));
+                }
+            }
+        }
+        Mono<Map<String, Float>> fetchedMono = missDocuments.isEmpty()
+                ? Mono.just(Map.of())
+                : Flux.fromIterable(ListUtils.partition(new ArrayList<>(missDocuments.entrySet()), rerankProperties.batchSize))
+                .flatMap(batch -> rerankBatch(modelName, query, batch))
+                .collect(HashMap<String, Float>::new, Map::putAll)
+                .map(fetched -> (Map<String, Float>) fetched);
+        return fetchedMono
+                .timeout(Duration.ofMillis(rerankProperties.timeoutMillis))
+                .map(fetched -> {
+                    synchronized (scoreCache) {
+                        for (Map.Entry<String, Float> entry : fetched.entrySet()) {
+                            scoreCache.put(cacheKey(modelName, query, entry.getKey()), entry.getValue());
+                        }
+                    }
+                    scores.putAll(fetched);
+                    List<EmbeddingModel.EmbeddingsQueryItem> reranked = new ArrayList<>(candidates.size());
+                    for (EmbeddingModel.EmbeddingsQueryItem candidate : candidates) {
+                        Float score = scores.get(documentKeys.get(candidate.getHash()));
+                        if (score != null) {
+                            reranked.add(candidate.setRerankScore(score));
+                        }
+                    }
+                    if (reranked.isEmpty()) {
+                        log.warn("Rerank returned no scores, fallback to retrieval order");
+                        return new Reranked(limit(candidates, topN), true);
+                    }
+                    reranked.sort(Comparator.comparing(EmbeddingModel.EmbeddingsQueryItem::getRerankScore).reversed());
+                    log.debug("Reranked {} candidates ({} documents requested) in {} ms", candidates.size(), missDocuments.size(), System.currentTimeMillis() - start);
+                    return new Reranked(limit(reranked, topN), false);
+                })
+                .onErrorResume(e -> {
+                    log.warn("Rerank failed or exceeded {} ms, fallback to retrieval order: {}", rerankProperties.timeoutMillis, e.toString());
+                    return Mono.just(new Reranked(limit(candidates, topN), true));
+                });
+    }
+
+    /**
+     * 请求一批文档的得分，返回文档键到得分的映射
+     */
+    private Mono<Map<String, Float>> rerankBatch(String modelName, String query, List<Map.Entry<String, String>> batch) {
+        RerankModel.RerankRequest rerankRequest = new RerankModel.RerankRequest()
+                .setModel(modelName)
+                .setQuery(query)
+                .setDocuments(batch.stream().map(Map.Entry::getValue).toList())
+                .setTopN(batch.size())
+                .setReturnDocuments(false);
+        return webClient.post()
+                .uri(rerankProperties.rerankPath)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(rerankRequest)
+                .retrieve()
+                .bodyToMono(RerankModel.RerankResponse.class)
+                .map(rerankResponse -> {
+                    Map<String, Float> scores = new HashMap<>();
+                    if (rerankResponse.getResults() == null) {
+                        return scores;
+                    }
+                    for (RerankModel.RerankResult result : rerankResponse.getResults()) {
+                        Integer index = result.getIndex();
+                        if (index != null && index >= 0 && index < batch.size() && result.getRelevanceScore() != null) {
+                            scores.put(batch.get(index).getKey(), result.getRelevanceScore());
+                        }
+                    }
+                    return scores;
+                });
+    }
+
+    private static String cacheKey(String modelName, String query, String documentKey) {
+        return modelName + '\n' + documentKey + '\n' + query;
+    }
+
+    private static List<EmbeddingModel.EmbeddingsQueryItem> limit(List<EmbeddingModel.EmbeddingsQueryItem> items, int topN) {
+        return items.size() > topN ? new ArrayList<>(items.subList(0, topN)) : items;
+    }
+
+    /**
+     * 重排序结果
+     *
+     * @param items    重排序后的结果，回退时为向量检索顺序的前 topN 条
+     * @param fallback 接口出错、超时或未返回得分而回退为向量检索顺序
+     */
+    public record Reranked(List<EmbeddingModel.EmbeddingsQueryItem> items, boolean fallback) {
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.jerryt92.jrag.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务工具类
+ */
+public final class TransactionUtil {
+    private TransactionUtil() {
+    }
+
+    /**
+     * 事务提交后执行，避免并发检索在提交前把旧数据重新放入缓存；无事务时立即执行
+     */
+    public static void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+}
@@ -18,6 +18,34 @@ VALUES ('RETRIEVE_DENSE_WEIGHT', '0.5', '稠密向量（语义）检索权重（
 INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('RETRIEVE_SPARSE_WEIGHT', '0.5', '稀疏向量（关键词）检索权重（0-1，占比）');
 
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_FUSION_STRATEGY', 'WEIGHTED',
+        '混合检索融合策略（NATIVE向量数据库融合、WEIGHTED归一化加权、RRF倒数排名融合、DBSF分布归一化融合）');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_DENSE_CANDIDATES', '20', '融合前稠密向量（语义）检索候选数量');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_SPARSE_CANDIDATES', '20', '融合前稀疏向量（关键词）检索候选数量');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_RRF_K', '60', 'RRF 融合常数k，越大排名靠后的结果权重越高');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_MMR_ENABLED', 'true', '是否启用最大边际相关（MMR）多样化，避免检索结果被同一文本块的多条大纲占满');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_MMR_LAMBDA', '0.7', 'MMR 相关度权重λ（0-1），越小越偏向多样性');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_MMR_CANDIDATES', '20', 'MMR 多样化前的检索候选数量');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_MMR_MAX_PER_CHUNK', '1', 'MMR 每个文本块最多入选的条数，0为不限制');
+
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('RETRIEVE_MMR_MAX_PER_FILE', '3', 'MMR 每个来源文件最多入选的条数，0为不限制');
+
 -- LLM (from DB: ai_properties)
 INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('llm-temperature', '0', 'LLM temperature');
@@ -45,6 +73,8 @@ INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('llm-open-ai-key', 'llm-ollama-keep-alive-seconds', 'OpenAI兼容 API Key');
 INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('llm-open-ai-context-length', '32768', 'OpenAI 上下文长度');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('llm-rag-context-ratio', '0.25', '检索内容可占用的 LLM 上下文长度比例（0-1），按 token 估算');
 
 -- Embedding (from DB: ai_properties)
 INSERT INTO ai_properties (property_name, property_value, description)
@@ -63,3 +93,27 @@ INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('embedding-open-ai-embeddings-path', '/compatible-mode/v1/embeddings', 'OpenAI兼容 embeddings path');
 INSERT INTO ai_properties (property_name, property_value, description)
 VALUES ('embedding-open-ai-key', 'llm-ollama-keep-alive-seconds', 'OpenAI兼容 embedding API Key');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('embedding-open-ai-batch-size', '10', 'OpenAI兼容 embedding 单次请求文本数，超出提供商限制时自动减半');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('embedding-open-ai-concurrency', '4', 'OpenAI兼容 embedding 并发请求数');
+
+-- Rerank (from DB: ai_properties)
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-enabled', 'false', '是否启用重排序（交叉编码器）');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-base-url', 'http://127.0.0.1:8080', '重排序接口 base url');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-path', '/v1/rerank', '重排序接口 path（Jina/Cohere 兼容格式）');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-model-name', 'bge-reranker-v2-m3', '重排序模型名称');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-key', '', '重排序接口 API Key');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-candidates', '20', '重排序前向量检索的候选数量');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-top-n', '5', '重排序后保留的数量');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-timeout-millis', '1000', '单次重排序的时间预算（毫秒），超时按向量检索顺序');
+INSERT INTO ai_properties (property_name, property_value, description)
+VALUES ('rerank-batch-size', '16', '重排序单次请求的文本数，多批并发请求');
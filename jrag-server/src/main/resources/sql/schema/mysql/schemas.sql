@@ -43,7 +43,7 @@ create table embeddings_item
     embedding_provider   varchar(256)  not null comment '嵌入模型提供商名称',
     check_embedding_hash varchar(64)  not null comment '用于标记数据的嵌入模型是否一致，不一致则需要进行重新向量化',
     text                 text         not null comment '嵌入文本',
-    embedding            text         not null comment '嵌入向量',
+    embedding            longblob     not null comment '嵌入向量（float32 小端）',
     text_chunk_id        char(40)     not null comment '文本块ID',
     description          varchar(512) null comment '描述',
     create_time          bigint       null comment '创建时间',
@@ -51,6 +51,18 @@ create table embeddings_item
     create_user_id       varchar(32)  null comment '创建者ID'
 );
 
+DROP TABLE IF EXISTS embedding_cache;
+create table embedding_cache
+(
+    text_hash            char(40)     not null comment '文本的哈希值（SHA-1）',
+    embedding_provider   varchar(256) not null comment '嵌入模型提供商名称',
+    embedding_model      varchar(256) not null comment '嵌入模型名称',
+    check_embedding_hash varchar(64)  not null comment '嵌入模型校验hash',
+    embedding            longblob     not null comment '嵌入向量（float32 小端）',
+    create_time          bigint       null comment '创建时间',
+    primary key (text_hash, embedding_provider, embedding_model, check_embedding_hash)
+) comment '嵌入向量缓存';
+
 DROP TABLE IF EXISTS file;
 create table file
 (
@@ -86,4 +98,14 @@ create table user
     password_hash char(64)    not null comment '密码哈希值',
     create_time   bigint      null,
     role          int         null comment '0-普通用户, 1-管理员'
-);
\ No newline at end of file
+);
+
+DROP TABLE IF EXISTS vector_outbox;
+create table vector_outbox
+(
+    id          bigint auto_increment comment '主键，按写入顺序递增' primary key,
+    hash        char(40)    not null comment 'embeddings_item.hash',
+    operation   varchar(16) not null comment 'UPSERT / DELETE',
+    create_time bigint      null comment '创建时间',
+    attempts    int         not null default 0 comment '写入向量数据库失败的次数，达到上限后不再发送'
+) comment '待写入向量数据库的变更';
@@ -36,7 +36,7 @@ create table embeddings_item
     embedding_provider   varchar(256) not null,
     check_embedding_hash varchar(64) not null,
     text                 text        not null,
-    embedding            text        not null,
+    embedding            blob        not null,
     text_chunk_id        char(40)    not null,
     description          varchar(512),
     create_time          bigint,
@@ -44,6 +44,17 @@ create table embeddings_item
     create_user_id       varchar(32)
 );
 
+create table embedding_cache
+(
+    text_hash            char(40)     not null,
+    embedding_provider   varchar(256) not null,
+    embedding_model      varchar(256) not null,
+    check_embedding_hash varchar(64)  not null,
+    embedding            blob         not null,
+    create_time          bigint,
+    primary key (text_hash, embedding_provider, embedding_model, check_embedding_hash)
+);
+
 create table file
 (
     id             int           not null
@@ -78,4 +89,14 @@ create table user
     password_hash char(64)    not null,
     create_time   bigint,
     role          int
+);
+
+create table vector_outbox
+(
+    id          integer     not null
+        primary key autoincrement,
+    hash        char(40)    not null,
+    operation   varchar(16) not null,
+    create_time bigint,
+    attempts    integer     not null default 0
 );
\ No newline at end of file
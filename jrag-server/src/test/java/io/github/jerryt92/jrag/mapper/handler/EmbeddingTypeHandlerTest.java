@@ -0,0 +1,86 @@
+package io.github.jerryt92.jrag.mapper.handler;
+
+import org.apache.ibatis.type.JdbcType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingTypeHandlerTest {
+
+    @Test
+    void roundTripKeepsEveryBit() {
+        float[] embedding = {0f, -0f, 1f, -1.5f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NEGATIVE_INFINITY, Float.NaN, 3.1415927f};
+        float[] decoded = EmbeddingTypeHandler.decode(EmbeddingTypeHandler.encode(embedding));
+        assertEquals(embedding.length, decoded.length);
+        for (int i = 0; i < embedding.length; i++) {
+            assertEquals(Float.floatToRawIntBits(embedding[i]), Float.floatToRawIntBits(decoded[i]), "index " + i);
+        }
+    }
+
+    @Test
+    void encodesLittleEndianWithoutHeader() {
+        byte[] bytes = EmbeddingTypeHandler.encode(new float[]{1f, -2f});
+        assertEquals(2 * Float.BYTES, bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1f, buffer.getFloat(0));
+        assertEquals(-2f, buffer.getFloat(Float.BYTES));
+        // 1.0f = 0x3F800000，小端时最高字节在最后
+        assertEquals((byte) 0x3F, bytes[3]);
+    }
+
+    @Test
+    void emptyAndNull() {
+        assertEquals(0, EmbeddingTypeHandler.encode(new float[0]).length);
+        assertEquals(0, EmbeddingTypeHandler.decode(new byte[0]).length);
+        assertNull(EmbeddingTypeHandler.decode(null));
+    }
+
+    @Test
+    void rejectsTruncatedBlob() {
+        assertThrows(IllegalArgumentException.class, () -> EmbeddingTypeHandler.decode(new byte[7]));
+    }
+
+    @Test
+    void roundTripThroughJdbc() throws Exception {
+        float[] embedding = new float[1024];
+        Random random = new Random(7);
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        EmbeddingTypeHandler handler = new EmbeddingTypeHandler();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table embeddings_item (hash char(40) primary key, embedding blob)");
+            }
+            try (PreparedStatement ps = connection.prepareStatement("insert into embeddings_item values (?, ?)")) {
+                ps.setString(1, "a");
+                handler.setParameter(ps, 2, embedding, JdbcType.LONGVARBINARY);
+                ps.executeUpdate();
+                ps.setString(1, "b");
+                handler.setParameter(ps, 2, null, JdbcType.LONGVARBINARY);
+                ps.executeUpdate();
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select hash, embedding, length(embedding) from embeddings_item order by hash")) {
+                assertTrue(rs.next());
+                assertArrayEquals(embedding, handler.getResult(rs, "embedding"));
+                assertEquals(embedding.length * Float.BYTES, rs.getInt(3));
+                assertTrue(rs.next());
+                assertNull(handler.getResult(rs, 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.jerryt92.jrag.service.rag.retrieval;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MmrDiversifierTest {
+
+    @Test
+    void lambdaOneKeepsRelevanceOrder() {
+        List<EmbeddingModel.EmbeddingsQueryItem> candidates = List.of(
+                item("a", "c1", 0.9f, 1, 0),
+                item("b", "c2", 0.8f, 1, 0.01f),
+                item("c", "c3", 0.7f, 0, 1));
+        assertEquals(List.of("a", "b", "c"), hashes(MmrDiversifier.select(candidates, 3, 1f, 0, 0, Map.of())));
+    }
+
+    @Test
+    void nearDuplicateIsPushedDown() {
+        List<EmbeddingModel.EmbeddingsQueryItem> candidates = List.of(
+                item("a", "c1", 0.9f, 1, 0),
+                // 与 a 几乎相同
+                item("b", "c2", 0.85f, 1, 0.01f),
+                item("c", "c3", 0.8f, 0, 1));
+        assertEquals(List.of("a", "c", "b"), hashes(MmrDiversifier.select(candidates, 3, 0.5f, 0, 0, Map.of())));
+        assertEquals(List.of("a", "c"), hashes(MmrDiversifier.select(candidates, 2, 0.5f, 0, 0, Map.of())));
+    }
+
+    @Test
+    void chunkAndFileLimitsAreApplied() {
+        List<EmbeddingModel.EmbeddingsQueryItem> candidates = List.of(
+                item("a1", "c1", 0.9f, 1, 0),
+                item("a2", "c1", 0.89f, 0, 1),
+                item("b", "c2", 0.8f, 1, 1),
+                item("c", "c3", 0.7f, -1, 0),
+                item("d", "c4", 0.6f, 0, -1));
+        // c1、c2、c3 来自同一文件，每个文件最多 2 条，每个文本块最多 1 条
+        Map<String, Integer> fileIds = Map.of("c1", 1, "c2", 1, "c3", 1);
+        List<String> selected = hashes(MmrDiversifier.select(candidates, 5, 1f, 1, 2, fileIds));
+        assertEquals(List.of("a1", "b", "d"), selected);
+    }
+
+    @Test
+    void withoutEmbeddingsOnlySameChunkIsSimilar() {
+        List<EmbeddingModel.EmbeddingsQueryItem> candidates = List.of(
+                item("a1", "c1", 0.9f),
+                item("a2", "c1", 0.88f),
+                item("b", "c2", 0.8f));
+        // 不限制条数，同一文本块的第二条大纲被相似度惩罚排到后面
+        assertEquals(List.of("a1", "b", "a2"), hashes(MmrDiversifier.select(candidates, 3, 0.5f, 0, 0, Map.of())));
+    }
+
+    @Test
+    void ascendingDistanceIsTreatedAsRelevanceOrder() {
+        // L2 距离越小越相关，候选按距离从小到大排列
+        List<EmbeddingModel.EmbeddingsQueryItem> candidates = List.of(
+                item("a", "c1", 0.1f, 1, 0),
+                item("b", "c2", 0.5f, 0, 1),
+                item("c", "c3", 0.9f, -1, 0));
+        assertEquals(List.of("a", "b", "c"), hashes(MmrDiversifier.select(candidates, 3, 1f, 0, 0, Map.of())));
+    }
+
+    @Test
+    void emptyOrZeroCount() {
+        assertTrue(MmrDiversifier.select(List.of(), 3, 0.7f, 1, 3, Map.of()).isEmpty());
+        assertTrue(MmrDiversifier.select(List.of(item("a", "c1", 1f)), 0, 0.7f, 1, 3, Map.of()).isEmpty());
+    }
+
+    private static List<String> hashes(List<EmbeddingModel.EmbeddingsQueryItem> items) {
+        return items.stream().map(EmbeddingModel.EmbeddingsQueryItem::getHash).toList();
+    }
+
+    private static EmbeddingModel.EmbeddingsQueryItem item(String hash, String textChunkId, float score, float... embedding) {
+        return new EmbeddingModel.EmbeddingsQueryItem()
+                .setHash(hash)
+                .setTextChunkId(textChunkId)
+                .setScore(score)
+                .setEmbedding(embedding.length == 0 ? null : embedding);
+    }
+}
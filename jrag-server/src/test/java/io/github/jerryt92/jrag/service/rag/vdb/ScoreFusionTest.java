@@ -0,0 +1,135 @@
+package io.github.jerryt92.jrag.service.rag.vdb;
+
+import io.github.jerryt92.jrag.model.EmbeddingModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScoreFusionTest {
+
+    @Test
+    void weightedIsNormalizedWeightedSum() {
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = List.of(dense("a", 0.9f), dense("b", 0.5f), dense("c", -0.2f));
+        List<EmbeddingModel.EmbeddingsQueryItem> sparse = List.of(sparse("b", 7.5f), sparse("d", 2f));
+        List<EmbeddingModel.EmbeddingsQueryItem> fused = ScoreFusion.fuse(FusionStrategy.WEIGHTED, dense, sparse, "COSINE", 0.7f, 0.3f, 60, 10);
+
+        Map<String, Float> scores = scores(fused);
+        assertEquals(4, scores.size());
+        // 与 Milvus WeightedRanker 相同：各通道归一化后加权求和，未命中的通道不计分
+        assertEquals(0.7f * ScoreNormalizer.normalize("COSINE", 0.9f), scores.get("a"), 1e-6f);
+        assertEquals(0.7f * ScoreNormalizer.normalize("COSINE", 0.5f) + 0.3f * ScoreNormalizer.normalize(ScoreNormalizer.BM25, 7.5f), scores.get("b"), 1e-6f);
+        assertEquals(0.7f * ScoreNormalizer.normalize("COSINE", -0.2f), scores.get("c"), 1e-6f);
+        assertEquals(0.3f * ScoreNormalizer.normalize(ScoreNormalizer.BM25, 2f), scores.get("d"), 1e-6f);
+        assertSorted(fused);
+        // 两个通道都命中时保留两个通道的原始分数
+        EmbeddingModel.EmbeddingsQueryItem b = fused.stream().filter(item -> item.getHash().equals("b")).findFirst().orElseThrow();
+        assertEquals(0.5f, b.getDenseScore());
+        assertEquals(7.5f, b.getSparseScore());
+    }
+
+    @Test
+    void weightedL2PrefersSmallerDistance() {
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = List.of(dense("near", 0.1f), dense("far", 4f));
+        Map<String, Float> scores = scores(ScoreFusion.fuse(FusionStrategy.WEIGHTED, dense, List.of(), "L2", 1f, 1f, 60, 10));
+        assertTrue(scores.get("near") > scores.get("far"));
+    }
+
+    @Test
+    void rrfScoresAreScaledToUnitRange() {
+        int rrfK = 60;
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = List.of(dense("a", 0.9f), dense("b", 0.8f), dense("c", 0.7f));
+        List<EmbeddingModel.EmbeddingsQueryItem> sparse = List.of(sparse("a", 9f), sparse("c", 5f), sparse("d", 1f));
+        List<EmbeddingModel.EmbeddingsQueryItem> fused = ScoreFusion.fuse(FusionStrategy.RRF, dense, sparse, "COSINE", 2f, 1f, rrfK, 10);
+
+        Map<String, Float> scores = scores(fused);
+        // 两个通道都排第一时为 1
+        assertEquals(1f, scores.get("a"), 1e-6f);
+        float scale = (rrfK + 1f) / 3f;
+        assertEquals(scale * 2f / (rrfK + 2), scores.get("b"), 1e-6f);
+        assertEquals(scale * (2f / (rrfK + 3) + 1f / (rrfK + 2)), scores.get("c"), 1e-6f);
+        assertEquals(scale * 1f / (rrfK + 3), scores.get("d"), 1e-6f);
+        assertSorted(fused);
+        for (float score : scores.values()) {
+            assertTrue(score > 0f && score <= 1f);
+        }
+    }
+
+    @Test
+    void rrfIgnoresRawScoreScale() {
+        List<EmbeddingModel.EmbeddingsQueryItem> fused1 = ScoreFusion.fuse(FusionStrategy.RRF,
+                List.of(dense("a", 0.9f), dense("b", 0.1f)), List.of(sparse("b", 1000f), sparse("a", 0.1f)), "COSINE", 1f, 1f, 60, 10);
+        List<EmbeddingModel.EmbeddingsQueryItem> fused2 = ScoreFusion.fuse(FusionStrategy.RRF,
+                List.of(dense("a", 0.31f), dense("b", 0.3f)), List.of(sparse("b", 2f), sparse("a", 1.9f)), "COSINE", 1f, 1f, 60, 10);
+        assertEquals(scores(fused1), scores(fused2));
+    }
+
+    @Test
+    void dbsfNormalizesByChannelDistribution() {
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = List.of(dense("a", 0.9f), dense("b", 0.6f), dense("c", 0.3f));
+        List<EmbeddingModel.EmbeddingsQueryItem> sparse = List.of(sparse("c", 30f), sparse("a", 20f), sparse("b", 10f));
+        Map<String, Float> scores = scores(ScoreFusion.fuse(FusionStrategy.DBSF, dense, sparse, "COSINE", 0.5f, 0.5f, 60, 10));
+
+        // 各通道的分数等距分布，均值 ± 3 倍标准差映射到 [0, 1]
+        double std = Math.sqrt(2.0 / 3.0);
+        float high = (float) (0.5 + 1 / (6 * std));
+        float low = (float) (0.5 - 1 / (6 * std));
+        assertEquals(0.5f * (high + 0.5f), scores.get("a"), 1e-5f);
+        assertEquals(0.5f * (0.5f + low), scores.get("b"), 1e-5f);
+        assertEquals(0.5f * (low + high), scores.get("c"), 1e-5f);
+        // 原始分数的量纲不影响结果：稀疏分数整体放大不改变融合分数
+        List<EmbeddingModel.EmbeddingsQueryItem> scaledSparse = List.of(sparse("c", 300f), sparse("a", 200f), sparse("b", 100f));
+        Map<String, Float> scaled = scores(ScoreFusion.fuse(FusionStrategy.DBSF,
+                List.of(dense("a", 0.9f), dense("b", 0.6f), dense("c", 0.3f)), scaledSparse, "COSINE", 0.5f, 0.5f, 60, 10));
+        for (Map.Entry<String, Float> entry : scores.entrySet()) {
+            assertEquals(entry.getValue(), scaled.get(entry.getKey()), 1e-5f);
+        }
+    }
+
+    @Test
+    void dbsfConstantChannelScoresOne() {
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = List.of(dense("a", 0.5f), dense("b", 0.5f));
+        Map<String, Float> scores = scores(ScoreFusion.fuse(FusionStrategy.DBSF, dense, List.of(), "COSINE", 0.5f, 0.5f, 60, 10));
+        assertEquals(0.5f, scores.get("a"), 1e-6f);
+        assertEquals(0.5f, scores.get("b"), 1e-6f);
+    }
+
+    @Test
+    void resultIsTruncatedToTopK() {
+        List<EmbeddingModel.EmbeddingsQueryItem> dense = new ArrayList<>();
+        List<EmbeddingModel.EmbeddingsQueryItem> sparse = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dense.add(dense("d" + i, 1f - i * 0.01f));
+            sparse.add(sparse("s" + i, 20f - i));
+        }
+        for (FusionStrategy strategy : List.of(FusionStrategy.WEIGHTED, FusionStrategy.RRF, FusionStrategy.DBSF)) {
+            List<EmbeddingModel.EmbeddingsQueryItem> fused = ScoreFusion.fuse(strategy, dense, sparse, "COSINE", 1f, 1f, 60, 5);
+            assertEquals(5, fused.size(), strategy.name());
+            assertSorted(fused);
+        }
+    }
+
+    private static Map<String, Float> scores(List<EmbeddingModel.EmbeddingsQueryItem> items) {
+        return items.stream().collect(Collectors.toMap(EmbeddingModel.EmbeddingsQueryItem::getHash, EmbeddingModel.EmbeddingsQueryItem::getScore));
+    }
+
+    private static void assertSorted(List<EmbeddingModel.EmbeddingsQueryItem> items) {
+        for (int i = 1; i < items.size(); i++) {
+            assertTrue(items.get(i - 1).getHybridScore() >= items.get(i).getHybridScore());
+            assertEquals(items.get(i).getScore(), items.get(i).getHybridScore());
+        }
+    }
+
+    private static EmbeddingModel.EmbeddingsQueryItem dense(String hash, float score) {
+        return new EmbeddingModel.EmbeddingsQueryItem().setHash(hash).setScore(score).setDenseScore(score);
+    }
+
+    private static EmbeddingModel.EmbeddingsQueryItem sparse(String hash, float score) {
+        return new EmbeddingModel.EmbeddingsQueryItem().setHash(hash).setScore(score).setSparseScore(score);
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.jerryt92.jrag.service.rag.vdb.bm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+    private static final String[] WORDS = {
+            "vector", "index", "search", "milvus", "hnsw", "cache", "embedding", "query", "rerank", "fusion",
+            "向量", "检索", "索引", "缓存", "知识", "文本", "模型", "分数"
+    };
+
+    @Test
+    void scoresAfterCompactionMatchFreshIndex() {
+        Random random = new Random(7);
+        Map<String, String> documents = new HashMap<>();
+        Bm25Index index = new Bm25Index();
+        for (int i = 0; i < 6000; i++) {
+            String text = randomText(random);
+            documents.put("doc-" + i, text);
+            index.put("doc-" + i, text);
+        }
+        // 删除与覆盖足够多的文档以触发压缩
+        for (int i = 0; i < 6000; i += 3) {
+            index.remove("doc-" + i);
+            documents.remove("doc-" + i);
+        }
+        for (int i = 1; i < 6000; i += 9) {
+            String text = randomText(random);
+            documents.put("doc-" + i, text);
+            index.put("doc-" + i, text);
+        }
+        long compactedBytes = index.ramBytesUsed();
+
+        Bm25Index fresh = new Bm25Index();
+        for (Map.Entry<String, String> entry : documents.entrySet()) {
+            fresh.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(fresh.size(), index.size());
+        assertTrue(compactedBytes < fresh.ramBytesUsed() * 2, "compaction reclaims deleted postings");
+        for (String query : List.of("vector search", "hnsw index cache", "向量检索", "知识 模型 分数", "rerank fusion query")) {
+            assertSameScores(fresh.search(query, 50, null), index.search(query, 50, null));
+        }
+    }
+
+    @Test
+    void removedDocumentsAreNotReturned() {
+        Bm25Index index = new Bm25Index();
+        index.put("a", "vector search with hnsw");
+        index.put("b", "vector cache");
+        index.put("a", "rerank only");
+        index.remove("b");
+        assertTrue(index.search("vector", 10, null).isEmpty());
+        List<Bm25Index.Hit> hits = index.search("rerank", 10, null);
+        assertEquals(1, hits.size());
+        assertEquals("a", hits.getFirst().id());
+        assertTrue(index.search("rerank", 10, id -> !id.equals("a")).isEmpty());
+    }
+
+    private static void assertSameScores(List<Bm25Index.Hit> expected, List<Bm25Index.Hit> actual) {
+        assertEquals(expected.size(), actual.size());
+        Map<String, Float> actualScores = new HashMap<>();
+        for (Bm25Index.Hit hit : actual) {
+            actualScores.put(hit.id(), hit.score());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            // 分数相同的文档顺序可能不同，逐位比较分数，再按 id 比较
+            assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-4f);
+            Float score = actualScores.get(expected.get(i).id());
+            if (score != null) {
+                assertEquals(expected.get(i).score(), score, 1e-4f);
+            }
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = 3 + random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
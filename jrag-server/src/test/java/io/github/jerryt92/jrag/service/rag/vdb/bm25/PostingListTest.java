@@ -0,0 +1,84 @@
+package io.github.jerryt92.jrag.service.rag.vdb.bm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingListTest {
+
+    @Test
+    void varintRoundTripAcrossByteBoundaries() {
+        // 差值与词频覆盖 1 ~ 5 字节的 varint
+        int[] docIds = {0, 127, 255, 16_638, 2_113_790, 270_549_118, Integer.MAX_VALUE - 1};
+        int[] tfs = {1, 128, 16_384, 2_097_152, 268_435_456, 3, Integer.MAX_VALUE};
+        PostingList postingList = new PostingList();
+        for (int i = 0; i < docIds.length; i++) {
+            postingList.add(docIds[i], tfs[i], 10);
+        }
+        PostingList.Cursor cursor = postingList.cursor();
+        for (int i = 0; i < docIds.length; i++) {
+            assertEquals(docIds[i], cursor.next());
+            assertEquals(tfs[i], cursor.tf());
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.next());
+        assertEquals(Integer.MAX_VALUE, postingList.maxTf());
+    }
+
+    @Test
+    void advanceMatchesLinearScan() {
+        PostingList postingList = new PostingList();
+        List<Integer> docIds = new ArrayList<>();
+        for (int docId = 0; docId < 5000; docId += 1 + docId % 7) {
+            postingList.add(docId, 1 + docId % 5, 10);
+            docIds.add(docId);
+        }
+        for (int target = 0; target < 5100; target += 37) {
+            PostingList.Cursor cursor = postingList.cursor();
+            // 先前进一部分，再跳跃
+            cursor.next();
+            int expected = PostingList.NO_MORE_DOCS;
+            for (int docId : docIds) {
+                if (docId >= Math.max(target, docIds.getFirst())) {
+                    expected = docId;
+                    break;
+                }
+            }
+            assertEquals(expected, cursor.advance(target), "target " + target);
+            if (expected != PostingList.NO_MORE_DOCS) {
+                assertEquals(1 + expected % 5, cursor.tf());
+            }
+        }
+    }
+
+    @Test
+    void compactDropsDeletedDocsAndRecomputesBounds() {
+        int[] docLengths = new int[1000];
+        PostingList postingList = new PostingList();
+        BitSet deleted = new BitSet();
+        for (int docId = 0; docId < 1000; docId++) {
+            docLengths[docId] = docId + 1;
+            // 词频最大、文档最短的记录都会被删除
+            postingList.add(docId, docId == 500 ? 100 : 1 + docId % 3, docLengths[docId]);
+            if (docId % 2 == 0) {
+                deleted.set(docId);
+                postingList.markDeleted();
+            }
+        }
+        postingList.compact(deleted, docLengths);
+        assertEquals(500, postingList.liveCount());
+        assertEquals(3, postingList.maxTf());
+        assertEquals(2, postingList.minDocLength());
+        PostingList.Cursor cursor = postingList.cursor();
+        for (int docId = 1; docId < 1000; docId += 2) {
+            assertEquals(docId, cursor.next());
+            assertEquals(1 + docId % 3, cursor.tf());
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.next());
+        // 压缩后跳表仍然可用
+        assertEquals(777, postingList.cursor().advance(776));
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.jerryt92.jrag.service.rag.vdb.local;
+
+import io.github.jerryt92.jrag.po.mgb.EmbeddingsItemPoWithBLOBs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorSegmentTest {
+    private static final int DIMENSION = 8;
+    private static final String CHECK_HASH = "check";
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+    // hash -> 已归一化的向量
+    private final Map<String, float[]> expected = new HashMap<>();
+
+    @Test
+    void roundTripKeepsLiveRecords() throws IOException {
+        LocalVectorStore store = createStore(true);
+        for (int i = 0; i < 100; i++) {
+            put(store, i, "text " + i);
+        }
+        // 覆盖写入与删除
+        put(store, 3, "text 3 v2");
+        store.remove(hash(5));
+        expected.remove(hash(5));
+        store.flush();
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        store.segment().close();
+
+        LocalVectorStore loaded = load(true);
+        assertEquals(101, loaded.size());
+        assertEquals(99, loaded.liveCount());
+        assertEquals(-1, loaded.ordinal(hash(5)));
+        assertEquals("text 3 v2", loaded.text(loaded.ordinal(hash(3))));
+        assertRecords(loaded);
+        loaded.segment().close();
+    }
+
+    @Test
+    void incompleteOrMismatchedSegmentIsNotOpened() throws IOException {
+        LocalVectorStore store = createStore(true);
+        put(store, 0, "text");
+        store.segment().close();
+        assertNull(VectorSegment.openIfMatches(directory, DIMENSION, VectorMetric.COSINE, CHECK_HASH));
+
+        store = createStore(true);
+        put(store, 0, "text");
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        store.segment().close();
+        assertNull(VectorSegment.openIfMatches(directory, DIMENSION, VectorMetric.COSINE, "other"));
+        assertNull(VectorSegment.openIfMatches(directory, DIMENSION + 1, VectorMetric.COSINE, CHECK_HASH));
+        assertNull(VectorSegment.openIfMatches(directory, DIMENSION, VectorMetric.L2, CHECK_HASH));
+    }
+
+    @Test
+    void tornTailIsTruncatedAndAppendable() throws IOException {
+        LocalVectorStore store = createStore(true);
+        for (int i = 0; i < 10; i++) {
+            put(store, i, "text " + i);
+        }
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        store.segment().close();
+        // 模拟写到一半退出：ids.dat 多出半条记录，vectors.f32 多出半条向量
+        append(directory.resolve("ids.dat"), 20);
+        append(directory.resolve("vectors.f32"), DIMENSION * Float.BYTES / 2);
+
+        LocalVectorStore loaded = load(true);
+        assertEquals(10, loaded.size());
+        assertRecords(loaded);
+        put(loaded, 10, "text 10");
+        loaded.flush();
+        loaded.segment().close();
+
+        LocalVectorStore reloaded = load(true);
+        assertEquals(11, reloaded.size());
+        assertRecords(reloaded);
+        reloaded.segment().close();
+    }
+
+    @Test
+    void recordWithMissingMetadataIsDropped() throws IOException {
+        LocalVectorStore store = createStore(true);
+        for (int i = 0; i < 10; i++) {
+            put(store, i, "text " + i);
+        }
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        store.segment().close();
+        // 最后一条记录的元数据只写入了一部分
+        Path meta = directory.resolve("meta.dat");
+        try (FileChannel channel = FileChannel.open(meta, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        LocalVectorStore loaded = load(true);
+        assertEquals(9, loaded.size());
+        assertEquals(-1, loaded.ordinal(hash(9)));
+        expected.remove(hash(9));
+        assertRecords(loaded);
+        loaded.segment().close();
+    }
+
+    @Test
+    void offHeapStoreReadsVectorsFromSegment() throws IOException {
+        LocalVectorStore store = createStore(false);
+        assertNull(store.vectors());
+        for (int i = 0; i < 50; i++) {
+            put(store, i, "text " + i);
+            // 未刷盘的向量从写缓冲读取
+            float[] vector = new float[DIMENSION];
+            store.readVector(store.ordinal(hash(i)), vector);
+            assertArrayEquals(expected.get(hash(i)), vector);
+        }
+        store.flush();
+        assertRecords(store);
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        store.segment().close();
+
+        LocalVectorStore loaded = load(false);
+        assertNull(loaded.vectors());
+        assertRecords(loaded);
+        loaded.segment().close();
+    }
+
+    @Test
+    void compactionSwitchesToNextGeneration() throws IOException {
+        LocalVectorStore store = createStore(true);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                put(store, i, "text " + i + " round " + round);
+            }
+        }
+        store.flush();
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        assertTrue(store.needsCompaction());
+        Files.writeString(directory.resolve("hnsw.graph"), "stale");
+
+        VectorSegment next = store.segment().next();
+        LocalVectorStore compacted = store.compactTo(next);
+        next.replace(store.segment(), VectorMetric.COSINE, CHECK_HASH);
+        assertEquals(1000, compacted.size());
+        assertFalse(compacted.needsCompaction());
+        assertRecords(compacted);
+        // 按旧序号保存的索引文件与上一代段文件已删除
+        assertFalse(Files.exists(directory.resolve("hnsw.graph")));
+        assertFalse(Files.exists(directory.resolve("vectors.f32")));
+        assertTrue(Files.exists(directory.resolve("vectors-1.f32")));
+        next.close();
+
+        // 清单仍为已完成，重启加载新一代段
+        LocalVectorStore loaded = load(true);
+        assertEquals(1000, loaded.size());
+        assertEquals("text 7 round 2", loaded.text(loaded.ordinal(hash(7))));
+        assertRecords(loaded);
+        loaded.segment().close();
+    }
+
+    @Test
+    void leftoverGenerationIsRemovedOnOpen() throws IOException {
+        LocalVectorStore store = createStore(true);
+        put(store, 0, "text");
+        store.segment().markComplete(VectorMetric.COSINE, CHECK_HASH);
+        // 压缩写入下一代段后、切换清单前退出
+        VectorSegment next = store.segment().next();
+        store.compactTo(next);
+        next.close();
+        store.segment().close();
+        assertTrue(Files.exists(directory.resolve("vectors-1.f32")));
+
+        LocalVectorStore loaded = load(true);
+        assertEquals(1, loaded.size());
+        assertRecords(loaded);
+        assertFalse(Files.exists(directory.resolve("vectors-1.f32")));
+        loaded.segment().close();
+    }
+
+    private LocalVectorStore createStore(boolean heapVectors) throws IOException {
+        expected.clear();
+        LocalVectorStore store = new LocalVectorStore(DIMENSION, VectorMetric.COSINE, heapVectors);
+        store.attach(VectorSegment.create(directory, DIMENSION, VectorMetric.COSINE, CHECK_HASH));
+        return store;
+    }
+
+    private LocalVectorStore load(boolean heapVectors) throws IOException {
+        VectorSegment segment = VectorSegment.openIfMatches(directory, DIMENSION, VectorMetric.COSINE, CHECK_HASH);
+        assertNotNull(segment);
+        LocalVectorStore store = new LocalVectorStore(DIMENSION, VectorMetric.COSINE, heapVectors);
+        store.attach(segment);
+        segment.loadInto(store);
+        return store;
+    }
+
+    private void put(LocalVectorStore store, int id, String text) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        EmbeddingsItemPoWithBLOBs embeddingsItemPo = new EmbeddingsItemPoWithBLOBs();
+        embeddingsItemPo.setHash(hash(id));
+        embeddingsItemPo.setText(text);
+        embeddingsItemPo.setTextChunkId("chunk-" + id % 7);
+        embeddingsItemPo.setEmbeddingModel("model");
+        embeddingsItemPo.setEmbeddingProvider("provider");
+        store.put(embeddingsItemPo, vector);
+        float[] normalized = vector.clone();
+        VectorUtil.normalize(normalized, 0, DIMENSION);
+        expected.put(hash(id), normalized);
+    }
+
+    private void assertRecords(LocalVectorStore store) {
+        assertEquals(expected.size(), store.liveCount());
+        float[] vector = new float[DIMENSION];
+        for (Map.Entry<String, float[]> entry : expected.entrySet()) {
+            int ordinal = store.ordinal(entry.getKey());
+            assertTrue(store.isLive(ordinal), entry.getKey());
+            store.readVector(ordinal, vector);
+            assertArrayEquals(entry.getValue(), vector, entry.getKey());
+            assertEquals(entry.getKey(), store.hash(ordinal));
+        }
+    }
+
+    private static void append(Path file, int bytes) throws IOException {
+        Files.write(file, new byte[bytes], StandardOpenOption.APPEND);
+    }
+
+    private static String hash(int id) {
+        return String.format("%040d", id);
+    }
+}
@@ -86,6 +86,8 @@ JAVA_OPTS="-Duser.language=${USER_LANGUAGE} -Duser.country=${USER_COUNTRY}"
 JAVA_OPTS="${JAVA_OPTS} -Xms512m -Xmx2048m"
 JAVA_OPTS="${JAVA_OPTS} -XX:MetaspaceSize=80m -XX:MaxMetaspaceSize=128m"
 JAVA_OPTS="${JAVA_OPTS} -XX:+HeapDumpOnOutOfMemoryError -Dfile.encoding=utf-8"
+# 进程内向量索引（hnsw / flat）使用 JDK Vector API 加速相似度计算
+JAVA_OPTS="${JAVA_OPTS} --add-modules jdk.incubator.vector"
 
 if [ -n "${pid}" ]
 then